@@ -0,0 +1,113 @@
+package com.emasmetal.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Small bounded read-through cache for public listings. Entries are evicted
+ * least-recently-used once {@code maxEntries} is reached; there is no TTL,
+ * owners invalidate explicitly when they write.
+ *
+ * <p>Loads run outside the lock. A load that started before an invalidation
+ * is returned to its caller but not cached, so a slow reader can never put
+ * pre-write data back after the writer has invalidated.
+ */
+public class ListingCache<K, V> {
+    
+    private final String name;
+    private final int maxEntries;
+    private final Map<K, V> entries;
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    
+    // Bumped on every invalidation; guarded by this
+    private long generation;
+    
+    public ListingCache(String name, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > ListingCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    public V get(K key, Supplier<V> loader) {
+        long observedGeneration;
+        synchronized (this) {
+            V cached = entries.get(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            observedGeneration = generation;
+        }
+        
+        misses.increment();
+        V loaded = loader.get();
+        
+        synchronized (this) {
+            if (generation == observedGeneration && loaded != null) {
+                entries.put(key, loaded);
+            }
+        }
+        return loaded;
+    }
+    
+    public synchronized void invalidate(Collection<K> keys) {
+        generation++;
+        keys.forEach(entries::remove);
+    }
+    
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+    
+    public Stats stats() {
+        int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        return Stats.builder()
+                .name(name)
+                .size(size)
+                .maxEntries(maxEntries)
+                .hits(hits.sum())
+                .misses(misses.sum())
+                .evictions(evictions.sum())
+                .build();
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Stats {
+        private String name;
+        private int size;
+        private int maxEntries;
+        private long hits;
+        private long misses;
+        private long evictions;
+    }
+}
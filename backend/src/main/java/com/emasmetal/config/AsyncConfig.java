@@ -0,0 +1,134 @@
+package com.emasmetal.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+@EnableScheduling
+public class AsyncConfig {
+
+    @Value("${gallery.images.worker-threads:2}")
+    private int imageWorkerThreads;
+
+    @Value("${gallery.images.queue-capacity:200}")
+    private int imageQueueCapacity;
+
+    @Value("${file.storage-threads:4}")
+    private int storageThreads;
+
+    @Value("${contact.attachments.worker-threads:1}")
+    private int attachmentWorkerThreads;
+
+    @Value("${contact.attachments.queue-capacity:500}")
+    private int attachmentQueueCapacity;
+    
+    @Value("${contact.inbox.event-queue-capacity:1000}")
+    private int inboxEventQueueCapacity;
+
+    /**
+     * Bounded pool for decoding and resizing gallery images. Image decoding is
+     * CPU and memory heavy, so the pool is kept small and the queue bounded;
+     * submitters handle rejection themselves instead of running work on the
+     * request thread.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor imageProcessingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(imageWorkerThreads);
+        executor.setMaxPoolSize(imageWorkerThreads);
+        executor.setQueueCapacity(imageQueueCapacity);
+        executor.setThreadNamePrefix("image-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * Pool for writing uploads to disk in parallel (bulk gallery ingest). When
+     * it is saturated the submitting thread does the write itself, which
+     * throttles the producer instead of buffering more files in memory.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor fileStorageExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(storageThreads);
+        executor.setMaxPoolSize(storageThreads);
+        executor.setQueueCapacity(storageThreads * 2);
+        executor.setThreadNamePrefix("storage-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+
+    /**
+     * Pool for inspecting contact attachments after they are stored. The
+     * work is sequential disk reads, so one thread is usually enough; on
+     * rejection the message stays pending for the next sweep.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor attachmentProcessingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(attachmentWorkerThreads);
+        executor.setMaxPoolSize(attachmentWorkerThreads);
+        executor.setQueueCapacity(attachmentQueueCapacity);
+        executor.setThreadNamePrefix("attachment-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+    
+    /**
+     * Single thread that writes inbox events to connected admin streams, so
+     * a slow or stalled browser never holds up the request that triggered
+     * the event. Events that don't fit the queue are dropped; the next
+     * counter event or reconnect brings clients up to date.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor inboxEventExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(inboxEventQueueCapacity);
+        executor.setThreadNamePrefix("inbox-events-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+    
+    /**
+     * Single thread for the orphan sweep. It has no queue: a sweep started
+     * while another one runs is rejected rather than waiting, and it never
+     * takes a slot from upload writes.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor uploadSweepExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("upload-sweep-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+    
+    /**
+     * Single thread for rebuilding the contact search index. Like the sweep
+     * executor it has no queue and rejects a second rebuild, so a
+     * {@code REINDEX} never runs on the request thread.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor searchReindexExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("search-reindex-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+}
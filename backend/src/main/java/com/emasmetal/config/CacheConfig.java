@@ -0,0 +1,27 @@
+package com.emasmetal.config;
+
+import com.emasmetal.cache.ListingCache;
+import com.emasmetal.dto.GalleryItemDto;
+import com.emasmetal.dto.ReferenceDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+@Configuration
+public class CacheConfig {
+    
+    @Value("${cache.listings.max-entries:64}")
+    private int listingMaxEntries;
+    
+    @Bean
+    public ListingCache<String, List<GalleryItemDto.Response>> galleryListingCache() {
+        return new ListingCache<>("gallery", listingMaxEntries);
+    }
+    
+    @Bean
+    public ListingCache<String, List<ReferenceDto.Response>> referenceListingCache() {
+        return new ListingCache<>("references", listingMaxEntries);
+    }
+}
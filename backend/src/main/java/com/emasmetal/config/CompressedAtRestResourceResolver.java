@@ -0,0 +1,185 @@
+package com.emasmetal.config;
+
+import com.emasmetal.service.FileStorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.Nullable;
+import org.springframework.web.servlet.resource.AbstractResourceResolver;
+import org.springframework.web.servlet.resource.HttpResource;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Serves uploads that {@link FileStorageService} keeps gzip-compressed at
+ * rest ({@code foo.dxf} stored as {@code foo.dxf.gz}). Clients that accept
+ * gzip get the stored bytes as-is with {@code Content-Encoding: gzip};
+ * others get them decompressed while streaming.
+ */
+public class CompressedAtRestResourceResolver extends AbstractResourceResolver {
+
+    private static final String GZIP = "gzip";
+
+    @Override
+    @Nullable
+    protected Resource resolveResourceInternal(@Nullable HttpServletRequest request, String requestPath,
+                                               List<? extends Resource> locations, ResourceResolverChain chain) {
+        Resource resource = chain.resolveResource(request, requestPath, locations);
+        if (resource != null || requestPath.endsWith(FileStorageService.GZIP_SUFFIX)) {
+            return resource;
+        }
+        Resource compressed = chain.resolveResource(request, requestPath + FileStorageService.GZIP_SUFFIX, locations);
+        if (compressed == null) {
+            return null;
+        }
+        String filename = requestPath.substring(requestPath.lastIndexOf('/') + 1);
+        return acceptsGzip(request)
+                ? new GzipEncodedResource(compressed, filename)
+                : new DecompressingResource(compressed, filename);
+    }
+
+    @Override
+    @Nullable
+    protected String resolveUrlPathInternal(String resourceUrlPath, List<? extends Resource> locations,
+                                            ResourceResolverChain chain) {
+        return chain.resolveUrlPath(resourceUrlPath, locations);
+    }
+
+    private static boolean acceptsGzip(@Nullable HttpServletRequest request) {
+        if (request == null) {
+            return false;
+        }
+        return acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    /**
+     * Whether an {@code Accept-Encoding} value allows gzip: listed (or
+     * covered by {@code *}) with a non-zero q-value. An explicit
+     * {@code gzip;q=0} wins over {@code *}.
+     */
+    public static boolean acceptsGzip(@Nullable String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double wildcard = null;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.length() > 2 && parameter.substring(0, 2).equalsIgnoreCase("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        // Malformed weight: treat the coding as not acceptable
+                        quality = 0;
+                    }
+                }
+            }
+            if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+                gzip = quality;
+            } else if (coding.equals("*")) {
+                wildcard = quality;
+            }
+        }
+        double quality = gzip != null ? gzip : wildcard != null ? wildcard : 0;
+        return quality > 0;
+    }
+
+    /**
+     * Common part of both representations: named like the plain file, so the
+     * media type is detected from the original extension.
+     */
+    private abstract static class StoredCompressedResource extends AbstractResource implements HttpResource {
+
+        protected final Resource compressed;
+        private final String filename;
+
+        StoredCompressedResource(Resource compressed, String filename) {
+            this.compressed = compressed;
+            this.filename = filename;
+        }
+
+        @Override
+        public boolean exists() {
+            return compressed.exists();
+        }
+
+        @Override
+        public boolean isReadable() {
+            return compressed.isReadable();
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            return compressed.lastModified();
+        }
+
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+
+        @Override
+        public String getDescription() {
+            return compressed.getDescription();
+        }
+
+        @Override
+        public HttpHeaders getResponseHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            return headers;
+        }
+    }
+
+    static final class GzipEncodedResource extends StoredCompressedResource {
+
+        GzipEncodedResource(Resource compressed, String filename) {
+            super(compressed, filename);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return compressed.getInputStream();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return compressed.contentLength();
+        }
+
+        @Override
+        public HttpHeaders getResponseHeaders() {
+            HttpHeaders headers = super.getResponseHeaders();
+            headers.add(HttpHeaders.CONTENT_ENCODING, GZIP);
+            return headers;
+        }
+    }
+
+    static final class DecompressingResource extends StoredCompressedResource {
+
+        DecompressingResource(Resource compressed, String filename) {
+            super(compressed, filename);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new GZIPInputStream(compressed.getInputStream(), 64 * 1024);
+        }
+
+        /** Unknown without inflating the whole file; the response is sent chunked. */
+        @Override
+        public long contentLength() {
+            return -1;
+        }
+    }
+}
@@ -15,6 +15,10 @@ import java.util.List;
 @Configuration
 public class CorsConfig implements WebMvcConfigurer {
     
+    // Resumable upload clients read these from cross-origin responses
+    private static final String[] RESUMABLE_UPLOAD_HEADERS =
+            {"Location", "Upload-Offset", "Upload-Length", "Tus-Resumable"};
+    
     @Value("${cors.allowed-origins}")
     private String allowedOrigins;
     
@@ -24,8 +28,9 @@ public class CorsConfig implements WebMvcConfigurer {
         
         registry.addMapping("/api/**")
                 .allowedOrigins(origins)
-                .allowedMethods("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS")
+                .allowedMethods("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS")
                 .allowedHeaders("*")
+                .exposedHeaders(RESUMABLE_UPLOAD_HEADERS)
                 .allowCredentials(true)
                 .maxAge(3600);
         
@@ -39,8 +44,9 @@ public class CorsConfig implements WebMvcConfigurer {
     public CorsConfigurationSource corsConfigurationSource() {
         CorsConfiguration configuration = new CorsConfiguration();
         configuration.setAllowedOrigins(Arrays.asList(allowedOrigins.split(",")));
-        configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
+        configuration.setAllowedMethods(Arrays.asList("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
         configuration.setAllowedHeaders(List.of("*"));
+        configuration.setExposedHeaders(List.of(RESUMABLE_UPLOAD_HEADERS));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L);
         
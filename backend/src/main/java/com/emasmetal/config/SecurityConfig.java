@@ -37,6 +37,10 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.GET, "/api/references/**").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/gallery/**").permitAll()
                         .requestMatchers(HttpMethod.POST, "/api/contact").permitAll()
+                        .requestMatchers(HttpMethod.POST, "/api/uploads/attachments/**").permitAll()
+                        .requestMatchers(HttpMethod.PATCH, "/api/uploads/attachments/**").permitAll()
+                        .requestMatchers(HttpMethod.HEAD, "/api/uploads/attachments/**").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/api/uploads/attachments/**").permitAll()
 
                         // Authentication endpoints
                         .requestMatchers("/api/auth/**").permitAll()                        
@@ -62,6 +66,7 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.PUT, "/api/gallery/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.DELETE, "/api/gallery/**").hasRole("ADMIN")
                         .requestMatchers("/api/contact/messages/**").hasRole("ADMIN")
+                        .requestMatchers("/api/admin/**").hasRole("ADMIN")
 
                         // Everything else requires authentication
                         .anyRequest().authenticated()
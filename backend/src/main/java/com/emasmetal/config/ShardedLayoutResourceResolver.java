@@ -0,0 +1,38 @@
+package com.emasmetal.config;
+
+import com.emasmetal.service.FileStorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+import org.springframework.web.servlet.resource.AbstractResourceResolver;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+
+import java.util.List;
+
+/**
+ * Keeps flat upload URLs ({@code gallery/abcd1234.png}) working after the
+ * file has been moved to the sharded layout ({@code gallery/ab/cd/abcd1234.png}).
+ * Pages, caches and e-mails issued before the layout migration keep
+ * pointing at the old URLs.
+ */
+public class ShardedLayoutResourceResolver extends AbstractResourceResolver {
+
+    @Override
+    @Nullable
+    protected Resource resolveResourceInternal(@Nullable HttpServletRequest request, String requestPath,
+                                               List<? extends Resource> locations, ResourceResolverChain chain) {
+        Resource resource = chain.resolveResource(request, requestPath, locations);
+        if (resource != null) {
+            return resource;
+        }
+        String sharded = FileStorageService.shardedUrl("/uploads/" + requestPath).substring("/uploads/".length());
+        return sharded.equals(requestPath) ? null : chain.resolveResource(request, sharded, locations);
+    }
+
+    @Override
+    @Nullable
+    protected String resolveUrlPathInternal(String resourceUrlPath, List<? extends Resource> locations,
+                                            ResourceResolverChain chain) {
+        return chain.resolveUrlPath(resourceUrlPath, locations);
+    }
+}
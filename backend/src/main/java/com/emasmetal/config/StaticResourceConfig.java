@@ -1,7 +1,12 @@
 package com.emasmetal.config;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -19,8 +24,31 @@ public class StaticResourceConfig implements WebMvcConfigurer {
         Path uploadPath = Paths.get(uploadDir).toAbsolutePath().normalize();
         String uploadLocation = "file:" + uploadPath.toString() + "/";
         
+        // Cache-Control comes from UploadCacheControlResolver, first so it sees
+        // the final resource. No resolver caching: the resolved file depends
+        // on the Accept header
         registry.addResourceHandler("/uploads/**")
                 .addResourceLocations(uploadLocation)
-                .setCachePeriod(3600);
+                .setEtagGenerator(UploadCacheControlResolver::etag)
+                .resourceChain(false)
+                .addResolver(new UploadCacheControlResolver())
+                .addResolver(new ShardedLayoutResourceResolver())
+                .addResolver(new CompressedAtRestResourceResolver())
+                .addResolver(new WebpNegotiatingResourceResolver());
+    }
+    
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // Gallery JPEGs may be answered with WebP, so shared caches must key on Accept
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                String path = request.getRequestURI().substring(request.getContextPath().length() + "/uploads/".length());
+                if (WebpNegotiatingResourceResolver.isNegotiable(path)) {
+                    response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+                }
+                return true;
+            }
+        }).addPathPatterns("/uploads/gallery/**");
     }
 }
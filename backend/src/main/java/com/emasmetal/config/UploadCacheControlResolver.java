@@ -0,0 +1,163 @@
+package com.emasmetal.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.Nullable;
+import org.springframework.web.servlet.resource.AbstractResourceResolver;
+import org.springframework.web.servlet.resource.HttpResource;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Sets {@code Cache-Control} on uploaded files. Stored files are never
+ * rewritten under the same name (content-addressed names are the SHA-256 of
+ * the bytes, UUID names are fresh per upload, and derived files carry the
+ * original's name), so such URLs are cached for a year as immutable. A
+ * changed image gets a new URL from the update paths instead.
+ *
+ * <p>Runs first in the resolver chain and attaches the header to the
+ * resolved resource, which the resource handler only copies onto successful
+ * responses; a missing file answers 404 without being cached.
+ */
+public class UploadCacheControlResolver extends AbstractResourceResolver {
+
+    // <sha256 or uuid>[-suffix].ext, e.g. 9f86...08.jpg or 9f86...08-640.webp
+    private static final Pattern FINGERPRINTED = Pattern.compile(
+            "^(?:[0-9a-f]{64}|[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})(?:-[a-z0-9]+)?\\.[A-Za-z0-9]+$");
+
+    private static final String IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable()
+            .getHeaderValue();
+    private static final String SHORT_LIVED = CacheControl.maxAge(Duration.ofHours(1)).getHeaderValue();
+
+    @Override
+    @Nullable
+    protected Resource resolveResourceInternal(@Nullable HttpServletRequest request, String requestPath,
+                                               List<? extends Resource> locations, ResourceResolverChain chain) {
+        Resource resource = chain.resolveResource(request, requestPath, locations);
+        if (resource == null) {
+            return null;
+        }
+        String filename = requestPath.substring(requestPath.lastIndexOf('/') + 1);
+        return new CacheControlledResource(resource, isFingerprinted(filename) ? IMMUTABLE : SHORT_LIVED);
+    }
+
+    @Override
+    @Nullable
+    protected String resolveUrlPathInternal(String resourceUrlPath, List<? extends Resource> locations,
+                                            ResourceResolverChain chain) {
+        return chain.resolveUrlPath(resourceUrlPath, locations);
+    }
+
+    static boolean isFingerprinted(String filename) {
+        return FINGERPRINTED.matcher(filename).matches();
+    }
+
+    /**
+     * Strong ETag for fingerprinted files: the resolved file name already
+     * identifies the bytes, so nothing needs to be hashed per request. The
+     * resolved name (not the requested one) keeps the JPEG and negotiated
+     * WebP representations apart, and the content coding keeps gzipped and
+     * plain responses apart.
+     */
+    static String etag(Resource resource) {
+        String filename = resource.getFilename();
+        if (filename == null || !isFingerprinted(filename)) {
+            return null;
+        }
+        String coding = resource instanceof HttpResource httpResource
+                ? httpResource.getResponseHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)
+                : null;
+        return "\"" + filename + (coding != null ? "+" + coding : "") + "\"";
+    }
+
+    /**
+     * The resolved resource as is, plus its {@code Cache-Control} on top of
+     * any headers it already carries (e.g. a content coding).
+     */
+    static final class CacheControlledResource extends AbstractResource implements HttpResource {
+
+        private final Resource resource;
+        private final String cacheControl;
+
+        CacheControlledResource(Resource resource, String cacheControl) {
+            this.resource = resource;
+            this.cacheControl = cacheControl;
+        }
+
+        @Override
+        public boolean exists() {
+            return resource.exists();
+        }
+
+        @Override
+        public boolean isReadable() {
+            return resource.isReadable();
+        }
+
+        @Override
+        public boolean isFile() {
+            return resource.isFile();
+        }
+
+        @Override
+        public URL getURL() throws IOException {
+            return resource.getURL();
+        }
+
+        @Override
+        public URI getURI() throws IOException {
+            return resource.getURI();
+        }
+
+        @Override
+        public File getFile() throws IOException {
+            return resource.getFile();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return resource.getInputStream();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return resource.contentLength();
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            return resource.lastModified();
+        }
+
+        @Override
+        public String getFilename() {
+            return resource.getFilename();
+        }
+
+        @Override
+        public String getDescription() {
+            return resource.getDescription();
+        }
+
+        @Override
+        public HttpHeaders getResponseHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            if (resource instanceof HttpResource httpResource) {
+                headers.addAll(httpResource.getResponseHeaders());
+            }
+            headers.set(HttpHeaders.CACHE_CONTROL, cacheControl);
+            return headers;
+        }
+    }
+}
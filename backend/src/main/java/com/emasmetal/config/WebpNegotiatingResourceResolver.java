@@ -0,0 +1,67 @@
+package com.emasmetal.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.web.servlet.resource.PathResourceResolver;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+
+import java.util.List;
+
+/**
+ * Serves the WebP sibling of a gallery JPEG when the client advertises WebP
+ * support in its {@code Accept} header. Clients keep requesting the
+ * {@code .jpg} URL; only the bytes (and Content-Type) change.
+ */
+public class WebpNegotiatingResourceResolver extends PathResourceResolver {
+
+    private static final MediaType WEBP = MediaType.parseMediaType("image/webp");
+
+    @Override
+    @Nullable
+    protected Resource resolveResourceInternal(@Nullable HttpServletRequest request, String requestPath,
+                                               List<? extends Resource> locations, ResourceResolverChain chain) {
+        if (request != null && isNegotiable(requestPath) && acceptsWebp(request)) {
+            String webpPath = requestPath.substring(0, requestPath.lastIndexOf('.')) + ".webp";
+            Resource webp = super.resolveResourceInternal(request, webpPath, locations, chain);
+            if (webp != null) {
+                return webp;
+            }
+        }
+        return super.resolveResourceInternal(request, requestPath, locations, chain);
+    }
+
+    static boolean isNegotiable(String requestPath) {
+        String path = requestPath.toLowerCase();
+        return path.startsWith("gallery/") && (path.endsWith(".jpg") || path.endsWith(".jpeg"));
+    }
+
+    private static boolean acceptsWebp(HttpServletRequest request) {
+        return acceptsWebp(request.getHeader(HttpHeaders.ACCEPT));
+    }
+
+    /**
+     * Whether an {@code Accept} value lists {@code image/webp} itself with a
+     * non-zero q-value. Wildcards don't count: browsers without WebP support
+     * send {@code image/*} and {@code *}/{@code *} too, and the JPEG is
+     * always acceptable to them.
+     */
+    static boolean acceptsWebp(@Nullable String accept) {
+        if (accept == null) {
+            return false;
+        }
+        try {
+            for (MediaType mediaType : MediaType.parseMediaTypes(accept)) {
+                if (WEBP.equalsTypeAndSubtype(mediaType)) {
+                    return mediaType.getQualityValue() > 0;
+                }
+            }
+            return false;
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+}
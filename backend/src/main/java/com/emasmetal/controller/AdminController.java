@@ -0,0 +1,116 @@
+package com.emasmetal.controller;
+
+import com.emasmetal.cache.ListingCache;
+import com.emasmetal.dto.StorageDto;
+import com.emasmetal.service.ContactSearchService;
+import com.emasmetal.service.UploadLayoutMigrationService;
+import com.emasmetal.service.UploadSweeperService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin")
+@RequiredArgsConstructor
+@Tag(name = "Admin", description = "Operational endpoints for administrators")
+public class AdminController {
+    
+    private final List<ListingCache<?, ?>> listingCaches;
+    private final UploadLayoutMigrationService uploadLayoutMigrationService;
+    private final UploadSweeperService uploadSweeperService;
+    private final ContactSearchService contactSearchService;
+    
+    @GetMapping("/cache-stats")
+    @Operation(
+            summary = "Get listing cache statistics", 
+            description = "Hit, miss and eviction counters of the public listing caches (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Cache statistics"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<List<ListingCache.Stats>> getCacheStats() {
+        return ResponseEntity.ok(listingCaches.stream()
+                .map(ListingCache::stats)
+                .toList());
+    }
+    
+    @PostMapping("/storage/layout-migration")
+    @Operation(
+            summary = "Migrate uploads to the sharded layout", 
+            description = "Move files stored in the flat layout into hash-prefix shards and rewrite their URLs "
+                    + "in the background; old URLs keep working (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Migration started, already running, or layout is flat"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<Map<String, Boolean>> migrateUploadLayout() {
+        boolean started = uploadLayoutMigrationService.startMigration();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("started", started));
+    }
+    
+    @PostMapping("/storage/orphan-sweep")
+    @Operation(
+            summary = "Sweep orphaned uploads", 
+            description = "Find uploaded files no record refers to and delete or quarantine them in the background. "
+                    + "With dryRun nothing is removed; fetch the report with GET (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Sweep started or already running"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<Map<String, Boolean>> sweepOrphanedUploads(
+            @RequestParam(defaultValue = "true") boolean dryRun) {
+        boolean started = uploadSweeperService.startSweep(dryRun);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("started", started));
+    }
+    
+    @GetMapping("/storage/orphan-sweep")
+    @Operation(
+            summary = "Get the last orphan sweep report", 
+            description = "Files found, bytes reclaimed and upload sessions expired by the last sweep (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Last report"),
+            @ApiResponse(responseCode = "204", description = "No sweep has run since startup"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<StorageDto.SweepReport> getOrphanSweepReport() {
+        StorageDto.SweepReport report = uploadSweeperService.getLastReport();
+        return report == null ? ResponseEntity.noContent().build() : ResponseEntity.ok(report);
+    }
+    
+    @PostMapping("/search/reindex")
+    @Operation(
+            summary = "Rebuild the message search index", 
+            description = "Rebuild the contact message full-text index in the background; "
+                    + "search and writes keep working meanwhile (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Rebuild started or already running"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<Map<String, Boolean>> reindexMessageSearch() {
+        boolean started = contactSearchService.startReindex();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("started", started));
+    }
+}
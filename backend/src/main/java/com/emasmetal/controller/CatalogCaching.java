@@ -0,0 +1,67 @@
+package com.emasmetal.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * HTTP caching helpers shared by the public catalog controllers.
+ */
+final class CatalogCaching {
+    
+    // Public, but always revalidated: a 304 is cheap and admin edits show up immediately
+    static final CacheControl CACHE_CONTROL = CacheControl.noCache().cachePublic();
+    
+    private CatalogCaching() {
+    }
+    
+    /**
+     * Whether an {@code If-None-Match} header matches the current ETag, for
+     * views that always exist (listings). Weak validators are compared by
+     * their opaque tag, as GET allows.
+     */
+    static boolean notModified(String ifNoneMatch, String etag) {
+        return notModified(ifNoneMatch, etag, () -> true);
+    }
+    
+    /**
+     * As {@link #notModified(String, String)}, for a single resource that may
+     * not exist: {@code *} only matches a current representation, so a
+     * missing resource still gets its 404. {@code exists} is only consulted
+     * for {@code *}; a specific tag of a deleted resource never matches, as
+     * the delete changed the catalog version.
+     */
+    static boolean notModified(String ifNoneMatch, String etag, BooleanSupplier exists) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+            wildcard |= tag.equals("*");
+        }
+        return wildcard && exists.getAsBoolean();
+    }
+    
+    static <T> ResponseEntity<T> notModifiedResponse(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag)
+                .cacheControl(CACHE_CONTROL)
+                .build();
+    }
+    
+    static <T> ResponseEntity<T> okResponse(String etag, T body) {
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CACHE_CONTROL)
+                .body(body);
+    }
+}
@@ -1,13 +1,18 @@
 package com.emasmetal.controller;
 
 import com.emasmetal.dto.ContactMessageDto;
+import com.emasmetal.dto.CursorPage;
+import com.emasmetal.service.ContactSearchService;
 import com.emasmetal.service.ContactService;
+import com.emasmetal.service.InboxEventService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
@@ -15,7 +20,9 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -27,6 +34,8 @@ import java.util.UUID;
 public class ContactController {
     
     private final ContactService contactService;
+    private final ContactSearchService contactSearchService;
+    private final InboxEventService inboxEventService;
     
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(
@@ -46,6 +55,22 @@ public class ContactController {
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
     
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Submit a contact message without a file part", 
+            description = "Submit a new contact inquiry; an attachment uploaded beforehand is referenced by its attachmentToken"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Message submitted successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid input or attachment token")
+    })
+    public ResponseEntity<ContactMessageDto.PublicResponse> submitContactMessageJson(
+            @Valid @RequestBody ContactMessageDto.CreateRequest request) {
+        
+        ContactMessageDto.PublicResponse response = contactService.submitContactMessage(request, null);
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+    
     // Admin-only endpoints below
     
     @GetMapping("/messages")
@@ -70,6 +95,50 @@ public class ContactController {
         return ResponseEntity.ok(messages);
     }
     
+    @GetMapping("/messages/page")
+    @Operation(
+            summary = "Get a page of the inbox", 
+            description = "Cursor-paginated message summaries, newest first; pass nextCursor from the previous page to continue. "
+                    + "The full message comes from GET /messages/{id} (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Page of message summaries"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<CursorPage<ContactMessageDto.Summary>> getInboxPage(
+            @RequestParam(required = false, defaultValue = "false") boolean unreadOnly,
+            @Parameter(description = "Opaque cursor from a previous page")
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        
+        return ResponseEntity.ok(contactService.getInboxPage(unreadOnly, cursor, size));
+    }
+    
+    @GetMapping("/messages/search")
+    @Operation(
+            summary = "Search messages", 
+            description = "Full-text search over sender name, company, email and message, best match first. "
+                    + "Supports quoted phrases, \"or\" and -excluded words; pass nextCursor from the previous page "
+                    + "to continue (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Page of matching message summaries"),
+            @ApiResponse(responseCode = "400", description = "Missing query or invalid cursor"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<CursorPage<ContactMessageDto.Summary>> searchMessages(
+            @Parameter(description = "Search terms, e.g. a part number, material or customer name")
+            @RequestParam("q") String query,
+            @Parameter(description = "Opaque cursor from a previous page")
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        
+        return ResponseEntity.ok(contactSearchService.search(query, cursor, size));
+    }
+    
     @GetMapping("/messages/{id}")
     @Operation(
             summary = "Get a specific message", 
@@ -85,6 +154,26 @@ public class ContactController {
         return ResponseEntity.ok(contactService.getMessage(id));
     }
     
+    @GetMapping("/messages/{id}/attachment")
+    @Operation(
+            summary = "Download a message attachment", 
+            description = "Download the file attached to a contact message; supports Range, multiple ranges and If-Range for resumable downloads (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Attachment content"),
+            @ApiResponse(responseCode = "206", description = "Requested byte ranges"),
+            @ApiResponse(responseCode = "304", description = "Attachment not modified"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Message or attachment not found"),
+            @ApiResponse(responseCode = "416", description = "Range not satisfiable")
+    })
+    public void downloadAttachment(@PathVariable UUID id, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        ContactService.Attachment attachment = contactService.getAttachment(id);
+        FileRangeResponder.serve(request, response, attachment.path(), attachment.filename());
+    }
+    
     @PatchMapping("/messages/{id}/read")
     @Operation(
             summary = "Mark message as read", 
@@ -117,6 +206,69 @@ public class ContactController {
         return ResponseEntity.noContent().build();
     }
     
+    @GetMapping(value = "/messages/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+            summary = "Stream inbox events", 
+            description = "Server-Sent Events stream: \"unread-count\" on connect and whenever the count changes, "
+                    + "\"message\" with a summary of each new message (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Event stream"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public SseEmitter streamInboxEvents() {
+        return inboxEventService.subscribe();
+    }
+    
+    @PostMapping("/messages/bulk/read")
+    @Operation(
+            summary = "Mark messages as read", 
+            description = "Mark the messages selected by id list and/or filter as read in one statement (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Number of messages changed"),
+            @ApiResponse(responseCode = "400", description = "No ids or filters given"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<ContactMessageDto.BulkResult> markAsReadInBulk(
+            @Valid @RequestBody ContactMessageDto.BulkRequest request) {
+        return ResponseEntity.ok(contactService.setReadInBulk(request, true));
+    }
+    
+    @PostMapping("/messages/bulk/unread")
+    @Operation(
+            summary = "Mark messages as unread", 
+            description = "Mark the messages selected by id list and/or filter as unread in one statement (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Number of messages changed"),
+            @ApiResponse(responseCode = "400", description = "No ids or filters given"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<ContactMessageDto.BulkResult> markAsUnreadInBulk(
+            @Valid @RequestBody ContactMessageDto.BulkRequest request) {
+        return ResponseEntity.ok(contactService.setReadInBulk(request, false));
+    }
+    
+    @PostMapping("/messages/bulk/delete")
+    @Operation(
+            summary = "Delete messages", 
+            description = "Delete the messages selected by id list and/or filter in one statement; attachments are cleaned up in the background (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Number of messages deleted"),
+            @ApiResponse(responseCode = "400", description = "No ids or filters given"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<ContactMessageDto.BulkResult> deleteInBulk(
+            @Valid @RequestBody ContactMessageDto.BulkRequest request) {
+        return ResponseEntity.ok(contactService.deleteInBulk(request));
+    }
+    
     @GetMapping("/messages/unread-count")
     @Operation(
             summary = "Get unread message count", 
@@ -0,0 +1,241 @@
+package com.emasmetal.controller;
+
+import com.emasmetal.config.CompressedAtRestResourceResolver;
+import com.emasmetal.service.FileStorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Writes a stored file as a download with HTTP Range support: single and
+ * multiple ranges ({@code multipart/byteranges}), {@code If-Range}, and
+ * conditional GETs. Only a whole file or single range served through
+ * Tomcat's sendfile, when the connector offers it, goes from the file to
+ * the socket without passing through the JVM. Otherwise
+ * {@link FileChannel#transferTo} writes into a channel over the servlet
+ * output stream, which copies through heap buffers. Every
+ * {@code multipart/byteranges} response takes that path. A compressed
+ * file inflated for a client without gzip is also copied, through a
+ * stream.
+ */
+final class FileRangeResponder {
+    
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final String GZIP = "gzip";
+    
+    private FileRangeResponder() {
+    }
+    
+    /**
+     * @param file     the file on disk; a {@code .gz} file kept compressed at
+     *                 rest is sent pre-encoded to clients that accept gzip and
+     *                 decompressed (without range support) to the others
+     * @param filename the name offered to the client
+     */
+    static void serve(HttpServletRequest request, HttpServletResponse response, Path file, String filename)
+            throws IOException {
+        MediaType mediaType = MediaTypeFactory.getMediaType(filename).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename(filename, StandardCharsets.UTF_8).build().toString());
+        
+        String contentEncoding = null;
+        if (file.getFileName().toString().endsWith(FileStorageService.GZIP_SUFFIX)) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (!acceptsGzip(request)) {
+                streamDecompressed(response, file, mediaType);
+                return;
+            }
+            contentEncoding = GZIP;
+        }
+        
+        long length = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        String etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length)
+                + (contentEncoding != null ? "-" + contentEncoding : "") + "\"";
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+        
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (contentEncoding != null) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+        }
+        
+        List<HttpRange> ranges = requestedRanges(request, etag, lastModified);
+        if (ranges.isEmpty()) {
+            response.setContentType(mediaType.toString());
+            sendRegion(request, response, file, 0, length);
+            return;
+        }
+        
+        List<long[]> regions = new ArrayList<>();
+        long total = 0;
+        try {
+            for (HttpRange range : ranges) {
+                long start = range.getRangeStart(length);
+                long end = range.getRangeEnd(length);
+                // HttpRange clamps the end to the file but leaves the start alone
+                if (start >= length) {
+                    throw new IllegalArgumentException("Range starts past the end of the file");
+                }
+                regions.add(new long[]{start, end});
+                total += end - start + 1;
+            }
+        } catch (IllegalArgumentException e) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        if (total > length) {
+            // Overlapping ranges asking for more than the file; just send it once
+            response.setContentType(mediaType.toString());
+            sendRegion(request, response, file, 0, length);
+            return;
+        }
+        
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        if (regions.size() == 1) {
+            long[] region = regions.get(0);
+            response.setContentType(mediaType.toString());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, contentRange(region, length));
+            sendRegion(request, response, file, region[0], region[1] - region[0] + 1);
+        } else {
+            sendMultipart(response, file, mediaType, regions, length);
+        }
+    }
+    
+    /**
+     * Ranges to honour; empty for a full response. Malformed Range headers
+     * are ignored, as are ranges whose If-Range validator no longer matches.
+     */
+    private static List<HttpRange> requestedRanges(HttpServletRequest request, String etag, long lastModified) {
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range == null) {
+            return List.of();
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null) {
+            boolean matches;
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+                // Only a strong comparison can validate a range request
+                matches = ifRange.equals(etag);
+            } else {
+                try {
+                    matches = request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+                } catch (IllegalArgumentException e) {
+                    matches = false;
+                }
+            }
+            if (!matches) {
+                return List.of();
+            }
+        }
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+    }
+    
+    private static void sendRegion(HttpServletRequest request, HttpServletResponse response, Path file,
+                                   long start, long count) throws IOException {
+        response.setContentLengthLong(count);
+        if (count == 0) {
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat writes the region itself once the request returns
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + count);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            transfer(channel, start, count, Channels.newChannel(response.getOutputStream()));
+        }
+    }
+    
+    private static void sendMultipart(HttpServletResponse response, Path file, MediaType mediaType,
+                                      List<long[]> regions, long length) throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        List<byte[]> partHeaders = new ArrayList<>();
+        long contentLength = 0;
+        for (long[] region : regions) {
+            byte[] header = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + mediaType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + contentRange(region, length) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(header);
+            contentLength += header.length + region[1] - region[0] + 1;
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+        
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        
+        OutputStream output = response.getOutputStream();
+        WritableByteChannel target = Channels.newChannel(output);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int i = 0; i < regions.size(); i++) {
+                long[] region = regions.get(i);
+                output.write(partHeaders.get(i));
+                transfer(channel, region[0], region[1] - region[0] + 1, target);
+            }
+        }
+        output.write(closing);
+    }
+    
+    private static void streamDecompressed(HttpServletResponse response, Path file, MediaType mediaType)
+            throws IOException {
+        response.setContentType(mediaType.toString());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "none");
+        try (InputStream input = new GZIPInputStream(Files.newInputStream(file), 64 * 1024)) {
+            input.transferTo(response.getOutputStream());
+        }
+    }
+    
+    private static void transfer(FileChannel channel, long position, long count, WritableByteChannel target)
+            throws IOException {
+        long end = position + count;
+        while (position < end) {
+            long sent = channel.transferTo(position, end - position, target);
+            if (sent <= 0) {
+                throw new EOFException("File shrank while being sent");
+            }
+            position += sent;
+        }
+    }
+    
+    private static String contentRange(long[] region, long length) {
+        return "bytes " + region[0] + "-" + region[1] + "/" + length;
+    }
+    
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        return CompressedAtRestResourceResolver.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+}
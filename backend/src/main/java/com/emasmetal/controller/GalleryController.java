@@ -1,6 +1,10 @@
 package com.emasmetal.controller;
 
+import com.emasmetal.dto.CursorPage;
 import com.emasmetal.dto.GalleryItemDto;
+import com.emasmetal.service.CatalogVersions;
+import com.emasmetal.service.GalleryBulkImportService;
+import com.emasmetal.service.GalleryImageService;
 import com.emasmetal.service.GalleryService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -8,15 +12,19 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @RestController
@@ -26,31 +34,76 @@ import java.util.UUID;
 public class GalleryController {
     
     private final GalleryService galleryService;
+    private final GalleryImageService galleryImageService;
+    private final GalleryBulkImportService galleryBulkImportService;
+    private final CatalogVersions catalogVersions;
     
     @GetMapping
     @Operation(summary = "Get all gallery items", description = "Retrieve all gallery images")
-    @ApiResponse(responseCode = "200", description = "List of gallery items")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "List of gallery items"),
+            @ApiResponse(responseCode = "304", description = "Listing not modified")
+    })
     public ResponseEntity<List<GalleryItemDto.Response>> getAllGalleryItems(
-            @RequestParam(required = false) String category) {
+            @RequestParam(required = false) String category,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
+        boolean filtered = category != null && !category.isBlank();
+        String etag = catalogVersions.etag(CatalogVersions.Catalog.GALLERY, "list", filtered ? category : null);
+        if (CatalogCaching.notModified(ifNoneMatch, etag)) {
+            return CatalogCaching.notModifiedResponse(etag);
+        }
         
         List<GalleryItemDto.Response> items;
-        if (category != null && !category.isBlank()) {
+        if (filtered) {
             items = galleryService.getGalleryItemsByCategory(category);
         } else {
             items = galleryService.getAllGalleryItems();
         }
-        return ResponseEntity.ok(items);
+        return CatalogCaching.okResponse(etag, items);
+    }
+    
+    @GetMapping("/page")
+    @Operation(
+            summary = "Get a page of gallery items", 
+            description = "Cursor-paginated listing; pass nextCursor from the previous page to continue"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Page of gallery items"),
+            @ApiResponse(responseCode = "304", description = "Page not modified"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor")
+    })
+    public ResponseEntity<CursorPage<GalleryItemDto.Response>> getGalleryPage(
+            @RequestParam(required = false) String category,
+            @Parameter(description = "Opaque cursor from a previous page")
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
+        String filter = category != null && !category.isBlank() ? category : null;
+        String etag = catalogVersions.etag(CatalogVersions.Catalog.GALLERY, "page", filter, cursor, size);
+        if (CatalogCaching.notModified(ifNoneMatch, etag)) {
+            return CatalogCaching.notModifiedResponse(etag);
+        }
+        return CatalogCaching.okResponse(etag, galleryService.getGalleryPage(filter, cursor, size));
     }
     
     @GetMapping("/{id}")
     @Operation(summary = "Get gallery item by ID", description = "Retrieve a specific gallery item")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Gallery item found"),
+            @ApiResponse(responseCode = "304", description = "Gallery item not modified"),
             @ApiResponse(responseCode = "404", description = "Gallery item not found")
     })
     public ResponseEntity<GalleryItemDto.Response> getGalleryItem(
-            @PathVariable UUID id) {
-        return ResponseEntity.ok(galleryService.getGalleryItem(id));
+            @PathVariable UUID id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
+        String etag = catalogVersions.etag(CatalogVersions.Catalog.GALLERY, "item", id);
+        if (CatalogCaching.notModified(ifNoneMatch, etag, () -> galleryService.galleryItemExists(id))) {
+            return CatalogCaching.notModifiedResponse(etag);
+        }
+        return CatalogCaching.okResponse(etag, galleryService.getGalleryItem(id));
     }
     
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -73,6 +126,44 @@ public class GalleryController {
         return ResponseEntity.status(HttpStatus.CREATED).body(created);
     }
     
+    @PostMapping(value = "/bulk", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(
+            summary = "Upload many gallery items", 
+            description = "Create one gallery item per uploaded image; titles are taken from the filenames (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Per-file import results"),
+            @ApiResponse(responseCode = "400", description = "Invalid input"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<GalleryItemDto.BulkResponse> bulkUploadGalleryItems(
+            @Valid @RequestPart(value = "data", required = false) GalleryItemDto.BulkCreateRequest request,
+            @Parameter(description = "Gallery images")
+            @RequestPart("files") List<MultipartFile> files) {
+        
+        return ResponseEntity.ok(galleryBulkImportService.importFiles(request, files));
+    }
+    
+    @PostMapping(value = "/bulk", consumes = {"application/zip", "application/x-zip-compressed"})
+    @Operation(
+            summary = "Upload a ZIP of gallery images", 
+            description = "Stream a ZIP archive as the request body and create one gallery item per image in it. "
+                    + "Not subject to the multipart size limit (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Per-file import results"),
+            @ApiResponse(responseCode = "400", description = "Invalid input"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<GalleryItemDto.BulkResponse> bulkUploadGalleryArchive(
+            @Valid @ModelAttribute GalleryItemDto.BulkCreateRequest request,
+            HttpServletRequest httpRequest) throws IOException {
+        
+        return ResponseEntity.ok(galleryBulkImportService.importArchive(request, httpRequest.getInputStream()));
+    }
+    
     @PutMapping(value = "/{id}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(
             summary = "Update a gallery item", 
@@ -94,6 +185,25 @@ public class GalleryController {
         return ResponseEntity.ok(galleryService.updateGalleryItem(id, request, image));
     }
     
+    @PostMapping("/{id}/move")
+    @Operation(
+            summary = "Move a gallery item", 
+            description = "Place a gallery item between two neighbours in the listing order; only the moved item is updated (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Gallery item moved"),
+            @ApiResponse(responseCode = "400", description = "Invalid neighbours"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Gallery item or neighbour not found")
+    })
+    public ResponseEntity<GalleryItemDto.Response> moveGalleryItem(
+            @PathVariable UUID id,
+            @RequestBody GalleryItemDto.MoveRequest request) {
+        
+        return ResponseEntity.ok(galleryService.moveGalleryItem(id, request));
+    }
+    
     @DeleteMapping("/{id}")
     @Operation(
             summary = "Delete a gallery item", 
@@ -109,4 +219,19 @@ public class GalleryController {
         galleryService.deleteGalleryItem(id);
         return ResponseEntity.noContent().build();
     }
+    
+    @PostMapping("/images/backfill")
+    @Operation(
+            summary = "Backfill gallery thumbnails and variants", 
+            description = "Generate thumbnails and resized variants in the background for items that are missing them (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Backfill started or already running"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public ResponseEntity<Map<String, Boolean>> backfillImages() {
+        boolean started = galleryImageService.startImageBackfill();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("started", started));
+    }
 }
@@ -1,6 +1,8 @@
 package com.emasmetal.controller;
 
+import com.emasmetal.dto.CursorPage;
 import com.emasmetal.dto.ReferenceDto;
+import com.emasmetal.service.CatalogVersions;
 import com.emasmetal.service.ReferenceService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -12,6 +14,7 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -28,31 +31,74 @@ import java.util.UUID;
 public class ReferenceController {
     
     private final ReferenceService referenceService;
+    private final CatalogVersions catalogVersions;
     
     @GetMapping
     @Operation(summary = "Get all references", description = "Retrieve all client references")
-    @ApiResponse(responseCode = "200", description = "List of references")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "List of references"),
+            @ApiResponse(responseCode = "304", description = "Listing not modified")
+    })
     public ResponseEntity<List<ReferenceDto.Response>> getAllReferences(
-            @RequestParam(required = false) String industry) {
+            @RequestParam(required = false) String industry,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
+        boolean filtered = industry != null && !industry.isBlank();
+        String etag = catalogVersions.etag(CatalogVersions.Catalog.REFERENCES, "list", filtered ? industry : null);
+        if (CatalogCaching.notModified(ifNoneMatch, etag)) {
+            return CatalogCaching.notModifiedResponse(etag);
+        }
         
         List<ReferenceDto.Response> references;
-        if (industry != null && !industry.isBlank()) {
+        if (filtered) {
             references = referenceService.getReferencesByIndustry(industry);
         } else {
             references = referenceService.getAllReferences();
         }
-        return ResponseEntity.ok(references);
+        return CatalogCaching.okResponse(etag, references);
+    }
+    
+    @GetMapping("/page")
+    @Operation(
+            summary = "Get a page of references", 
+            description = "Cursor-paginated listing; pass nextCursor from the previous page to continue"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Page of references"),
+            @ApiResponse(responseCode = "304", description = "Page not modified"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor")
+    })
+    public ResponseEntity<CursorPage<ReferenceDto.Response>> getReferencesPage(
+            @RequestParam(required = false) String industry,
+            @Parameter(description = "Opaque cursor from a previous page")
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
+        String filter = industry != null && !industry.isBlank() ? industry : null;
+        String etag = catalogVersions.etag(CatalogVersions.Catalog.REFERENCES, "page", filter, cursor, size);
+        if (CatalogCaching.notModified(ifNoneMatch, etag)) {
+            return CatalogCaching.notModifiedResponse(etag);
+        }
+        return CatalogCaching.okResponse(etag, referenceService.getReferencePage(filter, cursor, size));
     }
     
     @GetMapping("/{id}")
     @Operation(summary = "Get reference by ID", description = "Retrieve a specific reference")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Reference found"),
+            @ApiResponse(responseCode = "304", description = "Reference not modified"),
             @ApiResponse(responseCode = "404", description = "Reference not found")
     })
     public ResponseEntity<ReferenceDto.Response> getReference(
-            @PathVariable UUID id) {
-        return ResponseEntity.ok(referenceService.getReference(id));
+            @PathVariable UUID id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
+        String etag = catalogVersions.etag(CatalogVersions.Catalog.REFERENCES, "item", id);
+        if (CatalogCaching.notModified(ifNoneMatch, etag, () -> referenceService.referenceExists(id))) {
+            return CatalogCaching.notModifiedResponse(etag);
+        }
+        return CatalogCaching.okResponse(etag, referenceService.getReference(id));
     }
     
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -96,6 +142,25 @@ public class ReferenceController {
         return ResponseEntity.ok(referenceService.updateReference(id, request, logo));
     }
     
+    @PostMapping("/{id}/move")
+    @Operation(
+            summary = "Move a reference", 
+            description = "Place a reference between two neighbours in the listing order; only the moved item is updated (admin only)",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Reference moved"),
+            @ApiResponse(responseCode = "400", description = "Invalid neighbours"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Reference or neighbour not found")
+    })
+    public ResponseEntity<ReferenceDto.Response> moveReference(
+            @PathVariable UUID id,
+            @RequestBody ReferenceDto.MoveRequest request) {
+        
+        return ResponseEntity.ok(referenceService.moveReference(id, request));
+    }
+    
     @DeleteMapping("/{id}")
     @Operation(
             summary = "Delete a reference", 
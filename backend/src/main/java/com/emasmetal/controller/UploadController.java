@@ -0,0 +1,123 @@
+package com.emasmetal.controller;
+
+import com.emasmetal.dto.UploadDto;
+import com.emasmetal.service.UploadService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/uploads")
+@RequiredArgsConstructor
+@Tag(name = "Uploads", description = "Streaming file uploads for contact attachments")
+public class UploadController {
+    
+    static final String UPLOAD_OFFSET = "Upload-Offset";
+    static final String UPLOAD_LENGTH = "Upload-Length";
+    static final String TUS_RESUMABLE = "Tus-Resumable";
+    private static final String TUS_VERSION = "1.0.0";
+    
+    private final UploadService uploadService;
+    
+    @PostMapping("/attachments")
+    @Operation(
+            summary = "Upload an attachment", 
+            description = "Send the file as the raw request body. It is checked and written to storage while it "
+                    + "streams in; quote the returned token as attachmentToken when submitting the contact message"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Attachment stored"),
+            @ApiResponse(responseCode = "400", description = "Invalid file type, content or size")
+    })
+    public ResponseEntity<UploadDto.Response> uploadAttachment(
+            @Parameter(description = "Original file name, including its extension")
+            @RequestParam String filename,
+            HttpServletRequest request) throws IOException {
+        
+        UploadDto.Response response = uploadService.uploadAttachment(filename, request.getInputStream());
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+    
+    @PostMapping("/attachments/resumable")
+    @Operation(
+            summary = "Start a resumable upload", 
+            description = "Declares the file name and total size. Send the content with PATCH requests to the "
+                    + "returned Location; if a request fails, HEAD the Location and resume from Upload-Offset"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Upload created"),
+            @ApiResponse(responseCode = "400", description = "Invalid file type or size")
+    })
+    public ResponseEntity<UploadDto.Status> createResumableUpload(
+            @Parameter(description = "Original file name, including its extension")
+            @RequestParam String filename,
+            @Parameter(description = "Total size of the file in bytes")
+            @RequestHeader(UPLOAD_LENGTH) long uploadLength) {
+        
+        UploadDto.Status status = uploadService.createResumableUpload(filename, uploadLength);
+        URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/uploads/attachments/{token}")
+                .buildAndExpand(status.getToken())
+                .toUri();
+        return ResponseEntity.created(location)
+                .header(UPLOAD_OFFSET, String.valueOf(status.getOffset()))
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .body(status);
+    }
+    
+    @RequestMapping(value = "/attachments/{token}", method = {RequestMethod.HEAD, RequestMethod.GET})
+    @Operation(summary = "Get resumable upload progress", description = "Reports how many bytes have been received")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Upload found"),
+            @ApiResponse(responseCode = "404", description = "Upload not found")
+    })
+    public ResponseEntity<UploadDto.Status> getUploadStatus(
+            @Parameter(description = "Upload token") @PathVariable UUID token) {
+        
+        UploadDto.Status status = uploadService.getUploadStatus(token);
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .header(UPLOAD_OFFSET, String.valueOf(status.getOffset()))
+                .header(UPLOAD_LENGTH, String.valueOf(status.getLength()))
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .body(status);
+    }
+    
+    @PatchMapping("/attachments/{token}")
+    @Operation(
+            summary = "Send part of a resumable upload", 
+            description = "The raw request body is written at Upload-Offset, which must match the offset the "
+                    + "server reports. The upload completes when the last byte arrives"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Chunk stored; Upload-Offset holds the new offset"),
+            @ApiResponse(responseCode = "400", description = "Chunk too long or content does not match the file type"),
+            @ApiResponse(responseCode = "404", description = "Upload not found"),
+            @ApiResponse(responseCode = "409", description = "Offset mismatch or upload already complete")
+    })
+    public ResponseEntity<Void> appendChunk(
+            @Parameter(description = "Upload token") @PathVariable UUID token,
+            @Parameter(description = "Offset the chunk starts at")
+            @RequestHeader(UPLOAD_OFFSET) long offset,
+            HttpServletRequest request) throws IOException {
+        
+        UploadDto.Status status = uploadService.appendChunk(token, offset, request.getInputStream());
+        return ResponseEntity.noContent()
+                .header(UPLOAD_OFFSET, String.valueOf(status.getOffset()))
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .build();
+    }
+}
@@ -1,5 +1,6 @@
 package com.emasmetal.dto;
 
+import com.emasmetal.entity.AttachmentStatus;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
@@ -9,6 +10,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
 public class ContactMessageDto {
@@ -26,6 +28,30 @@ public class ContactMessageDto {
         private String message;
         private String attachmentUrl;
         private String attachmentFilename;
+        private AttachmentStatus attachmentStatus;
+        private String attachmentContentType;
+        private String attachmentSha256;
+        private Long attachmentBytes;
+        private String attachmentPreviewUrl;
+        private Boolean isRead;
+        private LocalDateTime createdAt;
+    }
+    
+    /**
+     * Inbox row, selected directly by the repository; the field order is the
+     * constructor order the query relies on. The full body comes from the
+     * detail endpoint.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Summary {
+        private UUID id;
+        private String name;
+        private String company;
+        private String snippet;
+        private boolean hasAttachment;
         private Boolean isRead;
         private LocalDateTime createdAt;
     }
@@ -53,6 +79,34 @@ public class ContactMessageDto {
         @NotBlank(message = "Message is required")
         @Size(min = 10, max = 2000, message = "Message must be between 10 and 2000 characters")
         private String message;
+        
+        private UUID attachmentToken; // from POST /api/uploads/attachments, instead of a multipart attachment
+    }
+    
+    /**
+     * Selects messages for a bulk action: the listed ids, narrowed by the
+     * optional filters, or every message the filters match when no ids are
+     * given. At least one criterion is required.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BulkRequest {
+        @Size(max = 1000, message = "At most 1000 ids per request")
+        private List<UUID> ids; // null: no id filter; an empty list is rejected
+        
+        private Boolean isRead; // only read (true) or only unread (false) messages
+        
+        private LocalDateTime receivedBefore;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BulkResult {
+        private int affected;
     }
     
     @Data
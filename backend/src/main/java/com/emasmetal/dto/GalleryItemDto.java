@@ -8,6 +8,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
 public class GalleryItemDto {
@@ -21,12 +22,31 @@ public class GalleryItemDto {
         private String title;
         private String imageUrl;
         private String thumbnailUrl;
+        private List<ImageVariant> variants;
+        private Integer imageWidth;
+        private Integer imageHeight;
+        private Long imageBytes;
+        private String dominantColor; // "#rrggbb"
+        private String blurHash;
         private String category;
         private String description;
         private Integer displayOrder;
         private LocalDateTime createdAt;
     }
     
+    /**
+     * One resized rendition of the gallery image, for building {@code srcset}.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ImageVariant {
+        private Integer width;
+        private String format; // "jpg" or "webp"
+        private String url;
+    }
+    
     @Data
     @Builder
     @NoArgsConstructor
@@ -61,4 +81,57 @@ public class GalleryItemDto {
         
         private Integer displayOrder;
     }
+    
+    /**
+     * New position for one item, given by its neighbours in the full listing.
+     * Leave previousId empty to move to the top, nextId to move to the bottom.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class MoveRequest {
+        private UUID previousId;
+        private UUID nextId;
+    }
+    
+    /**
+     * Shared metadata for a bulk upload; titles are taken from the filenames.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BulkCreateRequest {
+        @Size(max = 50, message = "Category must be less than 50 characters")
+        private String category;
+        
+        @Size(max = 500, message = "Description must be less than 500 characters")
+        private String description;
+        
+        private Integer displayOrder; // assigned to the first file, incremented for each following one
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BulkResult {
+        private String filename;
+        private boolean success;
+        private UUID id;
+        private String imageUrl;
+        private String error;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BulkResponse {
+        private int total;
+        private int created;
+        private int failed;
+        private List<BulkResult> results;
+    }
 }
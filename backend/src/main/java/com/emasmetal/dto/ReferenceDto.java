@@ -67,4 +67,17 @@ public class ReferenceDto {
         
         private Integer displayOrder;
     }
+    
+    /**
+     * New position for one item, given by its neighbours in the full listing.
+     * Leave previousId empty to move to the top, nextId to move to the bottom.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class MoveRequest {
+        private UUID previousId;
+        private UUID nextId;
+    }
 }
@@ -0,0 +1,30 @@
+package com.emasmetal.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+public class StorageDto {
+    
+    /**
+     * Outcome of one pass of the orphaned upload sweeper.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SweepReport {
+        private LocalDateTime startedAt;
+        private LocalDateTime finishedAt;
+        private String mode;
+        private boolean dryRun;
+        private long scannedFiles;
+        private long orphanedFiles;
+        private long reclaimedBytes;
+        private long expiredUploadSessions;
+        private long purgedQuarantineFiles;
+    }
+}
@@ -0,0 +1,35 @@
+package com.emasmetal.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+public class UploadDto {
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Response {
+        private UUID token;
+        private String filename;
+        private Long size;
+    }
+    
+    /**
+     * Progress of a resumable upload; complete once offset equals length.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Status {
+        private UUID token;
+        private long offset;
+        private long length;
+        private boolean complete;
+    }
+}
@@ -0,0 +1,15 @@
+package com.emasmetal.entity;
+
+/**
+ * Outcome of the background check of a contact message attachment.
+ */
+public enum AttachmentStatus {
+    /** Stored, not inspected yet */
+    PENDING,
+    /** Content matches the file's extension */
+    VERIFIED,
+    /** Content is some other format than the extension claims */
+    MISMATCH,
+    /** The stored file could not be found or read */
+    MISSING
+}
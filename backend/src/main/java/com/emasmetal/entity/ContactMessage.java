@@ -11,7 +11,12 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "contact_messages")
+@Table(name = "contact_messages", indexes = {
+        @Index(name = "idx_contact_messages_attachment_url", columnList = "attachment_url"),
+        @Index(name = "idx_contact_messages_attachment_status", columnList = "attachment_status"),
+        @Index(name = "idx_contact_messages_inbox", columnList = "created_at DESC, id DESC"),
+        @Index(name = "idx_contact_messages_unread_inbox", columnList = "is_read, created_at DESC, id DESC")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -43,6 +48,27 @@ public class ContactMessage {
     @Column(name = "attachment_filename")
     private String attachmentFilename;
     
+    @Enumerated(EnumType.STRING)
+    @Column(name = "attachment_status", length = 16)
+    private AttachmentStatus attachmentStatus;
+    
+    // Type sniffed from the content, not the one the client sent
+    @Column(name = "attachment_content_type", length = 100)
+    private String attachmentContentType;
+    
+    @Column(name = "attachment_sha256", length = 64)
+    private String attachmentSha256;
+    
+    @Column(name = "attachment_bytes")
+    private Long attachmentBytes;
+    
+    // Size on disk; smaller than attachmentBytes for files kept compressed
+    @Column(name = "attachment_stored_bytes")
+    private Long attachmentStoredBytes;
+    
+    @Column(name = "attachment_preview_url")
+    private String attachmentPreviewUrl;
+    
     @Column(name = "is_read")
     @Builder.Default
     private Boolean isRead = false;
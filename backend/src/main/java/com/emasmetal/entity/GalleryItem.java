@@ -11,7 +11,11 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "gallery_items")
+@Table(name = "gallery_items", indexes = {
+        @Index(name = "idx_gallery_items_rank", columnList = "sort_rank, created_at DESC, id"),
+        @Index(name = "idx_gallery_items_category_rank", columnList = "category, sort_rank, created_at DESC, id"),
+        @Index(name = "idx_gallery_items_image_url", columnList = "image_url")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -31,6 +35,32 @@ public class GalleryItem {
     @Column(name = "thumbnail_url")
     private String thumbnailUrl;
     
+    /** Comma-separated widths of the resized variants, e.g. "320,640,1280" */
+    @Column(name = "variant_widths")
+    private String variantWidths;
+    
+    /** Comma-separated formats every variant exists in, e.g. "jpg,webp" */
+    @Column(name = "variant_formats")
+    private String variantFormats;
+    
+    /** Intrinsic size of the original, so clients can reserve its box before it loads */
+    @Column(name = "image_width")
+    private Integer imageWidth;
+    
+    @Column(name = "image_height")
+    private Integer imageHeight;
+    
+    @Column(name = "image_bytes")
+    private Long imageBytes;
+    
+    /** Average color as "#rrggbb", for a flat placeholder */
+    @Column(name = "dominant_color", length = 7)
+    private String dominantColor;
+    
+    /** BlurHash string for a blurred placeholder */
+    @Column(name = "blur_hash", length = 64)
+    private String blurHash;
+    
     @Column(name = "category")
     private String category; // "Milling", "Turning", "Parts", "Factory"
     
@@ -40,6 +70,10 @@ public class GalleryItem {
     @Column(name = "display_order")
     private Integer displayOrder;
     
+    /** Position in listings; see {@code Ranks}. Moves change only this column */
+    @Column(name = "sort_rank")
+    private Double sortRank;
+    
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
@@ -0,0 +1,32 @@
+package com.emasmetal.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Shared rate limiter state, used when several instances must enforce one
+ * limit together. Rows are only read and written with single-statement
+ * upserts; expired rows are purged periodically.
+ */
+@Entity
+@Table(name = "rate_limit_buckets", indexes = {
+        @Index(name = "idx_rate_limit_buckets_tat", columnList = "tat")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RateLimitBucket {
+    
+    // Scope plus a hash of the client address or email; the raw values are never stored
+    @Id
+    @Column(name = "bucket_key", length = 80)
+    private String bucketKey;
+    
+    // Theoretical arrival time of the next request, epoch millis on the database clock
+    @Column(name = "tat", nullable = false)
+    private Long tat;
+}
@@ -11,7 +11,11 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "company_references")
+@Table(name = "company_references", indexes = {
+        @Index(name = "idx_company_references_rank", columnList = "sort_rank, created_at DESC, id"),
+        @Index(name = "idx_company_references_industry_rank", columnList = "industry, sort_rank, created_at DESC, id"),
+        @Index(name = "idx_company_references_logo_url", columnList = "logo_url")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -40,6 +44,10 @@ public class Reference {
     @Column(name = "display_order")
     private Integer displayOrder;
     
+    /** Position in listings; see {@code Ranks}. Moves change only this column */
+    @Column(name = "sort_rank")
+    private Double sortRank;
+    
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
@@ -0,0 +1,55 @@
+package com.emasmetal.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A file uploaded ahead of the message it belongs to. The id is the token
+ * the client quotes when it submits the message; a session can be claimed
+ * by one message only. Resumable uploads arrive in chunks: uploadOffset
+ * counts the bytes received so far, and fileUrl is set once all
+ * uploadLength bytes are in.
+ */
+@Entity
+@Table(name = "upload_sessions")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+    
+    @Column(name = "original_filename", nullable = false)
+    private String originalFilename;
+    
+    @Column(name = "file_url")
+    private String fileUrl;
+    
+    @Column(name = "size_bytes")
+    private Long sizeBytes;
+    
+    @Column(name = "upload_length")
+    private Long uploadLength;
+    
+    @Column(name = "upload_offset", nullable = false)
+    @Builder.Default
+    private Long uploadOffset = 0L;
+    
+    @Column(name = "claimed", nullable = false)
+    @Builder.Default
+    private Boolean claimed = false;
+    
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+}
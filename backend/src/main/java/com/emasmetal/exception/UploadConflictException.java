@@ -0,0 +1,17 @@
+package com.emasmetal.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A chunk of a resumable upload does not start where the server's copy
+ * ends, or the upload is already finished. The client should ask for the
+ * current offset and resume from there.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class UploadConflictException extends RuntimeException {
+    
+    public UploadConflictException(String message) {
+        super(message);
+    }
+}
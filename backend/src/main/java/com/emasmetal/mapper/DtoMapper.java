@@ -6,11 +6,20 @@ import com.emasmetal.dto.ReferenceDto;
 import com.emasmetal.entity.ContactMessage;
 import com.emasmetal.entity.GalleryItem;
 import com.emasmetal.entity.Reference;
+import com.emasmetal.repository.ContactMessageRepository;
+import com.emasmetal.service.FileStorageService;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Component
+@RequiredArgsConstructor
 public class DtoMapper {
     
+    private final FileStorageService fileStorageService;
+    
     // Reference Mappings
     public ReferenceDto.Response toResponse(Reference entity) {
         if (entity == null) return null;
@@ -56,6 +65,12 @@ public class DtoMapper {
                 .title(entity.getTitle())
                 .imageUrl(entity.getImageUrl())
                 .thumbnailUrl(entity.getThumbnailUrl())
+                .variants(toVariants(entity))
+                .imageWidth(entity.getImageWidth())
+                .imageHeight(entity.getImageHeight())
+                .imageBytes(entity.getImageBytes())
+                .dominantColor(entity.getDominantColor())
+                .blurHash(entity.getBlurHash())
                 .category(entity.getCategory())
                 .description(entity.getDescription())
                 .displayOrder(entity.getDisplayOrder())
@@ -63,6 +78,24 @@ public class DtoMapper {
                 .build();
     }
     
+    private List<GalleryItemDto.ImageVariant> toVariants(GalleryItem entity) {
+        List<GalleryItemDto.ImageVariant> variants = new ArrayList<>();
+        if (entity.getVariantWidths() == null || entity.getVariantWidths().isBlank()
+                || entity.getVariantFormats() == null) {
+            return variants;
+        }
+        for (String format : entity.getVariantFormats().split(",")) {
+            for (String width : entity.getVariantWidths().split(",")) {
+                variants.add(GalleryItemDto.ImageVariant.builder()
+                        .width(Integer.valueOf(width))
+                        .format(format)
+                        .url(fileStorageService.derivedFileUrl(entity.getImageUrl(), width, format))
+                        .build());
+            }
+        }
+        return variants;
+    }
+    
     public GalleryItem toEntity(GalleryItemDto.CreateRequest dto) {
         if (dto == null) return null;
         
@@ -94,6 +127,27 @@ public class DtoMapper {
                 .message(entity.getMessage())
                 .attachmentUrl(entity.getAttachmentUrl())
                 .attachmentFilename(entity.getAttachmentFilename())
+                .attachmentStatus(entity.getAttachmentStatus())
+                .attachmentContentType(entity.getAttachmentContentType())
+                .attachmentSha256(entity.getAttachmentSha256())
+                .attachmentBytes(entity.getAttachmentBytes())
+                .attachmentPreviewUrl(entity.getAttachmentPreviewUrl())
+                .isRead(entity.getIsRead())
+                .createdAt(entity.getCreatedAt())
+                .build();
+    }
+    
+    public ContactMessageDto.Summary toSummary(ContactMessage entity) {
+        if (entity == null) return null;
+        
+        String message = entity.getMessage();
+        return ContactMessageDto.Summary.builder()
+                .id(entity.getId())
+                .name(entity.getName())
+                .company(entity.getCompany())
+                .snippet(message != null && message.length() > ContactMessageRepository.SNIPPET_LENGTH
+                        ? message.substring(0, ContactMessageRepository.SNIPPET_LENGTH) : message)
+                .hasAttachment(entity.getAttachmentUrl() != null)
                 .isRead(entity.getIsRead())
                 .createdAt(entity.getCreatedAt())
                 .build();
@@ -1,18 +1,123 @@
 package com.emasmetal.repository;
 
+import com.emasmetal.dto.ContactMessageDto;
+import com.emasmetal.entity.AttachmentStatus;
 import com.emasmetal.entity.ContactMessage;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface ContactMessageRepository extends JpaRepository<ContactMessage, UUID> {
     
+    int SNIPPET_LENGTH = 160;
+    
     List<ContactMessage> findAllByOrderByCreatedAtDesc();
     
     List<ContactMessage> findByIsReadFalseOrderByCreatedAtDesc();
     
     long countByIsReadFalse();
+    
+    // Keyset pagination of the admin inbox on (created_at, id), newest first.
+    // Rows are summaries, so the message body beyond the snippet is never read.
+    // The whole inbox and the unread view get separate queries, each served by
+    // its own index (idx_contact_messages_inbox, idx_contact_messages_unread_inbox).
+    
+    @Query("select new com.emasmetal.dto.ContactMessageDto$Summary(m.id, m.name, m.company, " +
+           "substring(m.message, 1, " + SNIPPET_LENGTH + "), " +
+           "case when m.attachmentUrl is not null then true else false end, m.isRead, m.createdAt) " +
+           "from ContactMessage m order by m.createdAt desc, m.id desc")
+    List<ContactMessageDto.Summary> findSummaryFirstPage(Pageable pageable);
+    
+    @Query("select new com.emasmetal.dto.ContactMessageDto$Summary(m.id, m.name, m.company, " +
+           "substring(m.message, 1, " + SNIPPET_LENGTH + "), " +
+           "case when m.attachmentUrl is not null then true else false end, m.isRead, m.createdAt) " +
+           "from ContactMessage m where m.isRead = false order by m.createdAt desc, m.id desc")
+    List<ContactMessageDto.Summary> findUnreadSummaryFirstPage(Pageable pageable);
+    
+    // The leading <= bounds the index range; the rest breaks ties within one timestamp
+    @Query("select new com.emasmetal.dto.ContactMessageDto$Summary(m.id, m.name, m.company, " +
+           "substring(m.message, 1, " + SNIPPET_LENGTH + "), " +
+           "case when m.attachmentUrl is not null then true else false end, m.isRead, m.createdAt) " +
+           "from ContactMessage m where " +
+           "m.createdAt <= :createdAt and (m.createdAt < :createdAt or m.id < :id) " +
+           "order by m.createdAt desc, m.id desc")
+    List<ContactMessageDto.Summary> findSummaryPageAfter(@Param("createdAt") LocalDateTime createdAt,
+                                                         @Param("id") UUID id,
+                                                         Pageable pageable);
+    
+    @Query("select new com.emasmetal.dto.ContactMessageDto$Summary(m.id, m.name, m.company, " +
+           "substring(m.message, 1, " + SNIPPET_LENGTH + "), " +
+           "case when m.attachmentUrl is not null then true else false end, m.isRead, m.createdAt) " +
+           "from ContactMessage m where m.isRead = false and " +
+           "m.createdAt <= :createdAt and (m.createdAt < :createdAt or m.id < :id) " +
+           "order by m.createdAt desc, m.id desc")
+    List<ContactMessageDto.Summary> findUnreadSummaryPageAfter(@Param("createdAt") LocalDateTime createdAt,
+                                                               @Param("id") UUID id,
+                                                               Pageable pageable);
+    
+    long countByAttachmentUrl(String attachmentUrl);
+    
+    /**
+     * @return 1 if the message was unread, 0 if it was already read or doesn't exist
+     */
+    @Modifying
+    @Query("update ContactMessage m set m.isRead = true where m.id = :id and m.isRead = false")
+    int markRead(@Param("id") UUID id);
+    
+    @Query("select m.id from ContactMessage m where m.attachmentUrl is not null " +
+           "and (m.attachmentStatus is null or m.attachmentStatus = com.emasmetal.entity.AttachmentStatus.PENDING)")
+    List<UUID> findUninspectedAttachmentIds();
+    
+    /**
+     * Stores the inspection result, unless the message has lost or changed
+     * its attachment in the meantime.
+     */
+    @Modifying
+    @Transactional
+    @Query("update ContactMessage m set m.attachmentStatus = :status, " +
+           "m.attachmentContentType = :contentType, m.attachmentSha256 = :sha256, " +
+           "m.attachmentBytes = :bytes, m.attachmentStoredBytes = :storedBytes, " +
+           "m.attachmentPreviewUrl = :previewUrl " +
+           "where m.id = :id and m.attachmentUrl = :attachmentUrl")
+    int recordAttachmentInspection(@Param("id") UUID id,
+                                   @Param("attachmentUrl") String attachmentUrl,
+                                   @Param("status") AttachmentStatus status,
+                                   @Param("contentType") String contentType,
+                                   @Param("sha256") String sha256,
+                                   @Param("bytes") Long bytes,
+                                   @Param("storedBytes") Long storedBytes,
+                                   @Param("previewUrl") String previewUrl);
+    
+    @Query("select m.id from ContactMessage m where m.attachmentUrl is not null " +
+           "and m.attachmentUrl not like '/uploads/%/%/%/%'")
+    List<UUID> findFlatLayoutIds();
+    
+    @Modifying
+    @Query("update ContactMessage m set m.attachmentUrl = :newUrl, m.attachmentPreviewUrl = :newPreviewUrl " +
+           "where m.id = :id and m.attachmentUrl = :oldUrl")
+    int moveAttachment(@Param("id") UUID id,
+                       @Param("oldUrl") String oldUrl,
+                       @Param("newUrl") String newUrl,
+                       @Param("newPreviewUrl") String newPreviewUrl);
+    
+    // Previews share their attachment's name, so the attachment covers them
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("select m.attachmentUrl from ContactMessage m where m.attachmentUrl is not null")
+    Stream<String> streamFileUrls();
+    
+    @Query("select distinct m.attachmentUrl from ContactMessage m where m.attachmentUrl in :urls")
+    List<String> findAttachmentUrlsIn(@Param("urls") Collection<String> urls);
 }
@@ -1,18 +1,146 @@
 package com.emasmetal.repository;
 
 import com.emasmetal.entity.GalleryItem;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface GalleryItemRepository extends JpaRepository<GalleryItem, UUID> {
     
-    List<GalleryItem> findAllByOrderByDisplayOrderAscCreatedAtDesc();
+    List<GalleryItem> findAllByOrderBySortRankAscCreatedAtDesc();
     
-    List<GalleryItem> findByCategoryOrderByDisplayOrderAsc(String category);
+    List<GalleryItem> findByCategoryOrderBySortRankAscCreatedAtDesc(String category);
     
     List<GalleryItem> findByCategoryInOrderByDisplayOrderAsc(List<String> categories);
+    
+    long countByImageUrl(String imageUrl);
+    
+    @Query("select g.id from GalleryItem g " +
+           "where g.thumbnailUrl is null or g.thumbnailUrl = g.imageUrl or g.variantWidths is null " +
+           "or g.blurHash is null")
+    List<UUID> findImageBackfillCandidateIds();
+    
+    @Modifying
+    @Transactional
+    @Query("update GalleryItem g set g.thumbnailUrl = :thumbnailUrl, " +
+           "g.variantWidths = :variantWidths, g.variantFormats = :variantFormats, " +
+           "g.imageWidth = :imageWidth, g.imageHeight = :imageHeight, g.imageBytes = :imageBytes, " +
+           "g.dominantColor = :dominantColor, g.blurHash = :blurHash " +
+           "where g.id = :id and g.imageUrl = :imageUrl")
+    int updateDerivedImages(@Param("id") UUID id,
+                            @Param("imageUrl") String imageUrl,
+                            @Param("thumbnailUrl") String thumbnailUrl,
+                            @Param("variantWidths") String variantWidths,
+                            @Param("variantFormats") String variantFormats,
+                            @Param("imageWidth") Integer imageWidth,
+                            @Param("imageHeight") Integer imageHeight,
+                            @Param("imageBytes") Long imageBytes,
+                            @Param("dominantColor") String dominantColor,
+                            @Param("blurHash") String blurHash);
+    
+    // Keyset pagination on (sort_rank, created_at, id): ranked rows first, then
+    // the unranked tail by (created_at, id). Each page seeks straight to its
+    // position in the index, so deep pages cost the same as the first. The
+    // category filter gets its own queries; an optional parameter would keep the
+    // planner from using the category index.
+    
+    @Query("select g from GalleryItem g where g.sortRank is not null " +
+           "order by g.sortRank asc, g.createdAt desc, g.id asc")
+    List<GalleryItem> findRankedFirstPage(Pageable pageable);
+    
+    @Query("select g from GalleryItem g where g.category = :category and g.sortRank is not null " +
+           "order by g.sortRank asc, g.createdAt desc, g.id asc")
+    List<GalleryItem> findRankedFirstPageByCategory(@Param("category") String category, Pageable pageable);
+    
+    // The leading >= bounds the index range; the rest breaks ties within one rank
+    @Query("select g from GalleryItem g where " +
+           "g.sortRank >= :sortRank and (g.sortRank > :sortRank " +
+           "or (g.createdAt < :createdAt or (g.createdAt = :createdAt and g.id > :id))) " +
+           "order by g.sortRank asc, g.createdAt desc, g.id asc")
+    List<GalleryItem> findRankedPageAfter(@Param("sortRank") Double sortRank,
+                                          @Param("createdAt") LocalDateTime createdAt,
+                                          @Param("id") UUID id,
+                                          Pageable pageable);
+    
+    @Query("select g from GalleryItem g where g.category = :category and " +
+           "g.sortRank >= :sortRank and (g.sortRank > :sortRank " +
+           "or (g.createdAt < :createdAt or (g.createdAt = :createdAt and g.id > :id))) " +
+           "order by g.sortRank asc, g.createdAt desc, g.id asc")
+    List<GalleryItem> findRankedPageAfterByCategory(@Param("category") String category,
+                                                    @Param("sortRank") Double sortRank,
+                                                    @Param("createdAt") LocalDateTime createdAt,
+                                                    @Param("id") UUID id,
+                                                    Pageable pageable);
+    
+    @Query("select g from GalleryItem g where g.sortRank is null order by g.createdAt desc, g.id asc")
+    List<GalleryItem> findUnrankedFirstPage(Pageable pageable);
+    
+    @Query("select g from GalleryItem g where g.category = :category and g.sortRank is null " +
+           "order by g.createdAt desc, g.id asc")
+    List<GalleryItem> findUnrankedFirstPageByCategory(@Param("category") String category, Pageable pageable);
+    
+    @Query("select g from GalleryItem g where " +
+           "g.sortRank is null and (g.createdAt < :createdAt " +
+           "or (g.createdAt = :createdAt and g.id > :id)) " +
+           "order by g.createdAt desc, g.id asc")
+    List<GalleryItem> findUnrankedPageAfter(@Param("createdAt") LocalDateTime createdAt,
+                                            @Param("id") UUID id,
+                                            Pageable pageable);
+    
+    @Query("select g from GalleryItem g where g.category = :category and " +
+           "g.sortRank is null and (g.createdAt < :createdAt " +
+           "or (g.createdAt = :createdAt and g.id > :id)) " +
+           "order by g.createdAt desc, g.id asc")
+    List<GalleryItem> findUnrankedPageAfterByCategory(@Param("category") String category,
+                                                      @Param("createdAt") LocalDateTime createdAt,
+                                                      @Param("id") UUID id,
+                                                      Pageable pageable);
+    
+    @Query("select max(g.sortRank) from GalleryItem g")
+    Double findMaxSortRank();
+    
+    @Query("select g from GalleryItem g where g.sortRank is null " +
+           "order by g.displayOrder asc nulls last, g.createdAt desc, g.id asc")
+    List<GalleryItem> findUnranked();
+    
+    @Query("select g from GalleryItem g order by g.sortRank asc nulls last, g.createdAt desc, g.id asc")
+    List<GalleryItem> findAllInListingOrder();
+    
+    /** Moves one row without rewriting its other columns. */
+    @Modifying(clearAutomatically = true)
+    @Query("update GalleryItem g set g.sortRank = :sortRank where g.id = :id")
+    int updateSortRank(@Param("id") UUID id, @Param("sortRank") Double sortRank);
+    
+    // Flat URLs have three slashes (/uploads/gallery/<name>), sharded ones five
+    @Query("select g.id from GalleryItem g where g.imageUrl not like '/uploads/%/%/%/%'")
+    List<UUID> findFlatLayoutIds();
+    
+    @Modifying
+    @Query("update GalleryItem g set g.imageUrl = :newUrl, g.thumbnailUrl = :newThumbnailUrl " +
+           "where g.id = :id and g.imageUrl = :oldUrl")
+    int moveImage(@Param("id") UUID id,
+                  @Param("oldUrl") String oldUrl,
+                  @Param("newUrl") String newUrl,
+                  @Param("newThumbnailUrl") String newThumbnailUrl);
+    
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("select g.imageUrl from GalleryItem g union select g.thumbnailUrl from GalleryItem g " +
+           "where g.thumbnailUrl is not null")
+    Stream<String> streamFileUrls();
+    
+    @Query("select distinct g.imageUrl from GalleryItem g where g.imageUrl in :urls")
+    List<String> findImageUrlsIn(@Param("urls") Collection<String> urls);
 }
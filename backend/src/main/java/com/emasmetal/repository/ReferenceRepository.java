@@ -1,16 +1,114 @@
 package com.emasmetal.repository;
 
 import com.emasmetal.entity.Reference;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface ReferenceRepository extends JpaRepository<Reference, UUID> {
     
-    List<Reference> findAllByOrderByDisplayOrderAscCreatedAtDesc();
+    List<Reference> findAllByOrderBySortRankAscCreatedAtDesc();
     
-    List<Reference> findByIndustryOrderByDisplayOrderAsc(String industry);
+    List<Reference> findByIndustryOrderBySortRankAscCreatedAtDesc(String industry);
+    
+    long countByLogoUrl(String logoUrl);
+    
+    // Keyset pagination on (sort_rank, created_at, id): ranked rows first, then
+    // the unranked tail by (created_at, id). Each page seeks straight to its
+    // position in the index, so deep pages cost the same as the first. The
+    // industry filter gets its own queries; an optional parameter would keep the
+    // planner from using the industry index.
+    
+    @Query("select r from Reference r where r.sortRank is not null " +
+           "order by r.sortRank asc, r.createdAt desc, r.id asc")
+    List<Reference> findRankedFirstPage(Pageable pageable);
+    
+    @Query("select r from Reference r where r.industry = :industry and r.sortRank is not null " +
+           "order by r.sortRank asc, r.createdAt desc, r.id asc")
+    List<Reference> findRankedFirstPageByIndustry(@Param("industry") String industry, Pageable pageable);
+    
+    // The leading >= bounds the index range; the rest breaks ties within one rank
+    @Query("select r from Reference r where " +
+           "r.sortRank >= :sortRank and (r.sortRank > :sortRank " +
+           "or (r.createdAt < :createdAt or (r.createdAt = :createdAt and r.id > :id))) " +
+           "order by r.sortRank asc, r.createdAt desc, r.id asc")
+    List<Reference> findRankedPageAfter(@Param("sortRank") Double sortRank,
+                                        @Param("createdAt") LocalDateTime createdAt,
+                                        @Param("id") UUID id,
+                                        Pageable pageable);
+    
+    @Query("select r from Reference r where r.industry = :industry and " +
+           "r.sortRank >= :sortRank and (r.sortRank > :sortRank " +
+           "or (r.createdAt < :createdAt or (r.createdAt = :createdAt and r.id > :id))) " +
+           "order by r.sortRank asc, r.createdAt desc, r.id asc")
+    List<Reference> findRankedPageAfterByIndustry(@Param("industry") String industry,
+                                                  @Param("sortRank") Double sortRank,
+                                                  @Param("createdAt") LocalDateTime createdAt,
+                                                  @Param("id") UUID id,
+                                                  Pageable pageable);
+    
+    @Query("select r from Reference r where r.sortRank is null order by r.createdAt desc, r.id asc")
+    List<Reference> findUnrankedFirstPage(Pageable pageable);
+    
+    @Query("select r from Reference r where r.industry = :industry and r.sortRank is null " +
+           "order by r.createdAt desc, r.id asc")
+    List<Reference> findUnrankedFirstPageByIndustry(@Param("industry") String industry, Pageable pageable);
+    
+    @Query("select r from Reference r where " +
+           "r.sortRank is null and (r.createdAt < :createdAt " +
+           "or (r.createdAt = :createdAt and r.id > :id)) " +
+           "order by r.createdAt desc, r.id asc")
+    List<Reference> findUnrankedPageAfter(@Param("createdAt") LocalDateTime createdAt,
+                                          @Param("id") UUID id,
+                                          Pageable pageable);
+    
+    @Query("select r from Reference r where r.industry = :industry and " +
+           "r.sortRank is null and (r.createdAt < :createdAt " +
+           "or (r.createdAt = :createdAt and r.id > :id)) " +
+           "order by r.createdAt desc, r.id asc")
+    List<Reference> findUnrankedPageAfterByIndustry(@Param("industry") String industry,
+                                                    @Param("createdAt") LocalDateTime createdAt,
+                                                    @Param("id") UUID id,
+                                                    Pageable pageable);
+    
+    @Query("select max(r.sortRank) from Reference r")
+    Double findMaxSortRank();
+    
+    @Query("select r from Reference r where r.sortRank is null " +
+           "order by r.displayOrder asc nulls last, r.createdAt desc, r.id asc")
+    List<Reference> findUnranked();
+    
+    @Query("select r from Reference r order by r.sortRank asc nulls last, r.createdAt desc, r.id asc")
+    List<Reference> findAllInListingOrder();
+    
+    /** Moves one row without rewriting its other columns. */
+    @Modifying(clearAutomatically = true)
+    @Query("update Reference r set r.sortRank = :sortRank where r.id = :id")
+    int updateSortRank(@Param("id") UUID id, @Param("sortRank") Double sortRank);
+    
+    @Query("select r.id from Reference r where r.logoUrl is not null and r.logoUrl not like '/uploads/%/%/%/%'")
+    List<UUID> findFlatLayoutIds();
+    
+    @Modifying
+    @Query("update Reference r set r.logoUrl = :newUrl where r.id = :id and r.logoUrl = :oldUrl")
+    int moveLogo(@Param("id") UUID id, @Param("oldUrl") String oldUrl, @Param("newUrl") String newUrl);
+    
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("select r.logoUrl from Reference r where r.logoUrl is not null")
+    Stream<String> streamFileUrls();
+    
+    @Query("select distinct r.logoUrl from Reference r where r.logoUrl in :urls")
+    List<String> findLogoUrlsIn(@Param("urls") Collection<String> urls);
 }
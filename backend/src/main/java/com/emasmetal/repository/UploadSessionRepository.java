@@ -0,0 +1,78 @@
+package com.emasmetal.repository;
+
+import com.emasmetal.entity.UploadSession;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, UUID> {
+    
+    long countByFileUrlAndClaimedFalse(String fileUrl);
+    
+    /**
+     * Claims a finished upload for one message; 0 if it is unknown, not
+     * finished or already claimed.
+     */
+    @Modifying
+    @Query("update UploadSession s set s.claimed = true " +
+           "where s.id = :id and s.claimed = false and s.fileUrl is not null")
+    int claim(@Param("id") UUID id);
+    
+    /**
+     * Records received bytes, unless another request has moved the offset
+     * in the meantime.
+     */
+    @Modifying
+    @Transactional
+    @Query("update UploadSession s set s.uploadOffset = :offset " +
+           "where s.id = :id and s.uploadOffset = :expectedOffset and s.fileUrl is null")
+    int advanceOffset(@Param("id") UUID id,
+                      @Param("expectedOffset") long expectedOffset,
+                      @Param("offset") long offset);
+    
+    @Modifying
+    @Transactional
+    @Query("update UploadSession s set s.fileUrl = :fileUrl, s.sizeBytes = :sizeBytes " +
+           "where s.id = :id and s.fileUrl is null")
+    int complete(@Param("id") UUID id,
+                 @Param("fileUrl") String fileUrl,
+                 @Param("sizeBytes") long sizeBytes);
+    
+    @Query("select s.id from UploadSession s where s.fileUrl is not null and s.fileUrl not like '/uploads/%/%/%/%'")
+    List<UUID> findFlatLayoutIds();
+    
+    @Modifying
+    @Query("update UploadSession s set s.fileUrl = :newUrl where s.id = :id and s.fileUrl = :oldUrl")
+    int moveFile(@Param("id") UUID id, @Param("oldUrl") String oldUrl, @Param("newUrl") String newUrl);
+    
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("select s.fileUrl from UploadSession s where s.fileUrl is not null")
+    Stream<String> streamFileUrls();
+    
+    @Query("select s.id from UploadSession s where s.fileUrl is null and s.createdAt < :cutoff")
+    List<UUID> findUnfinishedIdsCreatedBefore(@Param("cutoff") LocalDateTime cutoff);
+    
+    /**
+     * Drops sessions that outlived their token: claimed ones are no longer
+     * needed, unclaimed ones were abandoned and their files become orphans.
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from UploadSession s where s.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") LocalDateTime cutoff);
+    
+    @Query("select distinct s.fileUrl from UploadSession s where s.fileUrl in :urls and s.claimed = false")
+    List<String> findUnclaimedFileUrlsIn(@Param("urls") Collection<String> urls);
+}
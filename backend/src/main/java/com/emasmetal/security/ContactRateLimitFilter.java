@@ -0,0 +1,81 @@
+package com.emasmetal.security;
+
+import com.emasmetal.exception.ErrorResponse;
+import com.emasmetal.service.ContactRateLimitService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Applies the per-client limit to the public endpoints that accept large
+ * bodies (contact messages and attachment uploads). It runs ahead of the
+ * security chain and the dispatcher, and looks at nothing but the client
+ * address, so a rejected request is answered before its multipart body is
+ * parsed or written to disk.
+ *
+ * <p>Behind a reverse proxy, set {@code server.forward-headers-strategy} so
+ * the client address is the visitor's, not the proxy's.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@RequiredArgsConstructor
+@Slf4j
+public class ContactRateLimitFilter extends OncePerRequestFilter {
+
+    private final ContactRateLimitService contactRateLimitService;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!contactRateLimitService.isEnabled() || !HttpMethod.POST.matches(request.getMethod())) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !path.equals("/api/contact")
+                && !path.equals("/api/uploads/attachments")
+                && !path.equals("/api/uploads/attachments/resumable");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        Duration wait = contactRateLimitService.acquireForClient(request.getRemoteAddr());
+        if (wait.isZero()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        log.warn("Rate limit exceeded for {} on {}", request.getRemoteAddr(), request.getRequestURI());
+        ErrorResponse error = ErrorResponse.builder()
+                .timestamp(LocalDateTime.now())
+                .status(HttpStatus.TOO_MANY_REQUESTS.value())
+                .error("Too Many Requests")
+                .message("Too many requests. Please try again later.")
+                .path(request.getRequestURI())
+                .build();
+
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, (wait.toMillis() + 999) / 1000)));
+        // The body is left unread; don't keep the connection open to drain it
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), error);
+    }
+}
@@ -0,0 +1,75 @@
+package com.emasmetal.security;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Token bucket limiter in its GCRA form: each bucket is a single long, the
+ * theoretical arrival time of the next conforming request, updated with a
+ * compare-and-set. Keys hash into a fixed array of slots, so memory stays
+ * constant however many clients show up; keys that share a slot share an
+ * allowance, which errs on the strict side. Size the array well above the
+ * number of clients expected within one period.
+ */
+public final class StripedRateLimiter {
+
+    private final AtomicLongArray theoreticalArrival;
+    private final int mask;
+    private final int seed = ThreadLocalRandom.current().nextInt();
+    private final long emissionInterval;
+    private final long tolerance;
+    private final long origin = System.nanoTime();
+
+    /**
+     * @param slots  number of buckets, rounded up to a power of two
+     * @param permits requests allowed per period on average
+     * @param period the period the permits refill over
+     * @param burst  requests allowed back to back
+     */
+    public StripedRateLimiter(int slots, int permits, Duration period, int burst) {
+        if (permits < 1 || burst < 1 || period.isNegative() || period.isZero()) {
+            throw new IllegalArgumentException("Rate limit needs positive permits, burst and period");
+        }
+        int size = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+        this.theoreticalArrival = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.emissionInterval = Math.max(1, period.toNanos() / permits);
+        this.tolerance = emissionInterval * (burst - 1);
+    }
+
+    /**
+     * Takes one request from the key's allowance.
+     *
+     * @return zero if the request conforms, otherwise how long until it would
+     */
+    public Duration tryAcquire(String key) {
+        int slot = slotOf(key);
+        long now = System.nanoTime() - origin;
+        while (true) {
+            long tat = theoreticalArrival.get(slot);
+            long start = Math.max(tat, now);
+            long wait = start - now - tolerance;
+            if (wait > 0) {
+                return Duration.ofNanos(wait);
+            }
+            if (theoreticalArrival.compareAndSet(slot, tat, start + emissionInterval)) {
+                return Duration.ZERO;
+            }
+        }
+    }
+
+    public Duration emissionInterval() {
+        return Duration.ofNanos(emissionInterval);
+    }
+
+    public Duration tolerance() {
+        return Duration.ofNanos(tolerance);
+    }
+
+    private int slotOf(String key) {
+        // Mixed so neighbouring addresses spread over the array; seeded per instance
+        int h = (key.hashCode() ^ seed) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,102 @@
+package com.emasmetal.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Renders a small raster preview of a contact attachment (first page of a
+ * PDF, a DXF drawing, or a scaled-down image) so the inbox can show what a
+ * request is about without downloading the full file. Previews are stored
+ * next to the attachment as {@code <name>-preview.png|jpg}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AttachmentPreviewService {
+    
+    private static final String SUFFIX = "preview";
+    private static final float JPEG_QUALITY = 0.8f;
+    /** Don't render tiny pages at more than twice their natural size */
+    private static final float MAX_PDF_SCALE = 2f;
+    
+    private final FileStorageService fileStorageService;
+    private final ImageProcessingService imageProcessingService;
+    
+    @Value("${contact.attachments.preview-width:480}")
+    private int previewWidth;
+    
+    @Value("${contact.attachments.preview-height:360}")
+    private int previewHeight;
+    
+    /**
+     * @return the preview URL, or null if files of this type get no preview
+     *         or the drawing holds nothing that can be rendered
+     */
+    public String renderPreview(String attachmentUrl, String extension) throws IOException {
+        String format;
+        switch (extension.toLowerCase()) {
+            case "pdf", "dxf" -> format = "png";
+            case "png", "jpg", "jpeg", "webp" -> format = "jpg";
+            default -> {
+                return null;
+            }
+        }
+        
+        String previewUrl = fileStorageService.derivedFileUrl(attachmentUrl, SUFFIX, format);
+        Path target = fileStorageService.getFilePath(previewUrl);
+        if (Files.exists(target)) {
+            // Same content was attached before; its preview is shared
+            return previewUrl;
+        }
+        
+        BufferedImage preview = switch (extension.toLowerCase()) {
+            case "pdf" -> renderPdf(attachmentUrl);
+            case "dxf" -> renderDxf(attachmentUrl);
+            default -> imageProcessingService.scaleToWidth(
+                    imageProcessingService.read(fileStorageService.getStoredPath(attachmentUrl), previewWidth, previewHeight),
+                    previewWidth);
+        };
+        if (preview == null) {
+            return null;
+        }
+        
+        if ("png".equals(format)) {
+            imageProcessingService.writePng(preview, target);
+        } else {
+            imageProcessingService.writeJpeg(preview, target, JPEG_QUALITY);
+        }
+        log.debug("Rendered preview {}", previewUrl);
+        return previewUrl;
+    }
+    
+    private BufferedImage renderPdf(String attachmentUrl) throws IOException {
+        try (PDDocument document = Loader.loadPDF(fileStorageService.getStoredPath(attachmentUrl).toFile())) {
+            if (document.getNumberOfPages() == 0) {
+                return null;
+            }
+            PDRectangle page = document.getPage(0).getCropBox();
+            float scale = Math.min(MAX_PDF_SCALE, previewWidth / Math.max(1f, page.getWidth()));
+            return new PDFRenderer(document).renderImage(0, scale, ImageType.RGB);
+        }
+    }
+    
+    private BufferedImage renderDxf(String attachmentUrl) throws IOException {
+        // DXF is kept gzip-compressed at rest; the stream inflates it
+        try (InputStream input = fileStorageService.openStoredFile(attachmentUrl)) {
+            return DxfPreview.render(input, previewWidth, previewHeight);
+        }
+    }
+}
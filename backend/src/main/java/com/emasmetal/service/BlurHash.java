@@ -0,0 +1,103 @@
+package com.emasmetal.service;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Encoder for the BlurHash placeholder format (https://blurha.sh): a few DCT
+ * components of the image packed into a short base83 string that clients
+ * decode into a blurred preview. Feed it a small image; the cost grows with
+ * pixel count times components.
+ */
+final class BlurHash {
+    
+    private static final String BASE83 =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+    
+    private BlurHash() {
+    }
+    
+    static String encode(BufferedImage image, int componentsX, int componentsY) {
+        if (componentsX < 1 || componentsX > 9 || componentsY < 1 || componentsY > 9) {
+            throw new IllegalArgumentException("BlurHash components must be between 1 and 9");
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        
+        double[][] factors = new double[componentsX * componentsY][];
+        for (int j = 0; j < componentsY; j++) {
+            for (int i = 0; i < componentsX; i++) {
+                double normalisation = (i == 0 && j == 0) ? 1 : 2;
+                double r = 0, g = 0, b = 0;
+                for (int y = 0; y < height; y++) {
+                    double cosY = Math.cos(Math.PI * j * y / height);
+                    for (int x = 0; x < width; x++) {
+                        double basis = normalisation * Math.cos(Math.PI * i * x / width) * cosY;
+                        int pixel = pixels[y * width + x];
+                        r += basis * srgbToLinear((pixel >> 16) & 0xff);
+                        g += basis * srgbToLinear((pixel >> 8) & 0xff);
+                        b += basis * srgbToLinear(pixel & 0xff);
+                    }
+                }
+                double scale = 1.0 / (width * height);
+                factors[j * componentsX + i] = new double[]{r * scale, g * scale, b * scale};
+            }
+        }
+        
+        StringBuilder hash = new StringBuilder();
+        encode83((componentsX - 1) + (componentsY - 1) * 9, 1, hash);
+        
+        double maximumValue = 1;
+        if (factors.length > 1) {
+            double actualMaximum = 0;
+            for (int k = 1; k < factors.length; k++) {
+                for (double component : factors[k]) {
+                    actualMaximum = Math.max(actualMaximum, Math.abs(component));
+                }
+            }
+            int quantisedMaximum = (int) Math.max(0, Math.min(82, Math.floor(actualMaximum * 166 - 0.5)));
+            maximumValue = (quantisedMaximum + 1) / 166.0;
+            encode83(quantisedMaximum, 1, hash);
+        } else {
+            encode83(0, 1, hash);
+        }
+        
+        double[] dc = factors[0];
+        encode83((linearToSrgb(dc[0]) << 16) + (linearToSrgb(dc[1]) << 8) + linearToSrgb(dc[2]), 4, hash);
+        for (int k = 1; k < factors.length; k++) {
+            encode83(encodeAc(factors[k], maximumValue), 2, hash);
+        }
+        return hash.toString();
+    }
+    
+    private static int encodeAc(double[] value, double maximumValue) {
+        int r = quantiseAc(value[0] / maximumValue);
+        int g = quantiseAc(value[1] / maximumValue);
+        int b = quantiseAc(value[2] / maximumValue);
+        return r * 19 * 19 + g * 19 + b;
+    }
+    
+    private static int quantiseAc(double value) {
+        double signedPow = Math.copySign(Math.pow(Math.abs(value), 0.5), value);
+        return (int) Math.max(0, Math.min(18, Math.floor(signedPow * 9 + 9.5)));
+    }
+    
+    private static void encode83(int value, int length, StringBuilder out) {
+        for (int i = 1; i <= length; i++) {
+            int digit = (value / (int) Math.pow(83, length - i)) % 83;
+            out.append(BASE83.charAt(digit));
+        }
+    }
+    
+    private static double srgbToLinear(int value) {
+        double v = value / 255.0;
+        return v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+    }
+    
+    private static int linearToSrgb(double value) {
+        double v = Math.max(0, Math.min(1, value));
+        return v <= 0.0031308
+                ? (int) (v * 12.92 * 255 + 0.5)
+                : (int) ((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255 + 0.5);
+    }
+}
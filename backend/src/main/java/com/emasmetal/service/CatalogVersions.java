@@ -0,0 +1,76 @@
+package com.emasmetal.service;
+
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-collection version counters for the public catalog. Any committed write
+ * to a collection bumps its version, which invalidates every ETag derived
+ * from it; reads can answer conditional requests without touching the DB.
+ *
+ * <p>Counters start at the boot time in millis so versions handed out by a
+ * previous process are never reused.
+ */
+@Component
+public class CatalogVersions {
+    
+    public enum Catalog {
+        GALLERY,
+        REFERENCES
+    }
+    
+    private final Map<Catalog, AtomicLong> versions = new EnumMap<>(Catalog.class);
+    
+    public CatalogVersions() {
+        long start = System.currentTimeMillis();
+        for (Catalog catalog : Catalog.values()) {
+            versions.put(catalog, new AtomicLong(start));
+        }
+    }
+    
+    public long current(Catalog catalog) {
+        return versions.get(catalog).get();
+    }
+    
+    /**
+     * Bumps the version once the current transaction has committed, so a
+     * reader can't pair the new version with pre-commit data.
+     */
+    public void bumpAfterCommit(Catalog catalog) {
+        TransactionCallbacks.afterCommit(() -> versions.get(catalog).incrementAndGet());
+    }
+    
+    /**
+     * Strong ETag for a view of the collection; {@code qualifiers} distinguish
+     * views (filter value, item id, page cursor...). They are free text, so
+     * the tag carries a SHA-256 digest of them rather than the values.
+     */
+    public String etag(Catalog catalog, Object... qualifiers) {
+        return "\"" + catalog.name().toLowerCase() + '-' + Long.toString(current(catalog), 36)
+                + '-' + digest(qualifiers) + '"';
+    }
+    
+    private static String digest(Object[] qualifiers) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            for (Object qualifier : qualifiers) {
+                // Separator and null marker are bytes UTF-8 text never contains
+                sha256.update(qualifier == null
+                        ? new byte[] {(byte) 0xFF}
+                        : qualifier.toString().getBytes(StandardCharsets.UTF_8));
+                sha256.update((byte) 0xFE);
+            }
+            // 128 bits: collisions between views are out of reach
+            return HexFormat.of().formatHex(sha256.digest(), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
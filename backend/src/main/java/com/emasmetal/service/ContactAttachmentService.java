@@ -0,0 +1,167 @@
+package com.emasmetal.service;
+
+import com.emasmetal.entity.AttachmentStatus;
+import com.emasmetal.entity.ContactMessage;
+import com.emasmetal.repository.ContactMessageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Inspects contact message attachments off the request thread: the real
+ * format is sniffed from the content, the checksum and size are recorded
+ * on the message, and verified PDFs, drawings and images get a preview.
+ * The customer gets the reference id as soon as the message is saved;
+ * messages whose inspection was dropped (queue full, restart) stay
+ * PENDING and are picked up by a periodic sweep.
+ */
+@Service
+@Slf4j
+public class ContactAttachmentService {
+    
+    private static final int SWEEP_BATCH_SIZE = 50;
+    
+    private final ContactMessageRepository contactMessageRepository;
+    private final FileStorageService fileStorageService;
+    private final AttachmentPreviewService attachmentPreviewService;
+    private final ThreadPoolTaskExecutor attachmentProcessingExecutor;
+    
+    private final AtomicBoolean sweepRunning = new AtomicBoolean(false);
+    
+    public ContactAttachmentService(
+            ContactMessageRepository contactMessageRepository,
+            FileStorageService fileStorageService,
+            AttachmentPreviewService attachmentPreviewService,
+            @Qualifier("attachmentProcessingExecutor") ThreadPoolTaskExecutor attachmentProcessingExecutor) {
+        this.contactMessageRepository = contactMessageRepository;
+        this.fileStorageService = fileStorageService;
+        this.attachmentPreviewService = attachmentPreviewService;
+        this.attachmentProcessingExecutor = attachmentProcessingExecutor;
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAttachmentStored(ContactAttachmentStoredEvent event) {
+        try {
+            attachmentProcessingExecutor.execute(() -> inspect(event.messageId(), event.attachmentUrl()));
+        } catch (TaskRejectedException e) {
+            log.warn("Attachment queue full, deferring inspection of message {}", event.messageId());
+        }
+    }
+    
+    /**
+     * Re-queues messages left pending, and attachments stored before this
+     * check existed. Runs on startup too, since the first execution of a
+     * fixed-delay task is immediate.
+     */
+    @Scheduled(fixedDelayString = "${contact.attachments.pending-sweep-ms:300000}")
+    public void inspectPending() {
+        if (!sweepRunning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<UUID> pending = contactMessageRepository.findUninspectedAttachmentIds();
+            if (pending.isEmpty()) {
+                return;
+            }
+            log.info("Inspecting {} pending contact attachments", pending.size());
+            for (int from = 0; from < pending.size(); from += SWEEP_BATCH_SIZE) {
+                List<UUID> batch = pending.subList(from, Math.min(from + SWEEP_BATCH_SIZE, pending.size()));
+                for (ContactMessage message : contactMessageRepository.findAllById(batch)) {
+                    UUID id = message.getId();
+                    String attachmentUrl = message.getAttachmentUrl();
+                    try {
+                        attachmentProcessingExecutor.execute(() -> inspect(id, attachmentUrl));
+                    } catch (TaskRejectedException e) {
+                        // The rest stay pending for the next sweep
+                        log.debug("Attachment queue full, pending sweep stopped early");
+                        return;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Pending attachment sweep failed", e);
+        } finally {
+            sweepRunning.set(false);
+        }
+    }
+    
+    void inspect(UUID messageId, String attachmentUrl) {
+        Path stored = fileStorageService.getStoredPath(attachmentUrl);
+        AttachmentStatus status;
+        String contentType = null;
+        String sha256 = null;
+        Long bytes = null;
+        Long storedBytes = null;
+        String previewUrl = null;
+        
+        MessageDigest digest = sha256();
+        // The stream inflates files kept compressed, so the checksum and size are the customer's file
+        try (InputStream input = new DigestInputStream(fileStorageService.openStoredFile(attachmentUrl), digest)) {
+            byte[] head = input.readNBytes(FileSignatures.HEAD_LENGTH);
+            contentType = FileSignatures.detectContentType(head, head.length);
+            status = FileSignatures.matches(extension(attachmentUrl), head, head.length)
+                    ? AttachmentStatus.VERIFIED : AttachmentStatus.MISMATCH;
+            bytes = head.length + input.transferTo(OutputStream.nullOutputStream());
+            sha256 = HexFormat.of().formatHex(digest.digest());
+            storedBytes = Files.size(stored);
+        } catch (NoSuchFileException e) {
+            status = AttachmentStatus.MISSING;
+        } catch (IOException e) {
+            log.warn("Could not inspect attachment {} of message {}: {}", attachmentUrl, messageId, e.getMessage());
+            status = AttachmentStatus.MISSING;
+        }
+        
+        if (status == AttachmentStatus.VERIFIED) {
+            try {
+                previewUrl = attachmentPreviewService.renderPreview(attachmentUrl, extension(attachmentUrl));
+            } catch (IOException | RuntimeException e) {
+                // A drawing the renderer can't handle still gets through to the inbox
+                log.warn("Could not render preview of attachment {}: {}", attachmentUrl, e.getMessage());
+            }
+        }
+        
+        int updated = contactMessageRepository.recordAttachmentInspection(
+                messageId, attachmentUrl, status, contentType, sha256, bytes, storedBytes, previewUrl);
+        if (updated == 0) {
+            if (previewUrl != null && contactMessageRepository.countByAttachmentUrl(attachmentUrl) == 0) {
+                fileStorageService.deleteFile(previewUrl);
+            }
+            log.debug("Message {} no longer has attachment {}; inspection discarded", messageId, attachmentUrl);
+        } else if (status == AttachmentStatus.VERIFIED) {
+            log.debug("Attachment of message {} verified as {} ({} bytes)", messageId, contentType, bytes);
+        } else {
+            log.warn("Attachment {} of message {} is {} (detected {})", attachmentUrl, messageId, status, contentType);
+        }
+    }
+    
+    private static String extension(String url) {
+        int dotIndex = url.lastIndexOf('.');
+        return dotIndex > url.lastIndexOf('/') ? url.substring(dotIndex + 1) : "";
+    }
+    
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.emasmetal.service;
+
+import java.util.UUID;
+
+/**
+ * Published when a contact message is saved with an attachment. Listeners
+ * run after the surrounding transaction commits.
+ */
+public record ContactAttachmentStoredEvent(UUID messageId, String attachmentUrl) {
+}
@@ -0,0 +1,192 @@
+package com.emasmetal.service;
+
+import com.emasmetal.exception.RateLimitExceededException;
+import com.emasmetal.security.StripedRateLimiter;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Limits how often one client may use the public contact and upload
+ * endpoints: per client address before the request body is read, and per
+ * sender email once the message has been parsed.
+ *
+ * <p>By default each instance keeps its own buckets in memory. In shared
+ * mode the buckets live in PostgreSQL so several instances enforce one
+ * limit; each check is a single upsert that either advances the bucket or
+ * leaves it alone. If the database can't be reached the in-memory buckets
+ * take over, rather than rejecting every visitor.
+ */
+@Service
+@Slf4j
+public class ContactRateLimitService {
+
+    public static final String MODE_LOCAL = "local";
+    public static final String MODE_SHARED = "shared";
+
+    private static final String SCOPE_CLIENT = "client";
+    private static final String SCOPE_EMAIL = "email";
+
+    private static final String NOW_MILLIS = "(extract(epoch from clock_timestamp()) * 1000)::bigint";
+
+    // excluded.tat - :interval is the database's now; the update only happens
+    // when the request conforms, so no row comes back for a rejected one
+    private static final String ACQUIRE_SQL = """
+            INSERT INTO rate_limit_buckets AS b (bucket_key, tat)
+            VALUES (?, %s + ?)
+            ON CONFLICT (bucket_key) DO UPDATE
+                SET tat = greatest(b.tat, excluded.tat - ?) + ?
+                WHERE greatest(b.tat, excluded.tat - ?) - (excluded.tat - ?) <= ?
+            RETURNING tat
+            """.formatted(NOW_MILLIS);
+
+    private static final String WAIT_SQL =
+            "SELECT tat - " + NOW_MILLIS + " - ? FROM rate_limit_buckets WHERE bucket_key = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${rate-limit.contact.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rate-limit.contact.mode:local}")
+    private String mode;
+
+    @Value("${rate-limit.contact.slots:65536}")
+    private int slots;
+
+    @Value("${rate-limit.contact.per-client.permits:10}")
+    private int clientPermits;
+
+    @Value("${rate-limit.contact.per-client.period:1h}")
+    private Duration clientPeriod;
+
+    @Value("${rate-limit.contact.per-client.burst:5}")
+    private int clientBurst;
+
+    @Value("${rate-limit.contact.per-email.enabled:true}")
+    private boolean emailLimitEnabled;
+
+    @Value("${rate-limit.contact.per-email.permits:5}")
+    private int emailPermits;
+
+    @Value("${rate-limit.contact.per-email.period:1h}")
+    private Duration emailPeriod;
+
+    @Value("${rate-limit.contact.per-email.burst:3}")
+    private int emailBurst;
+
+    private StripedRateLimiter clientLimiter;
+    private StripedRateLimiter emailLimiter;
+
+    public ContactRateLimitService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!MODE_LOCAL.equals(mode) && !MODE_SHARED.equals(mode)) {
+            throw new IllegalStateException("Unknown rate-limit.contact.mode: " + mode);
+        }
+        clientLimiter = new StripedRateLimiter(slots, clientPermits, clientPeriod, clientBurst);
+        emailLimiter = new StripedRateLimiter(slots, emailPermits, emailPeriod, emailBurst);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Takes one request from the client address's allowance.
+     *
+     * @return zero if the request may proceed, otherwise when to retry
+     */
+    public Duration acquireForClient(String clientAddress) {
+        if (!enabled) {
+            return Duration.ZERO;
+        }
+        return acquire(SCOPE_CLIENT, clientAddress, clientLimiter);
+    }
+
+    /**
+     * Takes one message from the sender email's allowance, which also holds
+     * when a sender rotates addresses. Runs outside the caller's transaction
+     * so a shared bucket's row isn't locked until the message commits.
+     *
+     * @throws RateLimitExceededException if the sender has used it up
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void acquireForEmail(String email) {
+        if (!enabled || !emailLimitEnabled || email == null) {
+            return;
+        }
+        Duration wait = acquire(SCOPE_EMAIL, email.trim().toLowerCase(Locale.ROOT), emailLimiter);
+        if (!wait.isZero()) {
+            throw new RateLimitExceededException(
+                    "Too many messages from this email address. Please try again later.", wait);
+        }
+    }
+
+    /**
+     * Drops shared buckets that have fully refilled; they carry no state
+     * an absent row doesn't.
+     */
+    @Scheduled(fixedDelayString = "${rate-limit.contact.purge-interval-ms:600000}")
+    public void purgeSharedBuckets() {
+        if (!enabled || !MODE_SHARED.equals(mode)) {
+            return;
+        }
+        try {
+            int purged = jdbcTemplate.update("DELETE FROM rate_limit_buckets WHERE tat < " + NOW_MILLIS);
+            log.debug("Purged {} expired rate limit buckets", purged);
+        } catch (DataAccessException e) {
+            log.warn("Could not purge rate limit buckets: {}", e.getMessage());
+        }
+    }
+
+    private Duration acquire(String scope, String key, StripedRateLimiter limiter) {
+        if (MODE_SHARED.equals(mode)) {
+            try {
+                return acquireShared(scope + ":" + hash(key), limiter);
+            } catch (DataAccessException e) {
+                log.warn("Shared rate limiter unavailable, limiting per instance: {}", e.getMessage());
+            }
+        }
+        return limiter.tryAcquire(scope + ":" + key);
+    }
+
+    private Duration acquireShared(String bucketKey, StripedRateLimiter limiter) {
+        long interval = limiter.emissionInterval().toMillis();
+        long tolerance = limiter.tolerance().toMillis();
+        List<Long> granted = jdbcTemplate.queryForList(ACQUIRE_SQL, Long.class,
+                bucketKey, interval, interval, interval, interval, interval, tolerance);
+        if (!granted.isEmpty()) {
+            return Duration.ZERO;
+        }
+        List<Long> wait = jdbcTemplate.queryForList(WAIT_SQL, Long.class, tolerance, bucketKey);
+        // The bucket may have refilled in between; then the client just retries at once
+        return Duration.ofMillis(wait.isEmpty() ? 1 : Math.max(1, wait.get(0)));
+    }
+
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.emasmetal.service;
+
+import com.emasmetal.dto.ContactMessageDto;
+import com.emasmetal.dto.CursorPage;
+import com.emasmetal.repository.ContactMessageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ranked full-text search over contact messages, backed by a PostgreSQL GIN
+ * index on a tsvector of the sender fields and the message body. The index
+ * is maintained by PostgreSQL on every insert, update and delete, so there
+ * is nothing to keep in sync from the services; it is created on startup
+ * and can be rebuilt on demand.
+ *
+ * <p>The 'simple' configuration is used on purpose: it lowercases but does
+ * not stem or drop stop words, so part numbers, material grades and names
+ * match as typed, whatever language the inquiry was written in.
+ */
+@Service
+@Slf4j
+public class ContactSearchService {
+    
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_QUERY_LENGTH = 200;
+    
+    private static final String INDEX_NAME = "idx_contact_messages_search";
+    
+    // Must stay byte-for-byte identical to the indexed expression, or the planner can't use the index
+    private static final String DOCUMENT = "(setweight(to_tsvector('simple'::regconfig, "
+            + "coalesce(name, '') || ' ' || coalesce(company, '') || ' ' || coalesce(email, '')), 'A') "
+            + "|| setweight(to_tsvector('simple'::regconfig, coalesce(message, '')), 'B'))";
+    
+    private static final String MATCHES = """
+            SELECT id, name, company, left(message, %d) AS snippet,
+                   attachment_url IS NOT NULL AS has_attachment, is_read, created_at,
+                   ts_rank(%s, q) AS rank
+            FROM contact_messages, websearch_to_tsquery('simple'::regconfig, ?) q
+            WHERE %s @@ q
+            """.formatted(ContactMessageRepository.SNIPPET_LENGTH, DOCUMENT, DOCUMENT);
+    
+    private static final String FIRST_PAGE = "SELECT * FROM (" + MATCHES + ") hits "
+            + "ORDER BY rank DESC, created_at DESC, id DESC LIMIT ?";
+    
+    private static final String PAGE_AFTER = "SELECT * FROM (" + MATCHES + ") hits "
+            + "WHERE rank < ? OR (rank = ? AND (created_at < ? OR (created_at = ? AND id < ?))) "
+            + "ORDER BY rank DESC, created_at DESC, id DESC LIMIT ?";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final ThreadPoolTaskExecutor searchReindexExecutor;
+    
+    private final AtomicBoolean reindexing = new AtomicBoolean(false);
+    
+    public ContactSearchService(
+            JdbcTemplate jdbcTemplate,
+            @Qualifier("searchReindexExecutor") ThreadPoolTaskExecutor searchReindexExecutor) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.searchReindexExecutor = searchReindexExecutor;
+    }
+    
+    /**
+     * Creates the search index if it is missing (hibernate's schema update
+     * can't express it), and rebuilds it if an earlier concurrent build was
+     * interrupted and left it invalid.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndex() {
+        try {
+            // CONCURRENTLY keeps the table writable; it needs autocommit, which JdbcTemplate has here
+            jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + INDEX_NAME
+                    + " ON contact_messages USING GIN (" + DOCUMENT + ")");
+            Boolean valid = jdbcTemplate.queryForObject(
+                    "SELECT i.indisvalid FROM pg_index i WHERE i.indexrelid = to_regclass(?)",
+                    Boolean.class, INDEX_NAME);
+            if (Boolean.FALSE.equals(valid)) {
+                log.warn("Search index {} is invalid, rebuilding", INDEX_NAME);
+                if (reindexing.compareAndSet(false, true)) {
+                    reindex();
+                }
+            }
+        } catch (DataAccessException e) {
+            log.error("Could not create the contact search index; search will scan the table", e);
+        }
+    }
+    
+    /**
+     * Messages matching the query, best match first; newer messages win
+     * ties. Accepts web-search syntax: quoted phrases, {@code or} and
+     * {@code -excluded} words.
+     */
+    public CursorPage<ContactMessageDto.Summary> search(String query, String cursor, Integer size) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Search query is required");
+        }
+        if (query.length() > MAX_QUERY_LENGTH) {
+            throw new IllegalArgumentException("Search query must be less than " + MAX_QUERY_LENGTH + " characters");
+        }
+        int pageSize = Cursors.clampPageSize(size, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+        
+        List<Hit> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = jdbcTemplate.query(FIRST_PAGE, HIT_MAPPER, query, pageSize + 1);
+        } else {
+            String[] position = Cursors.decode(cursor, 3);
+            Double rank = Cursors.parseDouble(position[0]);
+            if (rank == null) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            Timestamp createdAt = Timestamp.valueOf(Cursors.parseTimestamp(position[1]));
+            UUID id = Cursors.parseUuid(position[2]);
+            // ts_rank is a real; compare at that precision so the boundary row is excluded exactly
+            float boundary = rank.floatValue();
+            rows = jdbcTemplate.query(PAGE_AFTER, HIT_MAPPER, query,
+                    boundary, boundary, createdAt, createdAt, id, pageSize + 1);
+        }
+        
+        boolean hasMore = rows.size() > pageSize;
+        List<Hit> page = hasMore ? rows.subList(0, pageSize) : rows;
+        String nextCursor = null;
+        if (hasMore) {
+            Hit last = page.get(page.size() - 1);
+            nextCursor = Cursors.encode(last.rank(), last.summary().getCreatedAt(), last.summary().getId());
+        }
+        
+        List<ContactMessageDto.Summary> items = new ArrayList<>(page.size());
+        page.forEach(hit -> items.add(hit.summary()));
+        return CursorPage.<ContactMessageDto.Summary>builder()
+                .items(items)
+                .nextCursor(nextCursor)
+                .build();
+    }
+    
+    /**
+     * Rebuilds the search index in the background without blocking writes.
+     *
+     * @return false if a rebuild is already running
+     */
+    public boolean startReindex() {
+        if (!reindexing.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            searchReindexExecutor.execute(this::reindex);
+            return true;
+        } catch (TaskRejectedException e) {
+            reindexing.set(false);
+            return false;
+        }
+    }
+    
+    /**
+     * Runs a rebuild whose caller has claimed {@code reindexing}, and releases it.
+     */
+    private void reindex() {
+        long started = System.nanoTime();
+        try {
+            jdbcTemplate.execute("REINDEX INDEX CONCURRENTLY " + INDEX_NAME);
+            log.info("Rebuilt search index {} in {} ms", INDEX_NAME, (System.nanoTime() - started) / 1_000_000);
+        } catch (DataAccessException e) {
+            log.error("Could not rebuild search index {}", INDEX_NAME, e);
+        } finally {
+            reindexing.set(false);
+        }
+    }
+    
+    private static final RowMapper<Hit> HIT_MAPPER = (rs, rowNum) -> new Hit(
+            ContactMessageDto.Summary.builder()
+                    .id(rs.getObject("id", UUID.class))
+                    .name(rs.getString("name"))
+                    .company(rs.getString("company"))
+                    .snippet(rs.getString("snippet"))
+                    .hasAttachment(rs.getBoolean("has_attachment"))
+                    .isRead(rs.getObject("is_read", Boolean.class))
+                    .createdAt(rs.getObject("created_at", LocalDateTime.class))
+                    .build(),
+            rs.getFloat("rank"));
+    
+    private record Hit(ContactMessageDto.Summary summary, float rank) {
+    }
+}
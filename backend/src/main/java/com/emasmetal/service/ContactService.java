@@ -1,17 +1,33 @@
 package com.emasmetal.service;
 
 import com.emasmetal.dto.ContactMessageDto;
+import com.emasmetal.dto.CursorPage;
+import com.emasmetal.entity.AttachmentStatus;
 import com.emasmetal.entity.ContactMessage;
+import com.emasmetal.entity.UploadSession;
 import com.emasmetal.exception.ResourceNotFoundException;
 import com.emasmetal.mapper.DtoMapper;
 import com.emasmetal.repository.ContactMessageRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -21,30 +37,67 @@ import java.util.stream.Collectors;
 @Transactional
 public class ContactService {
     
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    
     private final ContactMessageRepository contactMessageRepository;
     private final FileStorageService fileStorageService;
     private final DtoMapper dtoMapper;
+    private final UploadService uploadService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ContactWriteBehindService contactWriteBehindService;
+    private final InboxEventService inboxEventService;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final ContactRateLimitService contactRateLimitService;
     
     public ContactMessageDto.PublicResponse submitContactMessage(
             ContactMessageDto.CreateRequest request, 
             MultipartFile attachment) {
         
+        // Before anything is stored; the per-client limit has already run in the filter
+        contactRateLimitService.acquireForEmail(request.getEmail());
+        
         ContactMessage message = dtoMapper.toEntity(request);
         
         if (attachment != null && !attachment.isEmpty()) {
             String attachmentUrl = fileStorageService.storeFile(attachment, "attachments");
             message.setAttachmentUrl(attachmentUrl);
             message.setAttachmentFilename(attachment.getOriginalFilename());
+        } else if (request.getAttachmentToken() != null) {
+            UploadSession upload = uploadService.claimAttachment(request.getAttachmentToken());
+            message.setAttachmentUrl(upload.getFileUrl());
+            message.setAttachmentFilename(upload.getOriginalFilename());
+        }
+        
+        if (contactWriteBehindService.isEnabled()) {
+            // Inserted by the next batch flush; the id is already final
+            ContactMessage queued = contactWriteBehindService.submit(message);
+            return acknowledge(queued.getId());
         }
         
+        if (message.getAttachmentUrl() != null) {
+            message.setAttachmentStatus(AttachmentStatus.PENDING);
+        }
         ContactMessage saved = contactMessageRepository.save(message);
         log.info("Received contact message from: {} <{}> ({})", 
                 saved.getName(), saved.getEmail(), saved.getId());
         
+        ContactMessageDto.Summary summary = dtoMapper.toSummary(saved);
+        TransactionCallbacks.afterCommit(() -> inboxEventService.messageReceived(summary));
+        
+        if (saved.getAttachmentUrl() != null) {
+            // Sniffing and checksumming happen in the background once this commits
+            eventPublisher.publishEvent(new ContactAttachmentStoredEvent(saved.getId(), saved.getAttachmentUrl()));
+        }
+        
+        return acknowledge(saved.getId());
+    }
+    
+    private ContactMessageDto.PublicResponse acknowledge(UUID referenceId) {
         return ContactMessageDto.PublicResponse.builder()
                 .success(true)
                 .message("Thank you for your message. We will get back to you within 24 hours.")
-                .referenceId(saved.getId())
+                .referenceId(referenceId)
                 .build();
     }
     
@@ -64,6 +117,45 @@ public class ContactService {
                 .collect(Collectors.toList());
     }
     
+    /**
+     * Keyset-paginated inbox of message summaries, newest first. Pass the
+     * previous page's {@code nextCursor} to continue; a null cursor starts
+     * from the newest message.
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<ContactMessageDto.Summary> getInboxPage(boolean unreadOnly, String cursor, Integer size) {
+        int pageSize = Cursors.clampPageSize(size, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+        // Fetch one extra row to learn whether another page follows
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        
+        List<ContactMessageDto.Summary> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = unreadOnly
+                    ? contactMessageRepository.findUnreadSummaryFirstPage(limit)
+                    : contactMessageRepository.findSummaryFirstPage(limit);
+        } else {
+            String[] position = Cursors.decode(cursor, 2);
+            LocalDateTime createdAt = Cursors.parseTimestamp(position[0]);
+            UUID id = Cursors.parseUuid(position[1]);
+            rows = unreadOnly
+                    ? contactMessageRepository.findUnreadSummaryPageAfter(createdAt, id, limit)
+                    : contactMessageRepository.findSummaryPageAfter(createdAt, id, limit);
+        }
+        
+        boolean hasMore = rows.size() > pageSize;
+        List<ContactMessageDto.Summary> page = hasMore ? rows.subList(0, pageSize) : rows;
+        String nextCursor = null;
+        if (hasMore) {
+            ContactMessageDto.Summary last = page.get(page.size() - 1);
+            nextCursor = Cursors.encode(last.getCreatedAt(), last.getId());
+        }
+        
+        return CursorPage.<ContactMessageDto.Summary>builder()
+                .items(page)
+                .nextCursor(nextCursor)
+                .build();
+    }
+    
     @Transactional(readOnly = true)
     public ContactMessageDto.Response getMessage(UUID id) {
         ContactMessage message = contactMessageRepository.findById(id)
@@ -71,11 +163,36 @@ public class ContactService {
         return dtoMapper.toResponse(message);
     }
     
-    public void markAsRead(UUID id) {
+    /**
+     * Locates the file attached to a message for download.
+     */
+    @Transactional(readOnly = true)
+    public Attachment getAttachment(UUID id) {
         ContactMessage message = contactMessageRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Message not found with id: " + id));
-        message.setIsRead(true);
-        contactMessageRepository.save(message);
+        if (message.getAttachmentUrl() == null) {
+            throw new ResourceNotFoundException("Message has no attachment: " + id);
+        }
+        
+        Path path = fileStorageService.getStoredPath(message.getAttachmentUrl());
+        if (!Files.isReadable(path)) {
+            throw new ResourceNotFoundException("Attachment file not found for message: " + id);
+        }
+        String filename = StringUtils.getFilename(message.getAttachmentFilename());
+        if (filename == null || filename.isBlank()) {
+            filename = StringUtils.getFilename(message.getAttachmentUrl());
+        }
+        return new Attachment(path, filename);
+    }
+    
+    public void markAsRead(UUID id) {
+        if (contactMessageRepository.markRead(id) == 0) {
+            if (!contactMessageRepository.existsById(id)) {
+                throw new ResourceNotFoundException("Message not found with id: " + id);
+            }
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> inboxEventService.unreadChanged(-1));
         log.info("Marked message as read: {}", id);
     }
     
@@ -85,15 +202,107 @@ public class ContactService {
         
         // Delete attachment if exists
         if (message.getAttachmentUrl() != null) {
-            fileStorageService.deleteFile(message.getAttachmentUrl());
+            fileStorageService.releaseFile(message.getAttachmentUrl(), message.getAttachmentPreviewUrl() == null
+                    ? List.of() : List.of(message.getAttachmentPreviewUrl()));
         }
         
         contactMessageRepository.delete(message);
+        if (!Boolean.TRUE.equals(message.getIsRead())) {
+            TransactionCallbacks.afterCommit(() -> inboxEventService.unreadChanged(-1));
+        }
         log.info("Deleted message: {}", id);
     }
     
-    @Transactional(readOnly = true)
+    /**
+     * Sets the read flag of every selected message in one UPDATE. Messages
+     * already in that state are not touched, so the count is the exact
+     * change to the unread counter.
+     */
+    public ContactMessageDto.BulkResult setReadInBulk(ContactMessageDto.BulkRequest request, boolean read) {
+        MapSqlParameterSource params = new MapSqlParameterSource("read", read);
+        String criteria = bulkCriteria(request, params);
+        int affected = namedParameterJdbcTemplate.update(
+                "UPDATE contact_messages SET is_read = :read WHERE is_read <> :read AND " + criteria, params);
+        
+        if (affected > 0) {
+            long delta = read ? -affected : affected;
+            TransactionCallbacks.afterCommit(() -> inboxEventService.unreadChanged(delta));
+        }
+        log.info("Marked {} messages as {}", affected, read ? "read" : "unread");
+        return ContactMessageDto.BulkResult.builder().affected(affected).build();
+    }
+    
+    /**
+     * Deletes every selected message in one DELETE. The statement returns
+     * what the deleted rows held, so their attachments are released (in
+     * batches, after commit) without loading the messages first.
+     */
+    public ContactMessageDto.BulkResult deleteInBulk(ContactMessageDto.BulkRequest request) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String criteria = bulkCriteria(request, params);
+        
+        Map<String, List<String>> files = new HashMap<>();
+        int[] affected = {0};
+        long[] unread = {0};
+        namedParameterJdbcTemplate.query("DELETE FROM contact_messages WHERE " + criteria
+                + " RETURNING attachment_url, attachment_preview_url, is_read", params, rs -> {
+            affected[0]++;
+            if (Boolean.FALSE.equals(rs.getObject("is_read", Boolean.class))) {
+                unread[0]++;
+            }
+            String attachmentUrl = rs.getString("attachment_url");
+            if (attachmentUrl != null) {
+                List<String> derived = files.computeIfAbsent(attachmentUrl, url -> new ArrayList<>());
+                String previewUrl = rs.getString("attachment_preview_url");
+                if (previewUrl != null && !derived.contains(previewUrl)) {
+                    derived.add(previewUrl);
+                }
+            }
+        });
+        
+        fileStorageService.releaseFiles(files);
+        if (unread[0] > 0) {
+            long delta = -unread[0];
+            TransactionCallbacks.afterCommit(() -> inboxEventService.unreadChanged(delta));
+        }
+        log.info("Deleted {} messages ({} attachments released)", affected[0], files.size());
+        return ContactMessageDto.BulkResult.builder().affected(affected[0]).build();
+    }
+    
+    // Served from memory; must not open a transaction (and borrow a connection) per poll
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public long getUnreadCount() {
-        return contactMessageRepository.countByIsReadFalse();
+        return inboxEventService.getUnreadCount();
+    }
+    
+    private static String bulkCriteria(ContactMessageDto.BulkRequest request, MapSqlParameterSource params) {
+        List<String> conditions = new ArrayList<>();
+        // Filters are sent without ids; an empty list selecting nothing (or everything) is a client bug
+        if (request.getIds() != null && request.getIds().isEmpty()) {
+            throw new IllegalArgumentException("ids must not be empty; leave it out to select by filters only");
+        }
+        if (request.getIds() != null) {
+            conditions.add("id IN (:ids)");
+            params.addValue("ids", request.getIds());
+        }
+        if (request.getIsRead() != null) {
+            conditions.add("is_read = :isRead");
+            params.addValue("isRead", request.getIsRead());
+        }
+        if (request.getReceivedBefore() != null) {
+            conditions.add("created_at < :receivedBefore");
+            params.addValue("receivedBefore", request.getReceivedBefore());
+        }
+        if (conditions.isEmpty()) {
+            throw new IllegalArgumentException("Select messages by ids or at least one filter");
+        }
+        return String.join(" AND ", conditions);
+    }
+    
+    /**
+     * A stored attachment: its file on disk (possibly kept gzip-compressed)
+     * and the name to offer the client.
+     */
+    public record Attachment(Path path, String filename) {
     }
 }
@@ -0,0 +1,497 @@
+package com.emasmetal.service;
+
+import com.emasmetal.entity.AttachmentStatus;
+import com.emasmetal.entity.ContactMessage;
+import com.emasmetal.exception.ServiceUnavailableException;
+import com.emasmetal.mapper.DtoMapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Optional write-behind path for contact submissions. Instead of one insert
+ * and transaction per request, a submission gets its id up front, is
+ * appended (and fsynced) to a local journal, and is queued; a scheduled
+ * flusher inserts the queue into PostgreSQL in JDBC batches.
+ *
+ * <p>The journal is a series of segment files of at most one batch each. A
+ * segment is deleted once every message in it has been inserted, so the
+ * journal only ever holds what is still queued. On startup every leftover
+ * segment is inserted before the service takes submissions; the inserts
+ * ignore ids that already exist, so a crash between insert and delete
+ * never duplicates a message.
+ *
+ * <p>The queue is bounded: when it stays full for longer than the offer
+ * timeout, the submission is refused with 503 and a Retry-After hint rather
+ * than buffering without limit.
+ */
+@Service
+@Slf4j
+public class ContactWriteBehindService {
+    
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".jsonl";
+    
+    private static final String INSERT_SQL = """
+            INSERT INTO contact_messages
+                (id, name, company, email, phone, message,
+                 attachment_url, attachment_filename, attachment_status, is_read, created_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, false, ?)
+            ON CONFLICT (id) DO NOTHING
+            """;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final InboxEventService inboxEventService;
+    private final DtoMapper dtoMapper;
+    
+    @Value("${contact.write-behind.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${contact.write-behind.journal-dir:./contact-journal}")
+    private String journalDir;
+    
+    @Value("${contact.write-behind.queue-capacity:1000}")
+    private int queueCapacity;
+    
+    @Value("${contact.write-behind.batch-size:100}")
+    private int batchSize;
+    
+    @Value("${contact.write-behind.offer-timeout:PT2S}")
+    private Duration offerTimeout;
+    
+    @Value("${contact.write-behind.flush-interval-ms:500}")
+    private long flushIntervalMs;
+    
+    // Appends, the queue hand-off and segment bookkeeping happen under this
+    // lock, so every journal line is either still queued or being flushed
+    private final ReentrantLock journalLock = new ReentrantLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    
+    private BlockingQueue<Queued> queue;
+    private Semaphore capacity;
+    
+    private Path journalPath;
+    private FileChannel segment;
+    private long segmentSeq;
+    private int segmentEntries;
+    // Segment number -> messages in it not inserted yet
+    private final Map<Long, Integer> outstanding = new HashMap<>();
+    // Attachment URL -> messages referencing it not inserted yet
+    private final Map<String, Integer> pendingAttachments = new HashMap<>();
+    
+    // A batch whose insert failed; retried before anything else is drained
+    private List<Queued> retained = List.of();
+    
+    public ContactWriteBehindService(
+            JdbcTemplate jdbcTemplate,
+            ObjectMapper objectMapper,
+            ApplicationEventPublisher eventPublisher,
+            InboxEventService inboxEventService,
+            DtoMapper dtoMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.inboxEventService = inboxEventService;
+        this.dtoMapper = dtoMapper;
+    }
+    
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        capacity = new Semaphore(queueCapacity);
+        
+        journalPath = Paths.get(journalDir).toAbsolutePath().normalize();
+        Files.createDirectories(journalPath);
+        List<Path> leftovers = listSegments();
+        int replayed = replay(leftovers);
+        for (Path leftover : leftovers) {
+            Files.delete(leftover);
+        }
+        
+        segmentSeq = leftovers.isEmpty() ? 0 : segmentNumber(leftovers.get(leftovers.size() - 1));
+        openNextSegment();
+        log.info("Contact write-behind enabled (journal {}, {} messages replayed)", journalPath, replayed);
+    }
+    
+    /**
+     * Inserts every message left in the journal by the previous run, however
+     * many there are. Their announcements are not repeated here: pending
+     * attachments are picked up by the inspection sweep and the unread
+     * counter is counted once the application is ready.
+     *
+     * @throws IllegalStateException if the database refuses them; starting
+     *         without them would lose acknowledged messages
+     */
+    private int replay(List<Path> segments) throws IOException {
+        int replayed = 0;
+        List<JournalEntry> batch = new ArrayList<>(batchSize);
+        for (Path file : segments) {
+            for (JournalEntry entry : readSegment(file)) {
+                batch.add(entry);
+                if (batch.size() == batchSize) {
+                    replayed += insertReplayed(batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            replayed += insertReplayed(batch);
+        }
+        return replayed;
+    }
+    
+    private int insertReplayed(List<JournalEntry> batch) {
+        try {
+            insert(batch);
+            return batch.size();
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Could not replay the contact journal in " + journalPath, e);
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Attachment URLs of messages that are journaled but not in the database
+     * yet, including a batch being inserted right now. A URL stays listed
+     * until its row is committed, so cleanup that reads this before querying
+     * the tables never misses a reference.
+     */
+    public Set<String> pendingAttachmentUrls() {
+        if (!enabled) {
+            return Set.of();
+        }
+        journalLock.lock();
+        try {
+            return Set.copyOf(pendingAttachments.keySet());
+        } finally {
+            journalLock.unlock();
+        }
+    }
+    
+    /**
+     * Assigns the message its id and creation time and reserves it a place
+     * in the queue. The message is journaled once the caller's transaction
+     * commits, so its attachment file has been moved into place before the
+     * flusher can announce it.
+     *
+     * @throws ServiceUnavailableException if the queue stays full for the offer timeout
+     */
+    public ContactMessage submit(ContactMessage message) {
+        try {
+            if (!capacity.tryAcquire(offerTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw busy();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw busy();
+        }
+        
+        message.setId(UUID.randomUUID());
+        message.setCreatedAt(LocalDateTime.now());
+        if (message.getAttachmentUrl() != null) {
+            message.setAttachmentStatus(AttachmentStatus.PENDING);
+        }
+        JournalEntry entry = JournalEntry.of(message);
+        
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            append(entry);
+            return message;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                append(entry);
+            }
+            
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    capacity.release();
+                }
+            }
+        });
+        return message;
+    }
+    
+    private void append(JournalEntry entry) {
+        journalLock.lock();
+        try {
+            if (segmentEntries >= batchSize) {
+                openNextSegment();
+            }
+            byte[] line = (objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                segment.write(buffer);
+            }
+            segment.force(false);
+            segmentEntries++;
+            outstanding.merge(segmentSeq, 1, Integer::sum);
+            if (entry.attachmentUrl() != null) {
+                pendingAttachments.merge(entry.attachmentUrl(), 1, Integer::sum);
+            }
+            queue.add(new Queued(entry, segmentSeq));
+        } catch (IOException e) {
+            capacity.release();
+            throw new UncheckedIOException("Could not journal contact message " + entry.id(), e);
+        } finally {
+            journalLock.unlock();
+        }
+    }
+    
+    /**
+     * Inserts everything queued, batch by batch. A failed batch is kept and
+     * retried on the next run; the queue then fills up and callers see 503
+     * until the database is back.
+     */
+    @Scheduled(fixedDelayString = "${contact.write-behind.flush-interval-ms:500}")
+    public void flush() {
+        if (!enabled || !flushLock.tryLock()) {
+            return;
+        }
+        try {
+            while (true) {
+                List<Queued> batch = retained;
+                if (batch.isEmpty()) {
+                    batch = new ArrayList<>(batchSize);
+                    queue.drainTo(batch, batchSize);
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                }
+                retained = batch;
+                List<JournalEntry> inserted = insert(batch.stream().map(Queued::entry).toList());
+                retained = List.of();
+                capacity.release(batch.size());
+                discardInserted(batch);
+                announce(inserted);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not flush {} queued contact messages, will retry: {}",
+                    retained.size() + queue.size(), e.getMessage());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        // Best effort; anything left over is still in the journal
+        flush();
+        try {
+            segment.close();
+        } catch (IOException e) {
+            log.warn("Could not close contact journal: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * @return the entries that were new; ids inserted before a crash are left out
+     */
+    private List<JournalEntry> insert(List<JournalEntry> batch) {
+        int[][] counts = jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, entry) -> {
+            ps.setObject(1, entry.id());
+            ps.setString(2, entry.name());
+            ps.setString(3, entry.company());
+            ps.setString(4, entry.email());
+            ps.setString(5, entry.phone());
+            ps.setString(6, entry.message());
+            ps.setString(7, entry.attachmentUrl());
+            ps.setString(8, entry.attachmentFilename());
+            ps.setString(9, entry.attachmentUrl() != null ? AttachmentStatus.PENDING.name() : null);
+            ps.setTimestamp(10, Timestamp.valueOf(entry.createdAt()));
+        });
+    
+        List<JournalEntry> inserted = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            // Zero for ids already inserted before a crash; their events were published then
+            if (counts[0][i] != 0) {
+                inserted.add(batch.get(i));
+            }
+        }
+        log.debug("Flushed {} contact messages ({} new)", batch.size(), inserted.size());
+        return inserted;
+    }
+    
+    private void announce(List<JournalEntry> inserted) {
+        for (JournalEntry entry : inserted) {
+            log.info("Received contact message from: {} <{}> ({})", entry.name(), entry.email(), entry.id());
+            inboxEventService.messageReceived(dtoMapper.toSummary(entry.toMessage()));
+            if (entry.attachmentUrl() != null) {
+                eventPublisher.publishEvent(new ContactAttachmentStoredEvent(entry.id(), entry.attachmentUrl()));
+            }
+        }
+    }
+    
+    /**
+     * Deletes the segments whose messages are now all in the database. The
+     * segment being written to is closed and replaced first.
+     */
+    private void discardInserted(List<Queued> batch) {
+        journalLock.lock();
+        try {
+            for (Queued queued : batch) {
+                String attachmentUrl = queued.entry().attachmentUrl();
+                if (attachmentUrl != null && pendingAttachments.merge(attachmentUrl, -1, Integer::sum) <= 0) {
+                    pendingAttachments.remove(attachmentUrl);
+                }
+                long seq = queued.segment();
+                if (outstanding.merge(seq, -1, Integer::sum) > 0) {
+                    continue;
+                }
+                outstanding.remove(seq);
+                if (seq == segmentSeq) {
+                    openNextSegment();
+                }
+                Files.deleteIfExists(segmentFile(seq));
+            }
+        } catch (IOException e) {
+            // Harmless: a leftover segment is replayed and its ids skipped as duplicates
+            log.warn("Could not delete flushed contact journal segment: {}", e.getMessage());
+        } finally {
+            journalLock.unlock();
+        }
+    }
+    
+    private void openNextSegment() throws IOException {
+        if (segment != null) {
+            segment.close();
+        }
+        segmentSeq++;
+        segmentEntries = 0;
+        segment = FileChannel.open(segmentFile(segmentSeq),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+    
+    private Path segmentFile(long seq) {
+        // Zero-padded so the names sort in write order
+        return journalPath.resolve(SEGMENT_PREFIX + String.format("%016d", seq) + SEGMENT_SUFFIX);
+    }
+    
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(journalPath)) {
+            return files
+                    .filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+    
+    private static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+    
+    private List<JournalEntry> readSegment(Path file) throws IOException {
+        List<JournalEntry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    entries.add(objectMapper.readValue(line, JournalEntry.class));
+                } catch (IOException e) {
+                    // Only the last line can be torn, by a crash mid-append before it was acknowledged
+                    log.warn("Skipping unreadable contact journal line: {}", e.getMessage());
+                }
+            }
+        }
+        return entries;
+    }
+    
+    private ServiceUnavailableException busy() {
+        return new ServiceUnavailableException("Too many messages are being submitted right now. Please try again shortly.",
+                Duration.ofMillis(Math.max(1000, flushIntervalMs * 2)));
+    }
+    
+    /**
+     * A journaled message waiting to be inserted, and the segment holding it.
+     */
+    private record Queued(JournalEntry entry, long segment) {
+    }
+    
+    /**
+     * One journal line: the columns a new message is inserted with.
+     */
+    record JournalEntry(
+            UUID id,
+            String name,
+            String company,
+            String email,
+            String phone,
+            String message,
+            String attachmentUrl,
+            String attachmentFilename,
+            LocalDateTime createdAt) {
+    
+        static JournalEntry of(ContactMessage message) {
+            return new JournalEntry(message.getId(), message.getName(), message.getCompany(),
+                    message.getEmail(), message.getPhone(), message.getMessage(),
+                    message.getAttachmentUrl(), message.getAttachmentFilename(), message.getCreatedAt());
+        }
+        
+        ContactMessage toMessage() {
+            return ContactMessage.builder()
+                    .id(id)
+                    .name(name)
+                    .company(company)
+                    .email(email)
+                    .phone(phone)
+                    .message(message)
+                    .attachmentUrl(attachmentUrl)
+                    .attachmentFilename(attachmentFilename)
+                    .createdAt(createdAt)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.emasmetal.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Encodes keyset pagination positions as opaque, URL-safe tokens. Clients
+ * must treat the token as a black box; the format may change between
+ * releases, so it carries a version prefix.
+ */
+final class Cursors {
+    
+    private static final String VERSION = "v1";
+    private static final String SEPARATOR = "|";
+    private static final String NULL = "~";
+    
+    private Cursors() {
+    }
+    
+    static String encode(Object... parts) {
+        StringBuilder raw = new StringBuilder(VERSION);
+        for (Object part : parts) {
+            raw.append(SEPARATOR).append(part == null ? NULL : part.toString());
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * @return the cursor's parts (null for encoded nulls)
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    static String[] decode(String token, int expectedParts) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        
+        String[] parts = raw.split(Pattern.quote(SEPARATOR), -1);
+        if (parts.length != expectedParts + 1 || !VERSION.equals(parts[0])) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        String[] values = new String[expectedParts];
+        for (int i = 0; i < expectedParts; i++) {
+            values[i] = NULL.equals(parts[i + 1]) ? null : parts[i + 1];
+        }
+        return values;
+    }
+    
+    static Integer parseInteger(String value) {
+        try {
+            return value == null ? null : Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+    
+    static Double parseDouble(String value) {
+        try {
+            return value == null ? null : Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+    
+    static LocalDateTime parseTimestamp(String value) {
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException | NullPointerException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+    
+    static UUID parseUuid(String value) {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+    
+    static int clampPageSize(Integer size, int defaultSize, int maxSize) {
+        if (size == null) {
+            return defaultSize;
+        }
+        return Math.max(1, Math.min(size, maxSize));
+    }
+}
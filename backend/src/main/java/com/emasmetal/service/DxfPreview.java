@@ -0,0 +1,228 @@
+package com.emasmetal.service;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws the ENTITIES section of an ASCII DXF file as a line drawing. Only
+ * the common geometry is understood (lines, circles, arcs and polylines);
+ * block references, text and hatches are skipped, which is enough to
+ * recognize a part at thumbnail size.
+ */
+final class DxfPreview {
+    
+    /** Stop collecting geometry past this; the preview is already dense enough */
+    private static final int MAX_SHAPES = 200_000;
+    private static final int MARGIN = 8;
+    
+    private DxfPreview() {
+    }
+    
+    /**
+     * @return the drawing fitted into the given box, or null if the file has
+     *         no geometry this renderer understands
+     */
+    static BufferedImage render(InputStream input, int width, int height) throws IOException {
+        List<Shape> shapes = parse(input);
+        if (shapes.isEmpty()) {
+            return null;
+        }
+        
+        Rectangle2D bounds = null;
+        for (Shape shape : shapes) {
+            Rectangle2D b = shape.getBounds2D();
+            bounds = bounds == null ? b : bounds.createUnion(b);
+        }
+        double scale = Math.min(
+                (width - 2.0 * MARGIN) / Math.max(bounds.getWidth(), 1e-9),
+                (height - 2.0 * MARGIN) / Math.max(bounds.getHeight(), 1e-9));
+        
+        // DXF's y axis points up; centre the drawing and flip it
+        AffineTransform transform = new AffineTransform();
+        transform.translate(width / 2.0, height / 2.0);
+        transform.scale(scale, -scale);
+        transform.translate(-bounds.getCenterX(), -bounds.getCenterY());
+        
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setColor(Color.DARK_GRAY);
+            // Transform the shapes rather than the graphics so strokes stay one pixel wide
+            graphics.setStroke(new BasicStroke(1f));
+            for (Shape shape : shapes) {
+                graphics.draw(transform.createTransformedShape(shape));
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+    
+    private static List<Shape> parse(InputStream input) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.ISO_8859_1));
+        List<Shape> shapes = new ArrayList<>();
+        Entity entity = null;
+        Entity polyline = null;
+        boolean inEntities = false;
+        boolean sectionStart = false;
+        
+        String codeLine;
+        while ((codeLine = reader.readLine()) != null && shapes.size() < MAX_SHAPES) {
+            String value = reader.readLine();
+            if (value == null) {
+                break;
+            }
+            int code;
+            try {
+                code = Integer.parseInt(codeLine.trim());
+            } catch (NumberFormatException e) {
+                // Not an ASCII DXF (or a corrupt one); draw what we have
+                break;
+            }
+            value = value.trim();
+            
+            if (code == 2 && sectionStart) {
+                inEntities = "ENTITIES".equals(value);
+            }
+            if (code != 0) {
+                if (entity != null) {
+                    entity.set(code, value);
+                }
+                sectionStart = false;
+                continue;
+            }
+            
+            // Group code 0 ends the previous entity and names the next one
+            if (entity != null) {
+                if (entity.is("POLYLINE")) {
+                    polyline = entity;
+                } else if (entity.is("VERTEX") && polyline != null) {
+                    polyline.vertices.add(new double[]{entity.x, entity.y});
+                } else {
+                    entity.addTo(shapes);
+                }
+            }
+            entity = null;
+            sectionStart = "SECTION".equals(value);
+            if ("SEQEND".equals(value) && polyline != null) {
+                addPolyline(shapes, polyline.vertices, (polyline.flags & 1) != 0);
+                polyline = null;
+            } else if ("ENDSEC".equals(value)) {
+                inEntities = false;
+            } else if ("EOF".equals(value)) {
+                break;
+            } else if (inEntities) {
+                entity = new Entity(value);
+            }
+        }
+        if (entity != null) {
+            entity.addTo(shapes);
+        }
+        return shapes;
+    }
+    
+    /**
+     * Group codes of one entity. LWPOLYLINE carries its vertices inline;
+     * POLYLINE collects them from the VERTEX entities that follow it.
+     */
+    private static final class Entity {
+        
+        private final String type;
+        private double x, y, x2, y2, radius, startAngle, endAngle;
+        private int flags;
+        private final List<double[]> vertices = new ArrayList<>();
+        
+        private Entity(String type) {
+            this.type = type;
+        }
+        
+        boolean is(String name) {
+            return type.equals(name);
+        }
+        
+        void set(int code, String value) {
+            double number;
+            try {
+                number = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                return;
+            }
+            switch (code) {
+                case 10 -> {
+                    x = number;
+                    if (is("LWPOLYLINE")) {
+                        vertices.add(new double[]{number, 0});
+                    }
+                }
+                case 20 -> {
+                    y = number;
+                    if (is("LWPOLYLINE") && !vertices.isEmpty()) {
+                        vertices.get(vertices.size() - 1)[1] = number;
+                    }
+                }
+                case 11 -> x2 = number;
+                case 21 -> y2 = number;
+                case 40 -> radius = number;
+                case 50 -> startAngle = number;
+                case 51 -> endAngle = number;
+                case 70 -> flags = (int) number;
+                default -> {
+                }
+            }
+        }
+        
+        void addTo(List<Shape> shapes) {
+            switch (type) {
+                case "LINE" -> shapes.add(new Line2D.Double(x, y, x2, y2));
+                case "CIRCLE" -> shapes.add(new Ellipse2D.Double(x - radius, y - radius, 2 * radius, 2 * radius));
+                case "ARC" -> {
+                    double extent = endAngle - startAngle;
+                    if (extent <= 0) {
+                        extent += 360;
+                    }
+                    // Arc2D angles run clockwise when y points up; DXF's run counter-clockwise
+                    shapes.add(new Arc2D.Double(x - radius, y - radius, 2 * radius, 2 * radius,
+                            -startAngle, -extent, Arc2D.OPEN));
+                }
+                case "LWPOLYLINE" -> addPolyline(shapes, vertices, (flags & 1) != 0);
+                default -> {
+                }
+            }
+        }
+    }
+    
+    private static void addPolyline(List<Shape> shapes, List<double[]> vertices, boolean closed) {
+        if (vertices.size() < 2) {
+            return;
+        }
+        Path2D.Double path = new Path2D.Double();
+        path.moveTo(vertices.get(0)[0], vertices.get(0)[1]);
+        for (int i = 1; i < vertices.size(); i++) {
+            path.lineTo(vertices.get(i)[0], vertices.get(i)[1]);
+        }
+        if (closed) {
+            path.closePath();
+        }
+        shapes.add(path);
+    }
+}
@@ -0,0 +1,127 @@
+package com.emasmetal.service;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks the first bytes of an upload against what its extension promises,
+ * so a renamed executable or archive is rejected before it is stored.
+ * Formats without a fixed signature are accepted as long as they look like
+ * what they claim to be (text for the ASCII CAD formats). Signatures are
+ * placed as leniently as the readers of each format accept them: a PDF
+ * header anywhere in the first kilobyte, a STEP header after a byte order
+ * mark or blank lines.
+ */
+final class FileSignatures {
+    
+    /** Bytes needed from the start of a file to check its signature */
+    static final int HEAD_LENGTH = 1024;
+    
+    private static final byte[] PDF = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final byte[] JPEG = {(byte) 0xff, (byte) 0xd8, (byte) 0xff};
+    private static final byte[] RIFF = "RIFF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DWG = "AC10".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STEP = "ISO-10303-21".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BINARY_DXF = "AutoCAD Binary DXF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ZIP = {'P', 'K', 0x03, 0x04};
+    private static final byte[] UTF8_BOM = {(byte) 0xef, (byte) 0xbb, (byte) 0xbf};
+    
+    private FileSignatures() {
+    }
+    
+    static boolean matches(String extension, byte[] head, int length) {
+        return switch (extension.toLowerCase()) {
+            case "pdf" -> isPdf(head, length);
+            case "png" -> startsWith(head, length, PNG);
+            case "jpg", "jpeg" -> startsWith(head, length, JPEG);
+            case "webp" -> isWebp(head, length);
+            case "dwg" -> startsWith(head, length, DWG);
+            case "step", "stp" -> isStep(head, length);
+            case "dxf" -> startsWith(head, length, BINARY_DXF) || isText(head, length);
+            default -> true;
+        };
+    }
+    
+    /**
+     * MIME type of the content judged by its first bytes alone, regardless
+     * of the name or type the client sent.
+     */
+    static String detectContentType(byte[] head, int length) {
+        if (isPdf(head, length)) {
+            return "application/pdf";
+        } else if (startsWith(head, length, PNG)) {
+            return "image/png";
+        } else if (startsWith(head, length, JPEG)) {
+            return "image/jpeg";
+        } else if (isWebp(head, length)) {
+            return "image/webp";
+        } else if (startsWith(head, length, DWG)) {
+            return "image/vnd.dwg";
+        } else if (isStep(head, length)) {
+            return "model/step";
+        } else if (startsWith(head, length, BINARY_DXF)) {
+            return "image/vnd.dxf";
+        } else if (startsWith(head, length, ZIP)) {
+            return "application/zip";
+        } else if (isText(head, length)) {
+            return "text/plain";
+        }
+        return "application/octet-stream";
+    }
+    
+    private static boolean isWebp(byte[] head, int length) {
+        return startsWith(head, length, RIFF)
+                && length >= 12 && new String(head, 8, 4, StandardCharsets.US_ASCII).equals("WEBP");
+    }
+    
+    // Readers look for the header within the first 1024 bytes, not at offset 0
+    private static boolean isPdf(byte[] head, int length) {
+        for (int offset = 0; offset + PDF.length <= Math.min(length, HEAD_LENGTH); offset++) {
+            if (startsWith(head, offset, length, PDF)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean isStep(byte[] head, int length) {
+        int offset = startsWith(head, 0, length, UTF8_BOM) ? UTF8_BOM.length : 0;
+        while (offset < length && isWhitespace(head[offset])) {
+            offset++;
+        }
+        return startsWith(head, offset, length, STEP);
+    }
+    
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+    
+    private static boolean startsWith(byte[] head, int length, byte[] prefix) {
+        return startsWith(head, 0, length, prefix);
+    }
+    
+    private static boolean startsWith(byte[] head, int offset, int length, byte[] prefix) {
+        if (length - offset < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (head[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean isText(byte[] head, int length) {
+        if (length == 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            int b = head[i] & 0xff;
+            if (b < 0x09 || (b > 0x0d && b < 0x20 && b != 0x1a)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
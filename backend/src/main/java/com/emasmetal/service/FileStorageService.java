@@ -1,50 +1,170 @@
 package com.emasmetal.service;
 
 import com.emasmetal.exception.FileStorageException;
+import com.emasmetal.repository.ContactMessageRepository;
+import com.emasmetal.repository.GalleryItemRepository;
+import com.emasmetal.repository.ReferenceRepository;
+import com.emasmetal.repository.UploadSessionRepository;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 @Service
 @Slf4j
 public class FileStorageService {
     
+    public static final String MODE_UUID = "uuid";
+    public static final String MODE_CONTENT = "content";
+    
+    /** Suffix of files stored gzip-compressed; their URLs omit it */
+    public static final String GZIP_SUFFIX = ".gz";
+    
+    public static final String LAYOUT_FLAT = "flat";
+    public static final String LAYOUT_SHARDED = "sharded";
+    
+    /** Top-level upload directories, one per kind of file */
+    public static final List<String> SUB_DIRECTORIES = List.of("gallery", "logos", "attachments");
+    
+    // Names that can be sharded: SHA-256 and UUID names start with eight hex digits
+    private static final Pattern SHARDABLE = Pattern.compile("^[0-9a-f]{8}[^/]*$");
+    
+    /** Releases checked against the database in one round trip */
+    private static final int RELEASE_BATCH_SIZE = 200;
+    
+    private final GalleryItemRepository galleryItemRepository;
+    private final ReferenceRepository referenceRepository;
+    private final ContactMessageRepository contactMessageRepository;
+    private final UploadSessionRepository uploadSessionRepository;
+    private final ThreadPoolTaskExecutor fileStorageExecutor;
+    // Looked up lazily: the write-behind service depends on this one through DtoMapper
+    private final ObjectProvider<ContactWriteBehindService> contactWriteBehind;
+    
+    // URL -> staged copy, for files whose transaction hasn't committed yet
+    private final Map<String, Path> stagedFiles = new ConcurrentHashMap<>();
+    private final Queue<PendingRelease> pendingReleases = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean releaseDrainScheduled = new AtomicBoolean(false);
+    
+    // A reused blob may belong to a row that has not committed yet, or that
+    // committed after a release checked the database. Guarded by reuseLock,
+    // which also covers a release's delete so a blob can't be reused and
+    // deleted at once.
+    private final Object reuseLock = new Object();
+    private final Map<String, Integer> reusesInFlight = new HashMap<>();
+    private final Map<String, Long> lastReuse = new HashMap<>();
+    private long reuseSequence;
+    
     @Value("${file.upload-dir}")
     private String uploadDir;
     
+    @Value("${file.staging-dir:./uploads-staging}")
+    private String stagingDir;
+    
     @Value("${file.allowed-extensions}")
     private String allowedExtensionsStr;
     
     @Value("${file.max-size-mb}")
     private int maxSizeMb;
     
+    /** "uuid": every upload gets a new name; "content": named by SHA-256, stored once */
+    @Value("${file.storage-mode:content}")
+    private String storageMode;
+    
+    @Value("${file.compressed-extensions:dxf,step,stp}")
+    private String compressedExtensionsStr;
+    
+    /** "sharded": new files go to {@code ab/cd/} below their directory, by the first four characters of the name */
+    @Value("${file.layout:sharded}")
+    private String layout;
+    
     private Path uploadPath;
+    private Path stagingPath;
     private List<String> allowedExtensions;
+    private List<String> compressedExtensions;
+    
+    public FileStorageService(
+            GalleryItemRepository galleryItemRepository,
+            ReferenceRepository referenceRepository,
+            ContactMessageRepository contactMessageRepository,
+            UploadSessionRepository uploadSessionRepository,
+            @Qualifier("fileStorageExecutor") ThreadPoolTaskExecutor fileStorageExecutor,
+            ObjectProvider<ContactWriteBehindService> contactWriteBehind) {
+        this.galleryItemRepository = galleryItemRepository;
+        this.referenceRepository = referenceRepository;
+        this.contactMessageRepository = contactMessageRepository;
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.fileStorageExecutor = fileStorageExecutor;
+        this.contactWriteBehind = contactWriteBehind;
+    }
     
     @PostConstruct
     public void init() {
         this.uploadPath = Paths.get(uploadDir).toAbsolutePath().normalize();
         this.allowedExtensions = Arrays.asList(allowedExtensionsStr.toLowerCase().split(","));
+        this.compressedExtensions = Arrays.asList(compressedExtensionsStr.toLowerCase().split(","));
+        if (!MODE_UUID.equals(storageMode) && !MODE_CONTENT.equals(storageMode)) {
+            throw new IllegalStateException("Unknown file.storage-mode: " + storageMode);
+        }
+        if (!LAYOUT_FLAT.equals(layout) && !LAYOUT_SHARDED.equals(layout)) {
+            throw new IllegalStateException("Unknown file.layout: " + layout);
+        }
         
         try {
             Files.createDirectories(uploadPath);
-            Files.createDirectories(uploadPath.resolve("gallery"));
-            Files.createDirectories(uploadPath.resolve("logos"));
-            Files.createDirectories(uploadPath.resolve("attachments"));
+            for (String subDirectory : SUB_DIRECTORIES) {
+                Files.createDirectories(uploadPath.resolve(subDirectory));
+            }
             log.info("Created upload directories at: {}", uploadPath);
+            
+            // Staged files left by a crash belong to transactions that never committed
+            this.stagingPath = Paths.get(stagingDir).toAbsolutePath().normalize();
+            Files.createDirectories(stagingPath);
+            try (var leftovers = Files.list(stagingPath)) {
+                for (Path leftover : leftovers.toList()) {
+                    Files.deleteIfExists(leftover);
+                }
+            }
         } catch (IOException e) {
             throw new FileStorageException("Could not create upload directories", e);
         }
@@ -54,31 +174,262 @@ public class FileStorageService {
         validateFile(file);
         
         String originalFilename = StringUtils.cleanPath(file.getOriginalFilename());
+        try (InputStream inputStream = file.getInputStream()) {
+            return writeFile(inputStream, originalFilename, subDirectory);
+        } catch (IOException e) {
+            throw new FileStorageException("Could not store file " + originalFilename, e);
+        }
+    }
+    
+    /**
+     * Stores a file read from a raw stream (archive entries, streamed request
+     * bodies). The length isn't known up front, so the size limit is enforced
+     * while copying and a partial file is removed if it is exceeded.
+     */
+    public String storeFile(InputStream inputStream, String originalFilename, String subDirectory) {
+        return storeFile(inputStream, originalFilename, subDirectory, allowedExtensions, maxBytes());
+    }
+    
+    /**
+     * Streaming store with caller-specific limits, for request bodies that
+     * are written straight to their final location without being spooled.
+     * The extension is checked before anything is read, the signature on the
+     * first bytes, the size while copying.
+     */
+    public String storeFile(InputStream inputStream, String originalFilename, String subDirectory,
+                            List<String> permittedExtensions, long maxBytes) {
+        validateFilename(originalFilename, permittedExtensions);
+        
+        String cleanFilename = StringUtils.cleanPath(originalFilename);
+        try {
+            return writeFile(new SizeLimitedInputStream(inputStream, maxBytes), cleanFilename, subDirectory);
+        } catch (IOException e) {
+            throw new FileStorageException("Could not store file " + cleanFilename, e);
+        }
+    }
+    
+    private String writeFile(InputStream inputStream, String originalFilename, String subDirectory) throws IOException {
+        // Security check: prevent path traversal
+        if (originalFilename.contains("..")) {
+            throw new FileStorageException("Filename contains invalid path sequence: " + originalFilename);
+        }
+        
         String extension = getFileExtension(originalFilename);
-        String uniqueFilename = UUID.randomUUID().toString() + "." + extension;
+        inputStream = verifySignature(inputStream, extension);
         
+        // Text CAD formats shrink several times over; they are kept gzipped
+        // and served pre-encoded, the URL still names the plain file
+        boolean compress = compressedExtensions.contains(extension.toLowerCase());
+        Path staged = Files.createTempFile(stagingPath, "upload-", compress ? GZIP_SUFFIX : ".tmp");
         try {
-            // Security check: prevent path traversal
-            if (originalFilename.contains("..")) {
-                throw new FileStorageException("Filename contains invalid path sequence: " + originalFilename);
+            String storedFilename;
+            if (MODE_CONTENT.equals(storageMode)) {
+                // Hash the uploaded bytes, not the compressed ones
+                MessageDigest digest = sha256();
+                copy(new DigestInputStream(inputStream, digest), staged, compress);
+                storedFilename = placeFile(HexFormat.of().formatHex(digest.digest()) + "." + extension.toLowerCase());
+            } else {
+                copy(inputStream, staged, compress);
+                storedFilename = placeFile(UUID.randomUUID().toString() + "." + extension);
             }
             
-            Path targetDir = uploadPath.resolve(subDirectory);
-            Files.createDirectories(targetDir);
-            
-            Path targetLocation = targetDir.resolve(uniqueFilename);
-            
-            try (InputStream inputStream = file.getInputStream()) {
-                Files.copy(inputStream, targetLocation, StandardCopyOption.REPLACE_EXISTING);
+            // Return relative path for URL generation
+            String url = "/uploads/" + subDirectory + "/" + storedFilename;
+            Path target = uploadPath.resolve(subDirectory)
+                    .resolve(compress ? storedFilename + GZIP_SUFFIX : storedFilename);
+            publish(staged, target, url);
+            log.info("Stored file: {} -> {}", originalFilename, target);
+            return url;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(staged);
+            throw e;
+        }
+    }
+    
+    /**
+     * Moves a fully written file to its stored location. Inside a transaction
+     * the move waits for the commit, so a rolled-back save leaves nothing
+     * behind and no URL is served before its row exists; until then
+     * {@link #getStoredPath} resolves the URL to the staged copy. With
+     * content-addressed names an existing blob is shared instead.
+     */
+    private void publish(Path staged, Path target, String url) throws IOException {
+        Files.createDirectories(target.getParent());
+        if (MODE_CONTENT.equals(storageMode) && reuseIfStored(target, url)) {
+            Files.deleteIfExists(staged);
+            log.debug("Content already stored as {}, reusing it", url);
+            return;
+        }
+        // Synchronization is also active in NOT_SUPPORTED scopes, where there is no commit to wait for
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            moveInto(staged, target);
+            return;
+        }
+        
+        stagedFiles.put(url, staged);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public int getOrder() {
+                // Ahead of after-commit listeners that read the file (image processing...)
+                return Ordered.HIGHEST_PRECEDENCE;
             }
             
-            log.info("Stored file: {} -> {}", originalFilename, targetLocation);
+            @Override
+            public void afterCommit() {
+                try {
+                    // Identical bytes if a concurrent upload got there first, so replacing is harmless
+                    moveInto(staged, target);
+                } catch (IOException e) {
+                    log.error("Could not move staged upload {} into place", url, e);
+                } finally {
+                    stagedFiles.remove(url, staged);
+                }
+            }
             
-            // Return relative path for URL generation
-            return "/uploads/" + subDirectory + "/" + uniqueFilename;
+            @Override
+            public void afterCompletion(int status) {
+                stagedFiles.remove(url, staged);
+                if (status != STATUS_COMMITTED) {
+                    try {
+                        Files.deleteIfExists(staged);
+                    } catch (IOException e) {
+                        log.warn("Could not delete staged upload {}: {}", staged, e.getMessage());
+                    }
+                }
+            }
+        });
+    }
+    
+    /**
+     * Peeks at the first bytes and rejects content that doesn't match the
+     * extension, before anything is written.
+     *
+     * @return a stream that still yields every byte
+     */
+    private InputStream verifySignature(InputStream inputStream, String extension) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(inputStream, 64 * 1024);
+        buffered.mark(FileSignatures.HEAD_LENGTH);
+        byte[] head = buffered.readNBytes(FileSignatures.HEAD_LENGTH);
+        buffered.reset();
+        if (head.length == 0) {
+            throw new FileStorageException("Cannot store empty file");
+        }
+        if (!FileSignatures.matches(extension, head, head.length)) {
+            throw new FileStorageException("File content does not match its ." + extension.toLowerCase() + " extension");
+        }
+        return buffered;
+    }
+    
+    /**
+     * Takes over a file that was assembled elsewhere (a finished resumable
+     * upload) as a stored upload. Plain files are moved into place rather
+     * than copied; files kept compressed at rest are written once through
+     * gzip. The source is gone afterwards.
+     */
+    public String storeCompletedFile(Path source, String originalFilename, String subDirectory,
+                                     List<String> permittedExtensions, long maxBytes) {
+        String extension = validateFilename(originalFilename, permittedExtensions);
+        String cleanFilename = StringUtils.cleanPath(originalFilename);
+        try {
+            if (Files.size(source) > maxBytes) {
+                throw new FileStorageException("File size exceeds maximum allowed size");
+            }
+            if (compressedExtensions.contains(extension)) {
+                String url;
+                try (InputStream inputStream = Files.newInputStream(source)) {
+                    url = writeFile(inputStream, cleanFilename, subDirectory);
+                }
+                Files.deleteIfExists(source);
+                return url;
+            }
             
+            try (InputStream head = Files.newInputStream(source)) {
+                verifySignature(head, extension);
+            }
+            String filename = placeFile((MODE_CONTENT.equals(storageMode) ? sha256Hex(source) : UUID.randomUUID().toString())
+                    + "." + extension);
+            Path target = uploadPath.resolve(subDirectory).resolve(filename);
+            String url = "/uploads/" + subDirectory + "/" + filename;
+            publish(source, target, url);
+            log.info("Stored file: {} -> {}", cleanFilename, target);
+            return url;
         } catch (IOException e) {
-            throw new FileStorageException("Could not store file " + originalFilename, e);
+            throw new FileStorageException("Could not store file " + cleanFilename, e);
+        }
+    }
+    
+    /**
+     * Path of a new file below its upload directory: the bare name in the
+     * flat layout, {@code ab/cd/<name>} in the sharded one.
+     */
+    private String placeFile(String filename) {
+        return LAYOUT_SHARDED.equals(layout) ? shardedName(filename) : filename;
+    }
+    
+    /**
+     * {@code abcd1234.png} -> {@code ab/cd/abcd1234.png}. Derived files and
+     * gzipped copies start with the same characters, so they always land in
+     * the same directory as their original. Names that aren't random (hex)
+     * would make lopsided shards and are left as they are.
+     */
+    public static String shardedName(String filename) {
+        if (!SHARDABLE.matcher(filename).matches()) {
+            return filename;
+        }
+        return filename.substring(0, 2) + "/" + filename.substring(2, 4) + "/" + filename;
+    }
+    
+    /**
+     * The sharded URL of a file stored in the flat layout, or the URL itself
+     * if it is already sharded or can't be.
+     */
+    public static String shardedUrl(String fileUrl) {
+        if (fileUrl == null || !fileUrl.startsWith("/uploads/")) {
+            return fileUrl;
+        }
+        String path = fileUrl.substring("/uploads/".length());
+        int slash = path.indexOf('/');
+        if (slash < 0 || path.indexOf('/', slash + 1) >= 0) {
+            return fileUrl;
+        }
+        return "/uploads/" + path.substring(0, slash + 1) + shardedName(path.substring(slash + 1));
+    }
+    
+    public Path getUploadPath() {
+        return uploadPath;
+    }
+    
+    private static void moveInto(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Different file systems: copy to a temporary sibling, then rename
+            Path temp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+            try {
+                Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(source);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+    
+    private static String sha256Hex(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream inputStream = new DigestInputStream(Files.newInputStream(file), digest)) {
+            inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+    
+    private static void copy(InputStream inputStream, Path target, boolean compress) throws IOException {
+        if (!compress) {
+            Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(target), 64 * 1024)) {
+            inputStream.transferTo(output);
         }
     }
     
@@ -88,9 +439,8 @@ public class FileStorageService {
         }
         
         try {
-            // Convert URL path to file path
-            String relativePath = filePath.replace("/uploads/", "");
-            Path targetLocation = uploadPath.resolve(relativePath);
+            // Convert URL path to file path; the file may be stored compressed
+            Path targetLocation = getOwnPath(filePath);
             
             if (Files.exists(targetLocation)) {
                 Files.delete(targetLocation);
@@ -101,29 +451,233 @@ public class FileStorageService {
         }
     }
     
+    public void releaseFile(String fileUrl) {
+        releaseFile(fileUrl, List.of());
+    }
+    
+    /**
+     * Deletes a stored file, and the files derived from it, once the current
+     * transaction has committed and no gallery item, reference or contact
+     * message points to it any more. With content-addressed storage a blob
+     * can have several owners, so owners release files instead of deleting
+     * them. The check and the deletes run in batches on the storage pool,
+     * keeping file system work off the committing request.
+     */
+    public void releaseFile(String fileUrl, Collection<String> derivedUrls) {
+        if (fileUrl == null || fileUrl.isBlank()) {
+            return;
+        }
+        PendingRelease release = new PendingRelease(fileUrl, List.copyOf(derivedUrls));
+        TransactionCallbacks.afterCommit(() -> {
+            pendingReleases.add(release);
+            scheduleReleaseDrain();
+        });
+    }
+    
+    /**
+     * Releases many files at once, as {@link #releaseFile(String, Collection)}
+     * does for one, with a single hand-off after commit.
+     *
+     * @param files stored file URLs mapped to the URLs derived from each
+     */
+    public void releaseFiles(Map<String, ? extends Collection<String>> files) {
+        List<PendingRelease> releases = new ArrayList<>(files.size());
+        files.forEach((fileUrl, derivedUrls) -> {
+            if (fileUrl != null && !fileUrl.isBlank()) {
+                releases.add(new PendingRelease(fileUrl, List.copyOf(derivedUrls)));
+            }
+        });
+        if (releases.isEmpty()) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> {
+            pendingReleases.addAll(releases);
+            scheduleReleaseDrain();
+        });
+    }
+    
+    private void scheduleReleaseDrain() {
+        if (releaseDrainScheduled.compareAndSet(false, true)) {
+            // When the pool is saturated the committing thread drains, as it used to
+            fileStorageExecutor.execute(this::drainReleases);
+        }
+    }
+    
+    private void drainReleases() {
+        try {
+            List<PendingRelease> batch = new ArrayList<>();
+            PendingRelease release;
+            while ((release = pendingReleases.poll()) != null) {
+                batch.add(release);
+                if (batch.size() == RELEASE_BATCH_SIZE) {
+                    processReleases(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                processReleases(batch);
+            }
+        } catch (RuntimeException e) {
+            // Whatever is left on disk is picked up by the orphan sweep
+            log.error("Releasing files failed", e);
+        } finally {
+            releaseDrainScheduled.set(false);
+            if (!pendingReleases.isEmpty()) {
+                scheduleReleaseDrain();
+            }
+        }
+    }
+    
+    /**
+     * Claims an already stored blob for a new upload, so that releases keep it
+     * until the upload's row is visible to them.
+     *
+     * @return false if there is no such blob and the upload must be stored
+     */
+    private boolean reuseIfStored(Path target, String url) throws IOException {
+        synchronized (reuseLock) {
+            if (!Files.exists(target)) {
+                return false;
+            }
+            // Fresh modification time also keeps the orphan sweep away from it
+            Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+            lastReuse.put(url, ++reuseSequence);
+            if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+                return true;
+            }
+            reusesInFlight.merge(url, 1, Integer::sum);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (reuseLock) {
+                    reusesInFlight.computeIfPresent(url, (key, count) -> count > 1 ? count - 1 : null);
+                    // The row is visible from now on, not from when the blob was reused
+                    lastReuse.put(url, ++reuseSequence);
+                }
+            }
+        });
+        return true;
+    }
+    
+    private void processReleases(List<PendingRelease> batch) {
+        long checkedAt;
+        synchronized (reuseLock) {
+            checkedAt = reuseSequence;
+        }
+        Set<String> referenced = referencedUrls(batch.stream().map(PendingRelease::fileUrl).toList());
+        for (PendingRelease release : batch) {
+            String fileUrl = release.fileUrl();
+            if (referenced.contains(fileUrl)) {
+                log.debug("Keeping {}: still referenced", fileUrl);
+                continue;
+            }
+            if (!MODE_CONTENT.equals(storageMode)) {
+                release.derivedUrls().forEach(this::deleteFile);
+                deleteFile(fileUrl);
+                continue;
+            }
+            synchronized (reuseLock) {
+                // Reused by an upload whose row the query above could not see
+                if (reusesInFlight.containsKey(fileUrl) || lastReuse.getOrDefault(fileUrl, 0L) > checkedAt) {
+                    log.debug("Keeping {}: reused by a recent upload", fileUrl);
+                    continue;
+                }
+                release.derivedUrls().forEach(this::deleteFile);
+                deleteFile(fileUrl);
+            }
+        }
+        if (MODE_CONTENT.equals(storageMode)) {
+            synchronized (reuseLock) {
+                // Visible before this check began, so later checks see their rows
+                lastReuse.values().removeIf(sequence -> sequence <= checkedAt);
+            }
+        }
+    }
+    
+    /**
+     * The subset of the given URLs that some row still points at, in one
+     * query per table, plus those of contact messages still queued for
+     * insert. The queue is read first: a message leaves it only once its
+     * row is committed, so the queries below then see it.
+     */
+    private Set<String> referencedUrls(Collection<String> fileUrls) {
+        Set<String> referenced = new HashSet<>(contactWriteBehind.getObject().pendingAttachmentUrls());
+        referenced.retainAll(fileUrls);
+        referenced.addAll(galleryItemRepository.findImageUrlsIn(fileUrls));
+        referenced.addAll(referenceRepository.findLogoUrlsIn(fileUrls));
+        referenced.addAll(contactMessageRepository.findAttachmentUrlsIn(fileUrls));
+        referenced.addAll(uploadSessionRepository.findUnclaimedFileUrlsIn(fileUrls));
+        return referenced;
+    }
+    
     public Path getFilePath(String relativePath) {
         String cleanPath = relativePath.replace("/uploads/", "");
         return uploadPath.resolve(cleanPath);
     }
+
+    /**
+     * Location of a stored file on disk for reading: the staged copy while
+     * the storing transaction is open, the gzipped copy for files kept
+     * compressed at rest, the plain path otherwise. A flat-layout URL whose
+     * file has already been moved into its shard resolves to the shard.
+     */
+    public Path getStoredPath(String fileUrl) {
+        Path path = getOwnPath(fileUrl);
+        if (Files.exists(path)) {
+            return path;
+        }
+        String sharded = shardedUrl(fileUrl);
+        if (sharded.equals(fileUrl)) {
+            return path;
+        }
+        Path shardPath = getOwnPath(sharded);
+        return Files.exists(shardPath) ? shardPath : path;
+    }
+    
+    /**
+     * Like {@link #getStoredPath} without the shard fallback. Deletes use
+     * this: the shard copy may belong to rows already rewritten to it.
+     */
+    private Path getOwnPath(String fileUrl) {
+        Path staged = stagedFiles.get(fileUrl);
+        if (staged != null && Files.exists(staged)) {
+            return staged;
+        }
+        Path path = getFilePath(fileUrl);
+        Path compressed = path.resolveSibling(path.getFileName() + GZIP_SUFFIX);
+        return !Files.exists(path) && Files.exists(compressed) ? compressed : path;
+    }
+    
+    /**
+     * Opens a stored file for reading its original bytes, decompressing
+     * files kept compressed at rest.
+     */
+    public InputStream openStoredFile(String fileUrl) throws IOException {
+        Path path = getStoredPath(fileUrl);
+        InputStream input = Files.newInputStream(path);
+        return path.getFileName().toString().endsWith(GZIP_SUFFIX) ? new GZIPInputStream(input) : input;
+    }
+
+    /**
+     * URL of a file derived from a stored upload (thumbnail, resized variant...).
+     * Derived files live next to their original and share its name as a prefix:
+     * {@code /uploads/gallery/abc.png} -> {@code /uploads/gallery/abc-thumb.jpg}.
+     */
+    public String derivedFileUrl(String fileUrl, String suffix, String extension) {
+        int dotIndex = fileUrl.lastIndexOf('.');
+        String stem = dotIndex > fileUrl.lastIndexOf('/') ? fileUrl.substring(0, dotIndex) : fileUrl;
+        return stem + "-" + suffix + "." + extension;
+    }
     
     private void validateFile(MultipartFile file) {
         if (file == null || file.isEmpty()) {
             throw new FileStorageException("Cannot store empty file");
         }
         
-        String originalFilename = file.getOriginalFilename();
-        if (originalFilename == null || originalFilename.isBlank()) {
-            throw new FileStorageException("File must have a name");
-        }
+        String extension = validateFilename(file.getOriginalFilename());
         
-        String extension = getFileExtension(originalFilename).toLowerCase();
-        if (!allowedExtensions.contains(extension)) {
-            throw new FileStorageException(
-                    "File type not allowed. Allowed types: " + String.join(", ", allowedExtensions));
-        }
-        
-        long maxBytes = (long) maxSizeMb * 1024 * 1024;
-        if (file.getSize() > maxBytes) {
+        if (file.getSize() > maxBytes()) {
             throw new FileStorageException("File size exceeds maximum allowed size of " + maxSizeMb + "MB");
         }
         
@@ -134,6 +688,38 @@ public class FileStorageService {
         }
     }
     
+    /**
+     * @return the lower-cased extension of a valid filename
+     */
+    private String validateFilename(String originalFilename) {
+        return validateFilename(originalFilename, allowedExtensions);
+    }
+    
+    private String validateFilename(String originalFilename, List<String> permittedExtensions) {
+        if (originalFilename == null || originalFilename.isBlank()) {
+            throw new FileStorageException("File must have a name");
+        }
+        
+        String extension = getFileExtension(originalFilename).toLowerCase();
+        if (!permittedExtensions.contains(extension)) {
+            throw new FileStorageException(
+                    "File type not allowed. Allowed types: " + String.join(", ", permittedExtensions));
+        }
+        return extension;
+    }
+    
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private long maxBytes() {
+        return (long) maxSizeMb * 1024 * 1024;
+    }
+    
     private void validateMimeType(String contentType, String extension) {
         // Basic MIME type validation
         boolean valid = switch (extension.toLowerCase()) {
@@ -159,4 +745,46 @@ public class FileStorageService {
         }
         return filename.substring(dotIndex + 1);
     }
+    
+    /**
+     * Fails the copy as soon as more than {@code limit} bytes have been read.
+     */
+    private class SizeLimitedInputStream extends FilterInputStream {
+        
+        private final long limit;
+        private long count;
+        
+        SizeLimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+        
+        private void count(long n) {
+            count += n;
+            if (count > limit) {
+                throw new FileStorageException("File size exceeds maximum allowed size of " + maxSizeMb + "MB");
+            }
+        }
+    }
+    
+    private record PendingRelease(String fileUrl, List<String> derivedUrls) {
+    }
 }
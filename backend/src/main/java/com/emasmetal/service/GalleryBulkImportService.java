@@ -0,0 +1,290 @@
+package com.emasmetal.service;
+
+import com.emasmetal.dto.GalleryItemDto;
+import com.emasmetal.entity.GalleryItem;
+import com.emasmetal.exception.FileStorageException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Creates many gallery items from one request. Files are written to disk in
+ * parallel on the storage pool; the rows are inserted afterwards in a single
+ * batched transaction, so no DB connection is held while files are copied.
+ */
+@Service
+@Slf4j
+public class GalleryBulkImportService {
+    
+    private final GalleryService galleryService;
+    private final FileStorageService fileStorageService;
+    private final ThreadPoolTaskExecutor fileStorageExecutor;
+    
+    @Value("${file.allowed-gallery-extensions}")
+    private String allowedGalleryExtensionsStr;
+    
+    @Value("${file.max-gallery-size}")
+    private long maxGallerySize;
+    
+    @Value("${gallery.bulk.max-files:500}")
+    private int maxFiles;
+    
+    private List<String> allowedGalleryExtensions;
+    
+    public GalleryBulkImportService(
+            GalleryService galleryService,
+            FileStorageService fileStorageService,
+            @Qualifier("fileStorageExecutor") ThreadPoolTaskExecutor fileStorageExecutor) {
+        this.galleryService = galleryService;
+        this.fileStorageService = fileStorageService;
+        this.fileStorageExecutor = fileStorageExecutor;
+    }
+    
+    @PostConstruct
+    public void init() {
+        this.allowedGalleryExtensions = Arrays.asList(allowedGalleryExtensionsStr.toLowerCase().split(","));
+    }
+    
+    public GalleryItemDto.BulkResponse importFiles(GalleryItemDto.BulkCreateRequest request, List<MultipartFile> files) {
+        List<PendingFile> pending = new ArrayList<>();
+        int accepted = 0;
+        for (MultipartFile file : files) {
+            String filename = file.getOriginalFilename();
+            if (accepted == maxFiles) {
+                pending.add(PendingFile.failed(filename, tooManyFiles()));
+                continue;
+            }
+            String error = checkFile(filename, file.getSize());
+            if (error != null) {
+                pending.add(PendingFile.failed(filename, error));
+                continue;
+            }
+            pending.add(new PendingFile(filename, storeAsync(() -> fileStorageService.storeFile(file, "gallery")), null));
+            accepted++;
+        }
+        return finish(request, pending);
+    }
+    
+    /**
+     * Imports every image in a ZIP stream. Entries are read one at a time (ZIP
+     * streams are sequential) and handed to the storage pool, so reading the
+     * next entry overlaps with writing the previous ones. At most a few
+     * entries are buffered at once.
+     */
+    public GalleryItemDto.BulkResponse importArchive(GalleryItemDto.BulkCreateRequest request, InputStream archive) {
+        List<PendingFile> pending = new ArrayList<>();
+        int accepted = 0;
+        Semaphore inFlight = new Semaphore(fileStorageExecutor.getMaxPoolSize() * 2);
+        
+        try (ZipInputStream zip = new ZipInputStream(archive)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory() || isHidden(entry.getName())) {
+                    continue;
+                }
+                if (accepted == maxFiles) {
+                    // The rest of the archive is not read; one entry stands for all of it
+                    pending.add(PendingFile.failed("(archive)", tooManyFiles() + "; the remaining entries were skipped"));
+                    break;
+                }
+                String filename = StringUtils.getFilename(entry.getName());
+                String error = checkFile(filename, entry.getSize());
+                if (error != null) {
+                    pending.add(PendingFile.failed(filename, error));
+                    continue;
+                }
+                
+                byte[] content = readEntry(zip);
+                if (content == null) {
+                    pending.add(PendingFile.failed(filename, "File exceeds the maximum gallery image size"));
+                    continue;
+                }
+                
+                inFlight.acquire();
+                pending.add(new PendingFile(filename, storeAsync(() -> {
+                    try {
+                        return fileStorageService.storeFile(new ByteArrayInputStream(content), filename, "gallery");
+                    } finally {
+                        inFlight.release();
+                    }
+                }), null));
+                accepted++;
+            }
+        } catch (IOException e) {
+            // Keep what was read so far; report the truncated archive
+            log.warn("Bulk gallery archive could not be read completely: {}", e.getMessage());
+            pending.add(PendingFile.failed("(archive)", "Archive could not be read: " + e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileStorageException("Bulk upload interrupted");
+        }
+        return finish(request, pending);
+    }
+    
+    private GalleryItemDto.BulkResponse finish(GalleryItemDto.BulkCreateRequest request, List<PendingFile> pending) {
+        List<GalleryItem> items = new ArrayList<>();
+        List<PendingFile> stored = new ArrayList<>();
+        Integer displayOrder = request != null ? request.getDisplayOrder() : null;
+        
+        for (PendingFile file : pending) {
+            if (file.storage() == null) {
+                continue;
+            }
+            try {
+                file.imageUrl = file.storage().join();
+            } catch (CompletionException e) {
+                file.error = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+                continue;
+            }
+            
+            items.add(GalleryItem.builder()
+                    .title(titleFrom(file.filename()))
+                    .imageUrl(file.imageUrl)
+                    .thumbnailUrl(file.imageUrl)
+                    .category(request != null ? request.getCategory() : null)
+                    .description(request != null ? request.getDescription() : null)
+                    .displayOrder(displayOrder)
+                    .build());
+            stored.add(file);
+            if (displayOrder != null) {
+                displayOrder++;
+            }
+        }
+        
+        if (!items.isEmpty()) {
+            try {
+                List<GalleryItem> saved = galleryService.createStoredGalleryItems(items);
+                for (int i = 0; i < saved.size(); i++) {
+                    stored.get(i).id = saved.get(i).getId();
+                }
+            } catch (RuntimeException e) {
+                log.error("Bulk gallery insert failed, removing {} stored files", stored.size(), e);
+                for (PendingFile file : stored) {
+                    fileStorageService.releaseFile(file.imageUrl);
+                    file.imageUrl = null;
+                    file.error = "Could not save gallery item";
+                }
+            }
+        }
+        
+        List<GalleryItemDto.BulkResult> results = pending.stream()
+                .map(file -> GalleryItemDto.BulkResult.builder()
+                        .filename(file.filename())
+                        .success(file.id != null)
+                        .id(file.id)
+                        .imageUrl(file.id != null ? file.imageUrl : null)
+                        .error(file.error)
+                        .build())
+                .toList();
+        int created = (int) results.stream().filter(GalleryItemDto.BulkResult::isSuccess).count();
+        log.info("Bulk gallery upload: {} of {} files imported", created, results.size());
+        
+        return GalleryItemDto.BulkResponse.builder()
+                .total(results.size())
+                .created(created)
+                .failed(results.size() - created)
+                .results(results)
+                .build();
+    }
+    
+    private CompletableFuture<String> storeAsync(Supplier<String> store) {
+        return CompletableFuture.supplyAsync(store, fileStorageExecutor);
+    }
+    
+    /**
+     * @return an error message, or null if the file may be imported
+     */
+    private String checkFile(String filename, long size) {
+        if (filename == null || filename.isBlank()) {
+            return "File must have a name";
+        }
+        String extension = StringUtils.getFilenameExtension(filename);
+        if (extension == null || !allowedGalleryExtensions.contains(extension.toLowerCase())) {
+            return "File type not allowed. Allowed types: " + String.join(", ", allowedGalleryExtensions);
+        }
+        if (size > maxGallerySize) {
+            return "File exceeds the maximum gallery image size";
+        }
+        return null;
+    }
+    
+    private String tooManyFiles() {
+        return "Too many files; at most " + maxFiles + " per upload";
+    }
+    
+    /**
+     * Reads the current ZIP entry into memory, or returns null (leaving the
+     * rest of the entry to be skipped) if it is larger than allowed.
+     */
+    private byte[] readEntry(ZipInputStream zip) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = zip.read(chunk)) != -1) {
+            if (buffer.size() + read > maxGallerySize) {
+                return null;
+            }
+            buffer.write(chunk, 0, read);
+        }
+        return buffer.toByteArray();
+    }
+    
+    private static boolean isHidden(String entryName) {
+        String name = StringUtils.getFilename(entryName);
+        return entryName.startsWith("__MACOSX/") || name == null || name.startsWith(".");
+    }
+    
+    private static String titleFrom(String filename) {
+        String stem = StringUtils.stripFilenameExtension(filename).replaceAll("[_\\-]+", " ").trim();
+        if (stem.isEmpty()) {
+            return "Untitled";
+        }
+        return stem.length() > 255 ? stem.substring(0, 255) : stem;
+    }
+    
+    private static final class PendingFile {
+        private final String filename;
+        private final CompletableFuture<String> storage;
+        private String error;
+        private String imageUrl;
+        private UUID id;
+        
+        PendingFile(String filename, CompletableFuture<String> storage, String error) {
+            this.filename = filename;
+            this.storage = storage;
+            this.error = error;
+        }
+        
+        static PendingFile failed(String filename, String error) {
+            return new PendingFile(filename, null, error);
+        }
+        
+        String filename() {
+            return filename;
+        }
+        
+        CompletableFuture<String> storage() {
+            return storage;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.emasmetal.service;
+
+import com.emasmetal.cache.ListingCache;
+import com.emasmetal.dto.GalleryItemDto;
+import com.emasmetal.entity.GalleryItem;
+import com.emasmetal.repository.GalleryItemRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Generates derived images for gallery items off the request thread.
+ * Originals are stored as uploaded; the thumbnail and a ladder of resized
+ * variants (JPEG, plus WebP when a writer is available) are written next to
+ * them and attached to the item once they exist.
+ */
+@Service
+@Slf4j
+public class GalleryImageService {
+
+    private static final int BACKFILL_BATCH_SIZE = 50;
+    private static final String FORMAT_JPEG = "jpg";
+    private static final String FORMAT_WEBP = "webp";
+    private static final int PLACEHOLDER_SAMPLE_WIDTH = 32;
+    private static final int BLUR_HASH_COMPONENTS_X = 4;
+    private static final int BLUR_HASH_COMPONENTS_Y = 3;
+
+    private final GalleryItemRepository galleryItemRepository;
+    private final FileStorageService fileStorageService;
+    private final ImageProcessingService imageProcessingService;
+    private final ThreadPoolTaskExecutor imageProcessingExecutor;
+    private final ListingCache<String, List<GalleryItemDto.Response>> galleryListingCache;
+    private final CatalogVersions catalogVersions;
+
+    private final AtomicBoolean backfillRunning = new AtomicBoolean(false);
+    // Set when items were added that a running backfill may have missed
+    private final AtomicBoolean backfillRequested = new AtomicBoolean(false);
+
+    @Value("${gallery.images.thumbnail-width:480}")
+    private int thumbnailWidth;
+
+    @Value("${gallery.images.thumbnail-height:360}")
+    private int thumbnailHeight;
+
+    @Value("${gallery.images.jpeg-quality:0.82}")
+    private float jpegQuality;
+
+    @Value("${gallery.images.backfill-on-startup:true}")
+    private boolean backfillOnStartup;
+
+    @Value("${gallery.images.webp-enabled:true}")
+    private boolean webpEnabled;
+
+    private List<Integer> variantWidths;
+
+    public GalleryImageService(
+            GalleryItemRepository galleryItemRepository,
+            FileStorageService fileStorageService,
+            ImageProcessingService imageProcessingService,
+            @Qualifier("imageProcessingExecutor") ThreadPoolTaskExecutor imageProcessingExecutor,
+            ListingCache<String, List<GalleryItemDto.Response>> galleryListingCache,
+            CatalogVersions catalogVersions) {
+        this.galleryItemRepository = galleryItemRepository;
+        this.fileStorageService = fileStorageService;
+        this.imageProcessingService = imageProcessingService;
+        this.imageProcessingExecutor = imageProcessingExecutor;
+        this.galleryListingCache = galleryListingCache;
+        this.catalogVersions = catalogVersions;
+    }
+
+    @Value("${gallery.images.variant-widths:320,640,1280,1920}")
+    void setVariantWidths(String widths) {
+        this.variantWidths = Arrays.stream(widths.split(","))
+                .map(String::trim)
+                .filter(w -> !w.isEmpty())
+                .map(Integer::parseInt)
+                .sorted()
+                .toList();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (webpEnabled && !imageProcessingService.canWriteWebp()) {
+            log.warn("No WebP ImageIO writer on the classpath; gallery variants will be JPEG only");
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onGalleryImageStored(GalleryImageStoredEvent event) {
+        try {
+            imageProcessingExecutor.execute(() -> processImage(event.itemId(), event.imageUrl()));
+        } catch (TaskRejectedException e) {
+            // The item keeps pointing at the original; the next backfill picks it up
+            log.warn("Image queue full, deferring derived images for gallery item {}", event.itemId());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        if (backfillOnStartup) {
+            startImageBackfill();
+        }
+    }
+
+    /**
+     * Starts a background pass over all items whose thumbnail is missing or
+     * still points at the full-size original, or that have no variants yet.
+     *
+     * @return false if a backfill is already running
+     */
+    public boolean startImageBackfill() {
+        if (!backfillRunning.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            imageProcessingExecutor.execute(this::runImageBackfill);
+            return true;
+        } catch (TaskRejectedException e) {
+            backfillRunning.set(false);
+            log.warn("Image queue full, image backfill not started");
+            return false;
+        }
+    }
+
+    /**
+     * Makes sure a backfill covers items stored from now on, for imports too
+     * large to queue one task per item. If a backfill is already running,
+     * another pass follows it.
+     */
+    public void requestImageBackfill() {
+        backfillRequested.set(true);
+        startImageBackfill();
+    }
+
+    private void runImageBackfill() {
+        try {
+            do {
+                backfillRequested.set(false);
+                backfillPass();
+            } while (backfillRequested.get());
+        } finally {
+            backfillRunning.set(false);
+        }
+        // A request that came in while the last pass was finishing
+        if (backfillRequested.get()) {
+            startImageBackfill();
+        }
+    }
+
+    private void backfillPass() {
+        try {
+            List<UUID> candidates = galleryItemRepository.findImageBackfillCandidateIds();
+            log.info("Image backfill: {} gallery items to process", candidates.size());
+
+            for (int from = 0; from < candidates.size(); from += BACKFILL_BATCH_SIZE) {
+                List<UUID> batch = candidates.subList(from, Math.min(from + BACKFILL_BATCH_SIZE, candidates.size()));
+                for (GalleryItem item : galleryItemRepository.findAllById(batch)) {
+                    UUID id = item.getId();
+                    String imageUrl = item.getImageUrl();
+                    try {
+                        imageProcessingExecutor.execute(() -> processImage(id, imageUrl));
+                    } catch (TaskRejectedException e) {
+                        // Queue is saturated: do the work on this (background) thread,
+                        // which also throttles the backfill to the pool's pace
+                        processImage(id, imageUrl);
+                    }
+                }
+            }
+            log.info("Image backfill queued");
+        } catch (RuntimeException e) {
+            log.error("Image backfill failed", e);
+        }
+    }
+
+    void processImage(UUID itemId, String imageUrl) {
+        Path source = fileStorageService.getFilePath(imageUrl);
+        if (!Files.exists(source)) {
+            log.debug("Skipping derived images for gallery item {}: {} does not exist", itemId, imageUrl);
+            return;
+        }
+
+        List<String> formats = outputFormats();
+        List<Integer> widths = new ArrayList<>();
+        List<String> written = new ArrayList<>();
+        String thumbnailUrl = fileStorageService.derivedFileUrl(imageUrl, "thumb", "jpg");
+        Dimension size;
+        long bytes;
+        String dominantColor;
+        String blurHash;
+        try {
+            size = imageProcessingService.readDimensions(source);
+            bytes = Files.size(source);
+
+            // Decode once at the resolution the largest rung needs
+            int largestWidth = Math.max(thumbnailWidth, variantWidths.isEmpty() ? 0 : variantWidths.get(variantWidths.size() - 1));
+            BufferedImage image = imageProcessingService.read(source, largestWidth, thumbnailHeight);
+            if (size == null) {
+                size = new Dimension(image.getWidth(), image.getHeight());
+            }
+
+            // Placeholders come from a tiny sample; both are cheap at this size
+            BufferedImage sample = imageProcessingService.scaleToWidth(image, PLACEHOLDER_SAMPLE_WIDTH);
+            dominantColor = imageProcessingService.averageColor(sample);
+            blurHash = BlurHash.encode(sample, BLUR_HASH_COMPONENTS_X, BLUR_HASH_COMPONENTS_Y);
+
+            BufferedImage thumbnail = imageProcessingService.cropToFill(image, thumbnailWidth, thumbnailHeight);
+            for (String format : formats) {
+                String url = fileStorageService.derivedFileUrl(imageUrl, "thumb", format);
+                write(thumbnail, url, format);
+                written.add(url);
+            }
+
+            // Widest rung first so each step downscales from the closest larger image
+            BufferedImage previous = image;
+            for (int i = variantWidths.size() - 1; i >= 0; i--) {
+                int width = variantWidths.get(i);
+                if (width >= image.getWidth()) {
+                    continue;
+                }
+                previous = imageProcessingService.scaleToWidth(previous, width);
+                for (String format : formats) {
+                    String url = fileStorageService.derivedFileUrl(imageUrl, String.valueOf(width), format);
+                    write(previous, url, format);
+                    written.add(url);
+                }
+                widths.add(0, width);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not generate derived images for gallery item {} ({}): {}", itemId, imageUrl, e.getMessage());
+            // Derived files are shared when another item shows the same stored image
+            if (galleryItemRepository.countByImageUrl(imageUrl) <= 1) {
+                written.forEach(fileStorageService::deleteFile);
+            }
+            return;
+        }
+
+        // Only attach the results if the item still shows the same original;
+        // it may have been replaced or deleted while we were working
+        int updated = galleryItemRepository.updateDerivedImages(itemId, imageUrl, thumbnailUrl,
+                join(widths), String.join(",", formats),
+                size.width, size.height, bytes, dominantColor, blurHash);
+        if (updated == 0) {
+            if (galleryItemRepository.countByImageUrl(imageUrl) == 0) {
+                written.forEach(fileStorageService::deleteFile);
+            }
+            log.debug("Discarded stale derived images for gallery item {}", itemId);
+        } else {
+            // Rare enough (once per upload) that dropping every listing is fine
+            galleryListingCache.invalidateAll();
+            catalogVersions.bumpAfterCommit(CatalogVersions.Catalog.GALLERY);
+            log.info("Generated thumbnail and {} variants for gallery item {}", widths.size(), itemId);
+        }
+    }
+
+    /**
+     * Fills in the intrinsic size of the item's freshly stored original from
+     * the image header, so responses carry it before the background pass
+     * has run. Unreadable files are left for that pass to report.
+     */
+    public void applyIntrinsicSize(GalleryItem item) {
+        // Still the staged copy when called inside the storing transaction
+        Path source = fileStorageService.getStoredPath(item.getImageUrl());
+        try {
+            Dimension size = imageProcessingService.readDimensions(source);
+            if (size != null) {
+                item.setImageWidth(size.width);
+                item.setImageHeight(size.height);
+            }
+            item.setImageBytes(Files.size(source));
+        } catch (IOException e) {
+            log.debug("Could not read size of {}: {}", item.getImageUrl(), e.getMessage());
+        }
+        item.setDominantColor(null);
+        item.setBlurHash(null);
+    }
+
+    /**
+     * Releases the item's current image and every file derived from it; they
+     * are deleted after commit unless another item still shows the image.
+     */
+    public void releaseImage(GalleryItem item) {
+        fileStorageService.releaseFile(item.getImageUrl(), derivedFileUrls(item));
+    }
+
+    private List<String> derivedFileUrls(GalleryItem item) {
+        String imageUrl = item.getImageUrl();
+        List<String> urls = new ArrayList<>();
+        if (item.getThumbnailUrl() != null && !item.getThumbnailUrl().equals(imageUrl)) {
+            urls.add(item.getThumbnailUrl());
+        }
+        for (String format : split(item.getVariantFormats())) {
+            urls.add(fileStorageService.derivedFileUrl(imageUrl, "thumb", format));
+            for (String width : split(item.getVariantWidths())) {
+                urls.add(fileStorageService.derivedFileUrl(imageUrl, width, format));
+            }
+        }
+        return urls;
+    }
+
+    private void write(BufferedImage image, String url, String format) throws IOException {
+        Path target = fileStorageService.getFilePath(url);
+        if (FORMAT_WEBP.equals(format)) {
+            imageProcessingService.writeWebp(image, target, jpegQuality);
+        } else {
+            imageProcessingService.writeJpeg(image, target, jpegQuality);
+        }
+    }
+
+    private List<String> outputFormats() {
+        if (webpEnabled && imageProcessingService.canWriteWebp()) {
+            return List.of(FORMAT_JPEG, FORMAT_WEBP);
+        }
+        return List.of(FORMAT_JPEG);
+    }
+
+    private static String join(List<Integer> widths) {
+        return widths.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    private static List<String> split(String csv) {
+        if (csv == null || csv.isBlank()) {
+            return List.of();
+        }
+        return Arrays.asList(csv.split(","));
+    }
+}
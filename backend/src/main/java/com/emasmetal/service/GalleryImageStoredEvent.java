@@ -0,0 +1,10 @@
+package com.emasmetal.service;
+
+import java.util.UUID;
+
+/**
+ * Published when a gallery item receives a new original image. Listeners run
+ * after the surrounding transaction commits.
+ */
+public record GalleryImageStoredEvent(UUID itemId, String imageUrl) {
+}
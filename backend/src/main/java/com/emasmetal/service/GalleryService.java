@@ -1,5 +1,7 @@
 package com.emasmetal.service;
 
+import com.emasmetal.cache.ListingCache;
+import com.emasmetal.dto.CursorPage;
 import com.emasmetal.dto.GalleryItemDto;
 import com.emasmetal.entity.GalleryItem;
 import com.emasmetal.exception.ResourceNotFoundException;
@@ -7,12 +9,22 @@ import com.emasmetal.mapper.DtoMapper;
 import com.emasmetal.repository.GalleryItemRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @Service
@@ -21,24 +33,109 @@ import java.util.stream.Collectors;
 @Transactional
 public class GalleryService {
     
+    private static final int DEFAULT_PAGE_SIZE = 24;
+    private static final int MAX_PAGE_SIZE = 100;
+    
     private final GalleryItemRepository galleryItemRepository;
     private final FileStorageService fileStorageService;
+    private final GalleryImageService galleryImageService;
     private final DtoMapper dtoMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CatalogVersions catalogVersions;
+    private final ListingCache<String, List<GalleryItemDto.Response>> galleryListingCache;
     
-    @Transactional(readOnly = true)
+    private final AtomicBoolean rebalanceRequested = new AtomicBoolean(false);
+    
+    // Cache hits must not open a transaction (and borrow a connection), so the
+    // listing reads only join one if present; the repository brings its own
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public List<GalleryItemDto.Response> getAllGalleryItems() {
-        return galleryItemRepository.findAllByOrderByDisplayOrderAscCreatedAtDesc()
-                .stream()
-                .map(dtoMapper::toResponse)
-                .collect(Collectors.toList());
+        return galleryListingCache.get(listingKey(null), () ->
+                galleryItemRepository.findAllByOrderBySortRankAscCreatedAtDesc()
+                        .stream()
+                        .map(dtoMapper::toResponse)
+                        .collect(Collectors.toUnmodifiableList()));
     }
     
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public List<GalleryItemDto.Response> getGalleryItemsByCategory(String category) {
-        return galleryItemRepository.findByCategoryOrderByDisplayOrderAsc(category)
-                .stream()
-                .map(dtoMapper::toResponse)
-                .collect(Collectors.toList());
+        return galleryListingCache.get(listingKey(category), () ->
+                galleryItemRepository.findByCategoryOrderBySortRankAscCreatedAtDesc(category)
+                        .stream()
+                        .map(dtoMapper::toResponse)
+                        .collect(Collectors.toUnmodifiableList()));
+    }
+    
+    /**
+     * Keyset-paginated listing, optionally filtered. Pass the previous page's
+     * {@code nextCursor} to continue; a null cursor starts from the top.
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<GalleryItemDto.Response> getGalleryPage(String category, String cursor, Integer size) {
+        int pageSize = Cursors.clampPageSize(size, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+        // Fetch one extra row to learn whether another page follows
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        
+        Double sortRank = null;
+        LocalDateTime createdAt = null;
+        UUID id = null;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] position = Cursors.decode(cursor, 3);
+            sortRank = Cursors.parseDouble(position[0]);
+            createdAt = Cursors.parseTimestamp(position[1]);
+            id = Cursors.parseUuid(position[2]);
+        }
+        
+        // A cursor without a rank points into the unranked tail
+        boolean inRanked = createdAt == null || sortRank != null;
+        List<GalleryItem> rows = new ArrayList<>(inRanked
+                ? findRankedPage(category, sortRank, createdAt, id, limit)
+                : findUnrankedPage(category, createdAt, id, limit));
+        if (inRanked && rows.size() <= pageSize) {
+            // The ranked rows ran out; fill up from the start of the unranked tail
+            rows.addAll(findUnrankedPage(category, null, null, PageRequest.of(0, pageSize + 1 - rows.size())));
+        }
+        
+        boolean hasMore = rows.size() > pageSize;
+        List<GalleryItem> page = hasMore ? rows.subList(0, pageSize) : rows;
+        String nextCursor = null;
+        if (hasMore) {
+            GalleryItem last = page.get(page.size() - 1);
+            nextCursor = Cursors.encode(last.getSortRank(), last.getCreatedAt(), last.getId());
+        }
+        
+        return CursorPage.<GalleryItemDto.Response>builder()
+                .items(page.stream().map(dtoMapper::toResponse).collect(Collectors.toList()))
+                .nextCursor(nextCursor)
+                .build();
+    }
+    
+    private List<GalleryItem> findRankedPage(String category, Double sortRank, LocalDateTime createdAt, UUID id,
+                                             Pageable limit) {
+        if (sortRank == null) {
+            return category == null
+                    ? galleryItemRepository.findRankedFirstPage(limit)
+                    : galleryItemRepository.findRankedFirstPageByCategory(category, limit);
+        }
+        return category == null
+                ? galleryItemRepository.findRankedPageAfter(sortRank, createdAt, id, limit)
+                : galleryItemRepository.findRankedPageAfterByCategory(category, sortRank, createdAt, id, limit);
+    }
+    
+    private List<GalleryItem> findUnrankedPage(String category, LocalDateTime createdAt, UUID id, Pageable limit) {
+        if (createdAt == null) {
+            return category == null
+                    ? galleryItemRepository.findUnrankedFirstPage(limit)
+                    : galleryItemRepository.findUnrankedFirstPageByCategory(category, limit);
+        }
+        return category == null
+                ? galleryItemRepository.findUnrankedPageAfter(createdAt, id, limit)
+                : galleryItemRepository.findUnrankedPageAfterByCategory(category, createdAt, id, limit);
+    }
+    
+    @Transactional(readOnly = true)
+    public boolean galleryItemExists(UUID id) {
+        return galleryItemRepository.existsById(id);
     }
     
     @Transactional(readOnly = true)
@@ -58,32 +155,70 @@ public class GalleryService {
         String imageUrl = fileStorageService.storeFile(image, "gallery");
         item.setImageUrl(imageUrl);
         
-        // TODO: Generate thumbnail (could use a library like Thumbnailator)
+        // Serve the original until the background pipeline has a thumbnail ready
         item.setThumbnailUrl(imageUrl);
+        galleryImageService.applyIntrinsicSize(item);
+        assignNewRanks(List.of(item));
         
         GalleryItem saved = galleryItemRepository.save(item);
+        eventPublisher.publishEvent(new GalleryImageStoredEvent(saved.getId(), imageUrl));
+        invalidateListings(saved.getCategory());
         log.info("Created gallery item: {} ({})", saved.getTitle(), saved.getId());
         
         return dtoMapper.toResponse(saved);
     }
     
+    /**
+     * Inserts gallery items whose images are already stored, in one
+     * transaction. Rows go out in JDBC batches (hibernate.jdbc.batch_size).
+     * Their derived images come from one backfill after the commit rather
+     * than a task per item; a large import would overflow the image queue.
+     */
+    public List<GalleryItem> createStoredGalleryItems(List<GalleryItem> items) {
+        items.forEach(galleryImageService::applyIntrinsicSize);
+        assignNewRanks(items);
+        List<GalleryItem> saved = galleryItemRepository.saveAll(items);
+        
+        List<String> categories = new ArrayList<>();
+        for (GalleryItem item : saved) {
+            categories.add(item.getCategory());
+        }
+        TransactionCallbacks.afterCommit(galleryImageService::requestImageBackfill);
+        invalidateListings(categories.toArray(String[]::new));
+        log.info("Created {} gallery items in bulk", saved.size());
+        
+        return saved;
+    }
+    
     public GalleryItemDto.Response updateGalleryItem(UUID id, GalleryItemDto.UpdateRequest request, MultipartFile image) {
         GalleryItem item = galleryItemRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Gallery item not found with id: " + id));
         
+        String previousCategory = item.getCategory();
         dtoMapper.updateEntity(item, request);
+        if (request.getDisplayOrder() != null) {
+            item.setSortRank(Ranks.fromDisplayOrder(request.getDisplayOrder()));
+        }
         
-        if (image != null && !image.isEmpty()) {
-            // Delete old image if exists
+        boolean imageReplaced = image != null && !image.isEmpty();
+        if (imageReplaced) {
+            // Release old image and everything derived from it
             if (item.getImageUrl() != null) {
-                fileStorageService.deleteFile(item.getImageUrl());
+                galleryImageService.releaseImage(item);
             }
             String imageUrl = fileStorageService.storeFile(image, "gallery");
             item.setImageUrl(imageUrl);
             item.setThumbnailUrl(imageUrl);
+            item.setVariantWidths(null);
+            item.setVariantFormats(null);
+            galleryImageService.applyIntrinsicSize(item);
         }
         
         GalleryItem saved = galleryItemRepository.save(item);
+        if (imageReplaced) {
+            eventPublisher.publishEvent(new GalleryImageStoredEvent(saved.getId(), saved.getImageUrl()));
+        }
+        invalidateListings(previousCategory, saved.getCategory());
         log.info("Updated gallery item: {} ({})", saved.getTitle(), saved.getId());
         
         return dtoMapper.toResponse(saved);
@@ -93,15 +228,142 @@ public class GalleryService {
         GalleryItem item = galleryItemRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Gallery item not found with id: " + id));
         
-        // Delete image files
+        // Release image files
         if (item.getImageUrl() != null) {
-            fileStorageService.deleteFile(item.getImageUrl());
-        }
-        if (item.getThumbnailUrl() != null && !item.getThumbnailUrl().equals(item.getImageUrl())) {
-            fileStorageService.deleteFile(item.getThumbnailUrl());
+            galleryImageService.releaseImage(item);
         }
         
         galleryItemRepository.delete(item);
+        invalidateListings(item.getCategory());
         log.info("Deleted gallery item: {} ({})", item.getTitle(), item.getId());
     }
+    
+    /**
+     * Moves an item between two neighbours by giving it a rank halfway
+     * between theirs; only the moved row is written.
+     */
+    public GalleryItemDto.Response moveGalleryItem(UUID id, GalleryItemDto.MoveRequest request) {
+        GalleryItem item = galleryItemRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Gallery item not found with id: " + id));
+        
+        Double previous = neighbourRank(id, request.getPreviousId());
+        Double next = neighbourRank(id, request.getNextId());
+        Double rank = Ranks.between(previous, next);
+        if (rank == null) {
+            // Out of precision between these two; renumber now instead of waiting
+            rebalance();
+            previous = neighbourRank(id, request.getPreviousId());
+            next = neighbourRank(id, request.getNextId());
+            rank = Ranks.between(previous, next);
+        }
+        
+        galleryItemRepository.updateSortRank(id, rank);
+        item.setSortRank(rank);
+        if (Ranks.crowded(previous, rank) || Ranks.crowded(rank, next)) {
+            rebalanceRequested.set(true);
+        }
+        invalidateListings(item.getCategory());
+        log.info("Moved gallery item: {} ({}) to rank {}", item.getTitle(), id, rank);
+        
+        return dtoMapper.toResponse(item);
+    }
+    
+    /**
+     * Gives every unranked row a rank: rows with a display order keep their
+     * relative position, the rest are appended in their old listing order.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void assignMissingRanks() {
+        List<GalleryItem> unranked = galleryItemRepository.findUnranked();
+        if (unranked.isEmpty()) {
+            return;
+        }
+        assignNewRanks(unranked);
+        galleryItemRepository.saveAll(unranked);
+        invalidateAllListings();
+        log.info("Assigned sort ranks to {} items", unranked.size());
+    }
+    
+    /**
+     * Renumbers the whole catalog to evenly spaced ranks (and matching
+     * display orders) once a move has left a gap too small to split again.
+     */
+    @Scheduled(fixedDelayString = "${catalog.ordering.rebalance-check-ms:60000}")
+    public void rebalanceIfRequested() {
+        if (rebalanceRequested.compareAndSet(true, false)) {
+            rebalance();
+        }
+    }
+    
+    private void rebalance() {
+        List<GalleryItem> items = galleryItemRepository.findAllInListingOrder();
+        for (int i = 0; i < items.size(); i++) {
+            items.get(i).setSortRank(Ranks.fromDisplayOrder(i + 1));
+            items.get(i).setDisplayOrder(i + 1);
+        }
+        galleryItemRepository.saveAll(items);
+        invalidateAllListings();
+        log.info("Rebalanced sort ranks of {} items", items.size());
+    }
+    
+    private Double neighbourRank(UUID id, UUID neighbourId) {
+        if (neighbourId == null) {
+            return null;
+        }
+        if (neighbourId.equals(id)) {
+            throw new IllegalArgumentException("An item cannot be its own neighbour");
+        }
+        GalleryItem neighbour = galleryItemRepository.findById(neighbourId)
+                .orElseThrow(() -> new ResourceNotFoundException("Gallery item not found with id: " + neighbourId));
+        if (neighbour.getSortRank() == null) {
+            throw new IllegalArgumentException("Gallery item " + neighbourId + " has no position yet");
+        }
+        return neighbour.getSortRank();
+    }
+    
+    /**
+     * Ranks new rows: an explicit display order maps onto the rank scale,
+     * anything else goes to the end of the listing.
+     */
+    private void assignNewRanks(List<GalleryItem> items) {
+        Double max = galleryItemRepository.findMaxSortRank();
+        double last = max != null ? max : 0;
+        for (GalleryItem item : items) {
+            if (item.getDisplayOrder() != null) {
+                item.setSortRank(Ranks.fromDisplayOrder(item.getDisplayOrder()));
+            } else {
+                item.setSortRank(last + Ranks.SPACING);
+            }
+            last = Math.max(last, item.getSortRank());
+        }
+    }
+    
+    /**
+     * Drops the unfiltered listing and the listings of the given categories
+     * once the current transaction has committed.
+     */
+    private void invalidateListings(String... categories) {
+        List<String> keys = new ArrayList<>();
+        keys.add(listingKey(null));
+        for (String category : categories) {
+            if (category != null) {
+                keys.add(listingKey(category));
+            }
+        }
+        TransactionCallbacks.afterCommit(() -> galleryListingCache.invalidate(keys));
+        catalogVersions.bumpAfterCommit(CatalogVersions.Catalog.GALLERY);
+    }
+    
+    /**
+     * Drops every cached listing once the current transaction has committed,
+     * for changes that reorder rows across all categories.
+     */
+    private void invalidateAllListings() {
+        TransactionCallbacks.afterCommit(galleryListingCache::invalidateAll);
+        catalogVersions.bumpAfterCommit(CatalogVersions.Catalog.GALLERY);
+    }
+    
+    private static String listingKey(String category) {
+        return category == null ? "*" : "category:" + category;
+    }
 }
@@ -0,0 +1,265 @@
+package com.emasmetal.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+@Service
+@Slf4j
+public class ImageProcessingService {
+
+    /**
+     * Decodes an image, letting the reader subsample rows and columns when the
+     * source is much larger than the requested size. A 24 MP photo scaled down
+     * to a thumbnail never has to be fully materialized on the heap.
+     */
+    public BufferedImage read(Path source, int targetWidth, int targetHeight) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            if (input == null) {
+                throw new IOException("Cannot open image: " + source);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format: " + source.getFileName());
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                // Keep at least twice the target resolution so the final
+                // downscale still has enough samples to look sharp
+                int subsampling = Math.max(1, Math.min(
+                        width / Math.max(1, targetWidth * 2),
+                        height / Math.max(1, targetHeight * 2)));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Reads the pixel size from the image header without decoding it.
+     *
+     * @return the size, or null if the file is not a readable image
+     */
+    public Dimension readDimensions(Path source) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Mean color of the image as {@code #rrggbb}. Meant for small images
+     * such as the placeholder sample.
+     */
+    public String averageColor(BufferedImage image) {
+        int[] pixels = toRgb(image).getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+        long r = 0, g = 0, b = 0;
+        for (int pixel : pixels) {
+            r += (pixel >> 16) & 0xff;
+            g += (pixel >> 8) & 0xff;
+            b += pixel & 0xff;
+        }
+        int n = Math.max(1, pixels.length);
+        return String.format("#%02x%02x%02x", r / n, g / n, b / n);
+    }
+
+    /**
+     * Scales and center-crops the image so it exactly covers the given box.
+     */
+    public BufferedImage cropToFill(BufferedImage source, int width, int height) {
+        double scale = Math.max((double) width / source.getWidth(), (double) height / source.getHeight());
+        int scaledWidth = Math.max(width, (int) Math.round(source.getWidth() * scale));
+        int scaledHeight = Math.max(height, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage scaled = resize(source, scaledWidth, scaledHeight);
+        int x = (scaledWidth - width) / 2;
+        int y = (scaledHeight - height) / 2;
+        return scaled.getSubimage(x, y, width, height);
+    }
+
+    /**
+     * Scales the image to the given width, keeping its aspect ratio. Images
+     * that are already narrower are returned unchanged.
+     */
+    public BufferedImage scaleToWidth(BufferedImage source, int width) {
+        if (source.getWidth() <= width) {
+            return source;
+        }
+        int height = Math.max(1, (int) Math.round((double) source.getHeight() * width / source.getWidth()));
+        return resize(source, width, height);
+    }
+
+    public void writeJpeg(BufferedImage image, Path target, float quality) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG writer available");
+        }
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        if (param.canWriteProgressive()) {
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        }
+
+        writeAtomically(target, temp -> {
+            try (ImageOutputStream output = ImageIO.createImageOutputStream(temp.toFile())) {
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(toRgb(image), null, null), param);
+            } finally {
+                writer.dispose();
+            }
+        });
+    }
+
+    /**
+     * Lossless; suits line drawings, which JPEG smears and bloats.
+     */
+    public void writePng(BufferedImage image, Path target) throws IOException {
+        writeAtomically(target, temp -> {
+            if (!ImageIO.write(toRgb(image), "png", temp.toFile())) {
+                throw new IOException("No PNG writer available");
+            }
+        });
+    }
+    
+    public boolean canWriteWebp() {
+        return ImageIO.getImageWritersByFormatName("webp").hasNext();
+    }
+
+    /**
+     * Encodes WebP through whichever ImageIO plugin is on the classpath
+     * (lossy, at the given quality when the plugin supports it).
+     */
+    public void writeWebp(BufferedImage image, Path target, float quality) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("webp");
+        if (!writers.hasNext()) {
+            throw new IOException("No WebP writer available");
+        }
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            String[] types = param.getCompressionTypes();
+            if (types != null && types.length > 0) {
+                param.setCompressionType(Arrays.asList(types).contains("Lossy") ? "Lossy" : types[0]);
+            }
+            param.setCompressionQuality(quality);
+        }
+
+        writeAtomically(target, temp -> {
+            try (ImageOutputStream output = ImageIO.createImageOutputStream(temp.toFile())) {
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(toRgb(image), null, null), param);
+            } finally {
+                writer.dispose();
+            }
+        });
+    }
+
+    /**
+     * Writes to a temporary sibling first and moves it into place, so a
+     * half-written variant is never served.
+     */
+    private void writeAtomically(Path target, ImageOutput output) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), ".img-", ".tmp");
+        try {
+            output.writeTo(temp);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private BufferedImage resize(BufferedImage source, int width, int height) {
+        BufferedImage current = toRgb(source);
+
+        // Halve repeatedly before the final pass; a single bilinear step over
+        // a large ratio skips most source pixels and aliases badly
+        while (current.getWidth() / 2 >= width && current.getHeight() / 2 >= height) {
+            current = draw(current, current.getWidth() / 2, current.getHeight() / 2);
+        }
+        if (current.getWidth() != width || current.getHeight() != height) {
+            current = draw(current, width, height);
+        }
+        return current;
+    }
+
+    private BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private BufferedImage toRgb(BufferedImage source) {
+        if (source.getType() == BufferedImage.TYPE_INT_RGB) {
+            return source;
+        }
+        // JPEG has no alpha channel; flatten transparent PNGs onto white
+        BufferedImage rgb = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, source.getWidth(), source.getHeight());
+            graphics.drawImage(source, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return rgb;
+    }
+
+    @FunctionalInterface
+    private interface ImageOutput {
+        void writeTo(Path path) throws IOException;
+    }
+}
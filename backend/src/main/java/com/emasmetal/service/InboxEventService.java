@@ -0,0 +1,186 @@
+package com.emasmetal.service;
+
+import com.emasmetal.dto.ContactMessageDto;
+import com.emasmetal.repository.ContactMessageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the number of unread contact messages in memory and pushes inbox
+ * changes to connected admins over Server-Sent Events, so the admin UI no
+ * longer polls the database.
+ *
+ * <p>The services report every change to the unread set once it has
+ * committed. A periodic reconcile replaces the counter with a fresh count
+ * from the database, unless a change landed while that count was running;
+ * then it waits for the next round rather than overwrite a newer value.
+ */
+@Service
+@Slf4j
+public class InboxEventService {
+    
+    private static final String EVENT_MESSAGE = "message";
+    private static final String EVENT_UNREAD_COUNT = "unread-count";
+    
+    private final ContactMessageRepository contactMessageRepository;
+    private final ThreadPoolTaskExecutor inboxEventExecutor;
+    
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    
+    // Guarded by this; changes counts every delta so reconcile can tell it raced one
+    private long unread = -1;
+    private long changes;
+    
+    @Value("${contact.inbox.stream-timeout-ms:1800000}")
+    private long streamTimeoutMs;
+    
+    public InboxEventService(
+            ContactMessageRepository contactMessageRepository,
+            @Qualifier("inboxEventExecutor") ThreadPoolTaskExecutor inboxEventExecutor) {
+        this.contactMessageRepository = contactMessageRepository;
+        this.inboxEventExecutor = inboxEventExecutor;
+    }
+    
+    /**
+     * Counts unread messages on startup and then every reconcile interval.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${contact.inbox.reconcile-ms:300000}",
+            initialDelayString = "${contact.inbox.reconcile-ms:300000}")
+    public void reconcile() {
+        long seen;
+        synchronized (this) {
+            seen = changes;
+        }
+        long count = contactMessageRepository.countByIsReadFalse();
+        long previous;
+        synchronized (this) {
+            // The first count is taken regardless; any drift it misses is fixed next round
+            if (changes != seen && unread >= 0) {
+                return;
+            }
+            previous = unread;
+            unread = count;
+        }
+        if (previous != count) {
+            if (previous >= 0) {
+                log.info("Reconciled unread message counter from {} to {}", previous, count);
+            }
+            broadcastCount(count);
+        }
+    }
+    
+    public long getUnreadCount() {
+        synchronized (this) {
+            if (unread >= 0) {
+                return unread;
+            }
+        }
+        // Only before the first count on startup
+        return contactMessageRepository.countByIsReadFalse();
+    }
+    
+    /**
+     * Opens a stream for one admin; it starts with the current counter.
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        emitters.add(emitter);
+        
+        long count = getUnreadCount();
+        dispatch(() -> send(emitter, SseEmitter.event().name(EVENT_UNREAD_COUNT).data(Map.of("unreadCount", count))));
+        return emitter;
+    }
+    
+    /**
+     * A new unread message has been committed.
+     */
+    public void messageReceived(ContactMessageDto.Summary message) {
+        long count = applyDelta(1);
+        broadcast(() -> SseEmitter.event().name(EVENT_MESSAGE).data(message));
+        broadcastCount(count);
+    }
+    
+    /**
+     * Adjusts the counter by a committed change, e.g. -n when n unread
+     * messages were marked as read or deleted.
+     */
+    public void unreadChanged(long delta) {
+        if (delta == 0) {
+            return;
+        }
+        broadcastCount(applyDelta(delta));
+    }
+    
+    /**
+     * Keeps idle streams open through proxies and finds dead connections.
+     */
+    @Scheduled(fixedRateString = "${contact.inbox.heartbeat-ms:25000}")
+    public void heartbeat() {
+        if (!emitters.isEmpty()) {
+            broadcast(() -> SseEmitter.event().comment("keep-alive"));
+        }
+    }
+    
+    private synchronized long applyDelta(long delta) {
+        changes++;
+        if (unread < 0) {
+            // Not counted yet; the first count (or the reconcile after it) covers this change
+            return unread;
+        }
+        unread = Math.max(0, unread + delta);
+        return unread;
+    }
+    
+    private void broadcastCount(long count) {
+        if (count >= 0) {
+            broadcast(() -> SseEmitter.event().name(EVENT_UNREAD_COUNT).data(Map.of("unreadCount", count)));
+        }
+    }
+    
+    /**
+     * Sends the event to every stream. Each emitter gets a fresh builder:
+     * {@code build()} appends to the builder's state on every call, so a
+     * shared one would send later streams a corrupted event.
+     */
+    private void broadcast(Supplier<SseEmitter.SseEventBuilder> event) {
+        if (emitters.isEmpty()) {
+            return;
+        }
+        dispatch(() -> emitters.forEach(emitter -> send(emitter, event.get())));
+    }
+    
+    private void dispatch(Runnable task) {
+        try {
+            inboxEventExecutor.execute(task);
+        } catch (TaskRejectedException e) {
+            log.warn("Inbox event queue full, dropping an event for {} admin streams", emitters.size());
+        }
+    }
+    
+    private void send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            // Client went away; the container completes the emitter
+            emitters.remove(emitter);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.emasmetal.service;
+
+/**
+ * Fractional sort ranks for manually ordered catalogs. Items are ordered by a
+ * floating-point rank, so moving one item only needs a value between its new
+ * neighbours and rewrites a single row. Ranks start {@link #SPACING} apart;
+ * when repeated moves into the same spot squeeze a gap below
+ * {@link #MIN_GAP}, the catalog is renumbered in the background.
+ */
+final class Ranks {
+    
+    static final double SPACING = 1024.0;
+    static final double MIN_GAP = 1e-6;
+    
+    private Ranks() {
+    }
+    
+    /** Rank of an item placed through an explicit integer display order. */
+    static double fromDisplayOrder(int displayOrder) {
+        return displayOrder * SPACING;
+    }
+    
+    /**
+     * @param previous rank of the item that will come directly before, or null for the top
+     * @param next rank of the item that will come directly after, or null for the bottom
+     * @return a rank strictly between the two, or null if no such double exists
+     * @throws IllegalArgumentException if previous is not ordered before next
+     */
+    static Double between(Double previous, Double next) {
+        if (previous == null && next == null) {
+            return SPACING;
+        }
+        if (previous == null) {
+            return next - SPACING;
+        }
+        if (next == null) {
+            return previous + SPACING;
+        }
+        if (previous >= next) {
+            throw new IllegalArgumentException("The previous item must be ordered before the next item");
+        }
+        double middle = previous + (next - previous) / 2;
+        return middle > previous && middle < next ? middle : null;
+    }
+    
+    static boolean crowded(Double previous, Double next) {
+        return previous != null && next != null && next - previous < MIN_GAP;
+    }
+}
@@ -1,5 +1,7 @@
 package com.emasmetal.service;
 
+import com.emasmetal.cache.ListingCache;
+import com.emasmetal.dto.CursorPage;
 import com.emasmetal.dto.ReferenceDto;
 import com.emasmetal.entity.Reference;
 import com.emasmetal.exception.ResourceNotFoundException;
@@ -7,12 +9,21 @@ import com.emasmetal.mapper.DtoMapper;
 import com.emasmetal.repository.ReferenceRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @Service
@@ -21,24 +32,107 @@ import java.util.stream.Collectors;
 @Transactional
 public class ReferenceService {
     
+    private static final int DEFAULT_PAGE_SIZE = 24;
+    private static final int MAX_PAGE_SIZE = 100;
+    
     private final ReferenceRepository referenceRepository;
     private final FileStorageService fileStorageService;
     private final DtoMapper dtoMapper;
+    private final CatalogVersions catalogVersions;
+    private final ListingCache<String, List<ReferenceDto.Response>> referenceListingCache;
     
-    @Transactional(readOnly = true)
+    private final AtomicBoolean rebalanceRequested = new AtomicBoolean(false);
+    
+    // Cache hits must not open a transaction (and borrow a connection), so the
+    // listing reads only join one if present; the repository brings its own
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public List<ReferenceDto.Response> getAllReferences() {
-        return referenceRepository.findAllByOrderByDisplayOrderAscCreatedAtDesc()
-                .stream()
-                .map(dtoMapper::toResponse)
-                .collect(Collectors.toList());
+        return referenceListingCache.get(listingKey(null), () ->
+                referenceRepository.findAllByOrderBySortRankAscCreatedAtDesc()
+                        .stream()
+                        .map(dtoMapper::toResponse)
+                        .collect(Collectors.toUnmodifiableList()));
     }
     
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public List<ReferenceDto.Response> getReferencesByIndustry(String industry) {
-        return referenceRepository.findByIndustryOrderByDisplayOrderAsc(industry)
-                .stream()
-                .map(dtoMapper::toResponse)
-                .collect(Collectors.toList());
+        return referenceListingCache.get(listingKey(industry), () ->
+                referenceRepository.findByIndustryOrderBySortRankAscCreatedAtDesc(industry)
+                        .stream()
+                        .map(dtoMapper::toResponse)
+                        .collect(Collectors.toUnmodifiableList()));
+    }
+    
+    /**
+     * Keyset-paginated listing, optionally filtered. Pass the previous page's
+     * {@code nextCursor} to continue; a null cursor starts from the top.
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<ReferenceDto.Response> getReferencePage(String industry, String cursor, Integer size) {
+        int pageSize = Cursors.clampPageSize(size, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+        // Fetch one extra row to learn whether another page follows
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        
+        Double sortRank = null;
+        LocalDateTime createdAt = null;
+        UUID id = null;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] position = Cursors.decode(cursor, 3);
+            sortRank = Cursors.parseDouble(position[0]);
+            createdAt = Cursors.parseTimestamp(position[1]);
+            id = Cursors.parseUuid(position[2]);
+        }
+        
+        // A cursor without a rank points into the unranked tail
+        boolean inRanked = createdAt == null || sortRank != null;
+        List<Reference> rows = new ArrayList<>(inRanked
+                ? findRankedPage(industry, sortRank, createdAt, id, limit)
+                : findUnrankedPage(industry, createdAt, id, limit));
+        if (inRanked && rows.size() <= pageSize) {
+            // The ranked rows ran out; fill up from the start of the unranked tail
+            rows.addAll(findUnrankedPage(industry, null, null, PageRequest.of(0, pageSize + 1 - rows.size())));
+        }
+        
+        boolean hasMore = rows.size() > pageSize;
+        List<Reference> page = hasMore ? rows.subList(0, pageSize) : rows;
+        String nextCursor = null;
+        if (hasMore) {
+            Reference last = page.get(page.size() - 1);
+            nextCursor = Cursors.encode(last.getSortRank(), last.getCreatedAt(), last.getId());
+        }
+        
+        return CursorPage.<ReferenceDto.Response>builder()
+                .items(page.stream().map(dtoMapper::toResponse).collect(Collectors.toList()))
+                .nextCursor(nextCursor)
+                .build();
+    }
+    
+    private List<Reference> findRankedPage(String industry, Double sortRank, LocalDateTime createdAt, UUID id,
+                                           Pageable limit) {
+        if (sortRank == null) {
+            return industry == null
+                    ? referenceRepository.findRankedFirstPage(limit)
+                    : referenceRepository.findRankedFirstPageByIndustry(industry, limit);
+        }
+        return industry == null
+                ? referenceRepository.findRankedPageAfter(sortRank, createdAt, id, limit)
+                : referenceRepository.findRankedPageAfterByIndustry(industry, sortRank, createdAt, id, limit);
+    }
+    
+    private List<Reference> findUnrankedPage(String industry, LocalDateTime createdAt, UUID id, Pageable limit) {
+        if (createdAt == null) {
+            return industry == null
+                    ? referenceRepository.findUnrankedFirstPage(limit)
+                    : referenceRepository.findUnrankedFirstPageByIndustry(industry, limit);
+        }
+        return industry == null
+                ? referenceRepository.findUnrankedPageAfter(createdAt, id, limit)
+                : referenceRepository.findUnrankedPageAfterByIndustry(industry, createdAt, id, limit);
+    }
+    
+    @Transactional(readOnly = true)
+    public boolean referenceExists(UUID id) {
+        return referenceRepository.existsById(id);
     }
     
     @Transactional(readOnly = true)
@@ -56,7 +150,9 @@ public class ReferenceService {
             reference.setLogoUrl(logoUrl);
         }
         
+        assignNewRanks(List.of(reference));
         Reference saved = referenceRepository.save(reference);
+        invalidateListings(saved.getIndustry());
         log.info("Created reference: {} ({})", saved.getName(), saved.getId());
         
         return dtoMapper.toResponse(saved);
@@ -66,18 +162,23 @@ public class ReferenceService {
         Reference reference = referenceRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Reference not found with id: " + id));
         
+        String previousIndustry = reference.getIndustry();
         dtoMapper.updateEntity(reference, request);
+        if (request.getDisplayOrder() != null) {
+            reference.setSortRank(Ranks.fromDisplayOrder(request.getDisplayOrder()));
+        }
         
         if (logo != null && !logo.isEmpty()) {
             // Delete old logo if exists
             if (reference.getLogoUrl() != null) {
-                fileStorageService.deleteFile(reference.getLogoUrl());
+                fileStorageService.releaseFile(reference.getLogoUrl());
             }
             String logoUrl = fileStorageService.storeFile(logo, "logos");
             reference.setLogoUrl(logoUrl);
         }
         
         Reference saved = referenceRepository.save(reference);
+        invalidateListings(previousIndustry, saved.getIndustry());
         log.info("Updated reference: {} ({})", saved.getName(), saved.getId());
         
         return dtoMapper.toResponse(saved);
@@ -89,10 +190,140 @@ public class ReferenceService {
         
         // Delete logo file if exists
         if (reference.getLogoUrl() != null) {
-            fileStorageService.deleteFile(reference.getLogoUrl());
+            fileStorageService.releaseFile(reference.getLogoUrl());
         }
         
         referenceRepository.delete(reference);
+        invalidateListings(reference.getIndustry());
         log.info("Deleted reference: {} ({})", reference.getName(), reference.getId());
     }
+    
+    /**
+     * Moves an item between two neighbours by giving it a rank halfway
+     * between theirs; only the moved row is written.
+     */
+    public ReferenceDto.Response moveReference(UUID id, ReferenceDto.MoveRequest request) {
+        Reference reference = referenceRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Reference not found with id: " + id));
+        
+        Double previous = neighbourRank(id, request.getPreviousId());
+        Double next = neighbourRank(id, request.getNextId());
+        Double rank = Ranks.between(previous, next);
+        if (rank == null) {
+            // Out of precision between these two; renumber now instead of waiting
+            rebalance();
+            previous = neighbourRank(id, request.getPreviousId());
+            next = neighbourRank(id, request.getNextId());
+            rank = Ranks.between(previous, next);
+        }
+        
+        referenceRepository.updateSortRank(id, rank);
+        reference.setSortRank(rank);
+        if (Ranks.crowded(previous, rank) || Ranks.crowded(rank, next)) {
+            rebalanceRequested.set(true);
+        }
+        invalidateListings(reference.getIndustry());
+        log.info("Moved reference: {} ({}) to rank {}", reference.getName(), id, rank);
+        
+        return dtoMapper.toResponse(reference);
+    }
+    
+    /**
+     * Gives every unranked row a rank: rows with a display order keep their
+     * relative position, the rest are appended in their old listing order.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void assignMissingRanks() {
+        List<Reference> unranked = referenceRepository.findUnranked();
+        if (unranked.isEmpty()) {
+            return;
+        }
+        assignNewRanks(unranked);
+        referenceRepository.saveAll(unranked);
+        invalidateAllListings();
+        log.info("Assigned sort ranks to {} references", unranked.size());
+    }
+    
+    /**
+     * Renumbers the whole catalog to evenly spaced ranks (and matching
+     * display orders) once a move has left a gap too small to split again.
+     */
+    @Scheduled(fixedDelayString = "${catalog.ordering.rebalance-check-ms:60000}")
+    public void rebalanceIfRequested() {
+        if (rebalanceRequested.compareAndSet(true, false)) {
+            rebalance();
+        }
+    }
+    
+    private void rebalance() {
+        List<Reference> references = referenceRepository.findAllInListingOrder();
+        for (int i = 0; i < references.size(); i++) {
+            references.get(i).setSortRank(Ranks.fromDisplayOrder(i + 1));
+            references.get(i).setDisplayOrder(i + 1);
+        }
+        referenceRepository.saveAll(references);
+        invalidateAllListings();
+        log.info("Rebalanced sort ranks of {} references", references.size());
+    }
+    
+    private Double neighbourRank(UUID id, UUID neighbourId) {
+        if (neighbourId == null) {
+            return null;
+        }
+        if (neighbourId.equals(id)) {
+            throw new IllegalArgumentException("An item cannot be its own neighbour");
+        }
+        Reference neighbour = referenceRepository.findById(neighbourId)
+                .orElseThrow(() -> new ResourceNotFoundException("Reference not found with id: " + neighbourId));
+        if (neighbour.getSortRank() == null) {
+            throw new IllegalArgumentException("Reference " + neighbourId + " has no position yet");
+        }
+        return neighbour.getSortRank();
+    }
+    
+    /**
+     * Ranks new rows: an explicit display order maps onto the rank scale,
+     * anything else goes to the end of the listing.
+     */
+    private void assignNewRanks(List<Reference> references) {
+        Double max = referenceRepository.findMaxSortRank();
+        double last = max != null ? max : 0;
+        for (Reference reference : references) {
+            if (reference.getDisplayOrder() != null) {
+                reference.setSortRank(Ranks.fromDisplayOrder(reference.getDisplayOrder()));
+            } else {
+                reference.setSortRank(last + Ranks.SPACING);
+            }
+            last = Math.max(last, reference.getSortRank());
+        }
+    }
+    
+    /**
+     * Drops the unfiltered listing and the listings of the given industries
+     * once the current transaction has committed.
+     */
+    private void invalidateListings(String... industries) {
+        List<String> keys = new ArrayList<>();
+        keys.add(listingKey(null));
+        for (String industry : industries) {
+            if (industry != null) {
+                keys.add(listingKey(industry));
+            }
+        }
+        TransactionCallbacks.afterCommit(() -> referenceListingCache.invalidate(keys));
+        catalogVersions.bumpAfterCommit(CatalogVersions.Catalog.REFERENCES);
+    }
+    
+    /**
+     * Drops every cached listing once the current transaction has committed,
+     * for changes that reorder rows across all industries.
+     */
+    private void invalidateAllListings() {
+        TransactionCallbacks.afterCommit(referenceListingCache::invalidateAll);
+        catalogVersions.bumpAfterCommit(CatalogVersions.Catalog.REFERENCES);
+    }
+    
+    private static String listingKey(String industry) {
+        return industry == null ? "*" : "industry:" + industry;
+    }
 }
@@ -0,0 +1,294 @@
+package com.emasmetal.service;
+
+import com.emasmetal.cache.ListingCache;
+import com.emasmetal.dto.GalleryItemDto;
+import com.emasmetal.dto.ReferenceDto;
+import com.emasmetal.entity.ContactMessage;
+import com.emasmetal.entity.GalleryItem;
+import com.emasmetal.entity.Reference;
+import com.emasmetal.entity.UploadSession;
+import com.emasmetal.repository.ContactMessageRepository;
+import com.emasmetal.repository.GalleryItemRepository;
+import com.emasmetal.repository.ReferenceRepository;
+import com.emasmetal.repository.UploadSessionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Moves uploads stored in the flat layout into the sharded one while the
+ * application keeps serving them. It runs in three steps, each safe to
+ * repeat:
+ * <ol>
+ *   <li>every flat file is hard-linked into its shard, so both paths work;</li>
+ *   <li>stored URLs are rewritten in small transactions, guarded on the old
+ *       value so concurrent edits win;</li>
+ *   <li>flat names whose shard copy exists are unlinked, except those of
+ *       rows the rewrite skipped.</li>
+ * </ol>
+ * Old URLs still in browsers and caches are answered from the shard by
+ * {@code ShardedLayoutResourceResolver}.
+ */
+@Service
+@Slf4j
+public class UploadLayoutMigrationService {
+    
+    private final FileStorageService fileStorageService;
+    private final GalleryItemRepository galleryItemRepository;
+    private final ReferenceRepository referenceRepository;
+    private final ContactMessageRepository contactMessageRepository;
+    private final UploadSessionRepository uploadSessionRepository;
+    private final ListingCache<String, List<GalleryItemDto.Response>> galleryListingCache;
+    private final ListingCache<String, List<ReferenceDto.Response>> referenceListingCache;
+    private final CatalogVersions catalogVersions;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolTaskExecutor fileStorageExecutor;
+    
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    
+    @Value("${file.layout:flat}")
+    private String layout;
+    
+    @Value("${file.layout-migration.on-startup:true}")
+    private boolean migrateOnStartup;
+    
+    @Value("${file.layout-migration.batch-size:200}")
+    private int batchSize;
+    
+    public UploadLayoutMigrationService(
+            FileStorageService fileStorageService,
+            GalleryItemRepository galleryItemRepository,
+            ReferenceRepository referenceRepository,
+            ContactMessageRepository contactMessageRepository,
+            UploadSessionRepository uploadSessionRepository,
+            ListingCache<String, List<GalleryItemDto.Response>> galleryListingCache,
+            ListingCache<String, List<ReferenceDto.Response>> referenceListingCache,
+            CatalogVersions catalogVersions,
+            TransactionTemplate transactionTemplate,
+            @Qualifier("fileStorageExecutor") ThreadPoolTaskExecutor fileStorageExecutor) {
+        this.fileStorageService = fileStorageService;
+        this.galleryItemRepository = galleryItemRepository;
+        this.referenceRepository = referenceRepository;
+        this.contactMessageRepository = contactMessageRepository;
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.galleryListingCache = galleryListingCache;
+        this.referenceListingCache = referenceListingCache;
+        this.catalogVersions = catalogVersions;
+        this.transactionTemplate = transactionTemplate;
+        this.fileStorageExecutor = fileStorageExecutor;
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (migrateOnStartup) {
+            startMigration();
+        }
+    }
+    
+    /**
+     * Starts the migration in the background.
+     *
+     * @return false if the sharded layout is off or a migration is already running
+     */
+    public boolean startMigration() {
+        if (!FileStorageService.LAYOUT_SHARDED.equals(layout) || !running.compareAndSet(false, true)) {
+            return false;
+        }
+        fileStorageExecutor.execute(() -> {
+            try {
+                migrate();
+            } catch (IOException | RuntimeException e) {
+                log.error("Upload layout migration failed; it is safe to run again", e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+    
+    private void migrate() throws IOException {
+        Path uploadPath = fileStorageService.getUploadPath();
+        
+        int linked = 0;
+        for (String subDirectory : FileStorageService.SUB_DIRECTORIES) {
+            linked += linkIntoShards(uploadPath.resolve(subDirectory));
+        }
+        if (linked > 0) {
+            log.info("Layout migration: linked {} files into shards", linked);
+        }
+        
+        int gallery = rewrite(galleryItemRepository.findFlatLayoutIds(), galleryItemRepository::findAllById,
+                (GalleryItem item) -> galleryItemRepository.moveImage(item.getId(), item.getImageUrl(),
+                        FileStorageService.shardedUrl(item.getImageUrl()),
+                        FileStorageService.shardedUrl(item.getThumbnailUrl())));
+        int references = rewrite(referenceRepository.findFlatLayoutIds(), referenceRepository::findAllById,
+                (Reference reference) -> referenceRepository.moveLogo(reference.getId(), reference.getLogoUrl(),
+                        FileStorageService.shardedUrl(reference.getLogoUrl())));
+        int messages = rewrite(contactMessageRepository.findFlatLayoutIds(), contactMessageRepository::findAllById,
+                (ContactMessage message) -> contactMessageRepository.moveAttachment(message.getId(),
+                        message.getAttachmentUrl(), FileStorageService.shardedUrl(message.getAttachmentUrl()),
+                        FileStorageService.shardedUrl(message.getAttachmentPreviewUrl())));
+        int uploads = rewrite(uploadSessionRepository.findFlatLayoutIds(), uploadSessionRepository::findAllById,
+                (UploadSession session) -> uploadSessionRepository.moveFile(session.getId(), session.getFileUrl(),
+                        FileStorageService.shardedUrl(session.getFileUrl())));
+        
+        if (gallery > 0) {
+            galleryListingCache.invalidateAll();
+            catalogVersions.bumpAfterCommit(CatalogVersions.Catalog.GALLERY);
+        }
+        if (references > 0) {
+            referenceListingCache.invalidateAll();
+            catalogVersions.bumpAfterCommit(CatalogVersions.Catalog.REFERENCES);
+        }
+        
+        // A row edited concurrently keeps its flat URL until the next run;
+        // its file and the files derived from it keep their flat names too
+        Set<String> kept = flatUrlsStillReferenced();
+        int unlinked = 0;
+        for (String subDirectory : FileStorageService.SUB_DIRECTORIES) {
+            unlinked += unlinkFlatCopies(uploadPath.resolve(subDirectory), kept);
+        }
+        if (linked + gallery + references + messages + uploads + unlinked > 0) {
+            log.info("Layout migration done: {} gallery items, {} references, {} messages, {} uploads rewritten; "
+                    + "{} flat files removed", gallery, references, messages, uploads, unlinked);
+        }
+    }
+    
+    private int linkIntoShards(Path directory) throws IOException {
+        int linked = 0;
+        for (Path file : flatFiles(directory)) {
+            Path target = directory.resolve(FileStorageService.shardedName(file.getFileName().toString()));
+            if (Files.exists(target)) {
+                continue;
+            }
+            Files.createDirectories(target.getParent());
+            try {
+                // Same inode, no copy; modification times (reuse grace) carry over
+                Files.createLink(target, file);
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                Path temp = Files.createTempFile(target.getParent(), ".migrate-", ".tmp");
+                try {
+                    Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+            linked++;
+        }
+        return linked;
+    }
+    
+    private int unlinkFlatCopies(Path directory, Set<String> kept) throws IOException {
+        String urlPrefix = "/uploads/" + directory.getFileName() + "/";
+        int unlinked = 0;
+        for (Path file : flatFiles(directory)) {
+            String name = file.getFileName().toString();
+            if (isKept(urlPrefix + name, kept)) {
+                continue;
+            }
+            Path target = directory.resolve(FileStorageService.shardedName(name));
+            if (Files.exists(target)) {
+                Files.delete(file);
+                unlinked++;
+            }
+        }
+        return unlinked;
+    }
+    
+    /**
+     * Flat URLs rows still point at after the rewrite, stripped of their
+     * extension so derived files match them as a prefix.
+     */
+    private Set<String> flatUrlsStillReferenced() {
+        List<String> urls = new ArrayList<>();
+        galleryItemRepository.findAllById(galleryItemRepository.findFlatLayoutIds()).forEach(item -> {
+            urls.add(item.getImageUrl());
+            urls.add(item.getThumbnailUrl());
+        });
+        referenceRepository.findAllById(referenceRepository.findFlatLayoutIds())
+                .forEach(reference -> urls.add(reference.getLogoUrl()));
+        contactMessageRepository.findAllById(contactMessageRepository.findFlatLayoutIds()).forEach(message -> {
+            urls.add(message.getAttachmentUrl());
+            urls.add(message.getAttachmentPreviewUrl());
+        });
+        uploadSessionRepository.findAllById(uploadSessionRepository.findFlatLayoutIds())
+                .forEach(session -> urls.add(session.getFileUrl()));
+        
+        Set<String> kept = new HashSet<>();
+        for (String url : urls) {
+            if (url != null && !FileStorageService.shardedUrl(url).equals(url)) {
+                int dot = url.lastIndexOf('.');
+                kept.add(dot > url.lastIndexOf('/') ? url.substring(0, dot) : url);
+            }
+        }
+        return kept;
+    }
+    
+    
+    private static boolean isKept(String fileUrl, Set<String> kept) {
+        for (String prefix : kept) {
+            if (fileUrl.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /** Shardable files directly in the directory, skipping temp files */
+    private static List<Path> flatFiles(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, path -> {
+            String name = path.getFileName().toString();
+            return Files.isRegularFile(path) && !name.startsWith(".")
+                    && !FileStorageService.shardedName(name).equals(name);
+        })) {
+            List<Path> files = new ArrayList<>();
+            stream.forEach(files::add);
+            return files;
+        }
+    }
+    
+    /**
+     * Rewrites rows in transactions of {@code batchSize}. Rows whose URL
+     * changed since they were read are left to the next run.
+     */
+    private <T> int rewrite(List<UUID> ids, Function<List<UUID>, List<T>> loader,
+                            ToIntFunction<T> move) {
+        int moved = 0;
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<UUID> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            Integer count = transactionTemplate.execute(status -> {
+                int n = 0;
+                for (T row : loader.apply(batch)) {
+                    n += move.applyAsInt(row);
+                }
+                return n;
+            });
+            moved += count == null ? 0 : count;
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,299 @@
+package com.emasmetal.service;
+
+import com.emasmetal.dto.UploadDto;
+import com.emasmetal.entity.UploadSession;
+import com.emasmetal.exception.FileStorageException;
+import com.emasmetal.exception.ResourceNotFoundException;
+import com.emasmetal.exception.UploadConflictException;
+import com.emasmetal.repository.UploadSessionRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Attachment uploads that stream the request body straight into storage,
+ * instead of letting the container spool a multipart request to a temp
+ * file first. The client gets a token to quote when it submits its message.
+ * Large drawings can also be sent in resumable chunks: each chunk is written
+ * at its offset into a partial file, and the finished file is moved into
+ * storage once the last byte is in.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional
+public class UploadService {
+    
+    private static final String SUB_DIRECTORY = "attachments";
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final int CHUNK_BUFFER_SIZE = 64 * 1024;
+    
+    private final UploadSessionRepository uploadSessionRepository;
+    private final FileStorageService fileStorageService;
+    
+    @Value("${file.allowed-contact-extensions}")
+    private String allowedContactExtensionsStr;
+    
+    @Value("${file.max-contact-size}")
+    private long maxContactSize;
+    
+    @Value("${file.partial-upload-dir:./uploads-partial}")
+    private String partialUploadDir;
+    
+    private List<String> allowedContactExtensions;
+    private Path partialUploadPath;
+    
+    @PostConstruct
+    public void init() {
+        this.allowedContactExtensions = Arrays.asList(allowedContactExtensionsStr.toLowerCase().split(","));
+        // Kept outside the served upload directory so half-sent files are never public
+        this.partialUploadPath = Paths.get(partialUploadDir).toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(partialUploadPath);
+        } catch (IOException e) {
+            throw new FileStorageException("Could not create partial upload directory", e);
+        }
+    }
+    
+    // No transaction while the body streams in; only the insert needs one
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public UploadDto.Response uploadAttachment(String filename, InputStream body) {
+        if (filename == null || filename.isBlank()) {
+            throw new FileStorageException("Filename is required");
+        }
+        
+        String fileUrl = fileStorageService.storeFile(body, filename, SUB_DIRECTORY,
+                allowedContactExtensions, maxContactSize);
+        long size = storedSize(fileUrl);
+        
+        UploadSession session = uploadSessionRepository.save(UploadSession.builder()
+                .originalFilename(filename)
+                .fileUrl(fileUrl)
+                .sizeBytes(size)
+                .uploadLength(size)
+                .uploadOffset(size)
+                .build());
+        log.info("Received attachment upload {} ({} bytes) as {}", filename, size, session.getId());
+        
+        return toResponse(session);
+    }
+    
+    /**
+     * Opens a resumable upload of {@code uploadLength} bytes. The type and
+     * size are checked up front so a client doesn't send 20 MB to be told
+     * the extension is wrong; the content is checked once the file is complete.
+     */
+    public UploadDto.Status createResumableUpload(String filename, long uploadLength) {
+        if (filename == null || filename.isBlank()) {
+            throw new FileStorageException("Filename is required");
+        }
+        int dot = filename.lastIndexOf('.');
+        String extension = dot < 0 ? "" : filename.substring(dot + 1).toLowerCase();
+        if (!allowedContactExtensions.contains(extension)) {
+            throw new FileStorageException("File type not allowed. Allowed types: " + allowedContactExtensions);
+        }
+        if (uploadLength <= 0) {
+            throw new FileStorageException("Upload-Length must be positive");
+        }
+        if (uploadLength > maxContactSize) {
+            throw new FileStorageException("File size exceeds maximum allowed size of " + maxContactSize + " bytes");
+        }
+        
+        UploadSession session = uploadSessionRepository.save(UploadSession.builder()
+                .originalFilename(filename)
+                .uploadLength(uploadLength)
+                .build());
+        try {
+            Files.createFile(partialFile(session.getId()));
+        } catch (IOException e) {
+            throw new FileStorageException("Could not start upload of " + filename, e);
+        }
+        log.info("Started resumable upload {} ({} bytes) as {}", filename, uploadLength, session.getId());
+        
+        return toStatus(session);
+    }
+    
+    @Transactional(readOnly = true)
+    public UploadDto.Status getUploadStatus(UUID token) {
+        return toStatus(findSession(token));
+    }
+    
+    /**
+     * Writes one chunk at {@code offset}, which must be exactly where the
+     * previous chunk ended. Bytes are written straight into the partial file
+     * at their position and the new offset is recorded after they are synced,
+     * so a connection that drops mid-chunk still keeps whatever arrived and
+     * the client resumes from there. The last chunk completes the upload.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public UploadDto.Status appendChunk(UUID token, long offset, InputStream body) {
+        UploadSession session = findSession(token);
+        if (session.getFileUrl() != null || session.getUploadLength() == null) {
+            throw new UploadConflictException("Upload is already complete");
+        }
+        if (offset != session.getUploadOffset()) {
+            throw new UploadConflictException("Upload offset is " + session.getUploadOffset() + ", not " + offset);
+        }
+        
+        long length = session.getUploadLength();
+        long received = writeChunk(partialFile(token), offset, length, body);
+        long newOffset = offset + received;
+        if (received > 0 && uploadSessionRepository.advanceOffset(token, offset, newOffset) == 0) {
+            // Another request wrote the same range concurrently; its offset stands
+            throw new UploadConflictException("Upload was modified by another request");
+        }
+        session.setUploadOffset(newOffset);
+        
+        if (newOffset == length) {
+            completeUpload(session);
+        }
+        return toStatus(session);
+    }
+    
+    private long writeChunk(Path part, long offset, long length, InputStream body) {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BUFFER_SIZE);
+        long position = offset;
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.WRITE)) {
+            ReadableByteChannel source = Channels.newChannel(body);
+            while (true) {
+                int read;
+                try {
+                    read = source.read(buffer);
+                } catch (IOException e) {
+                    // Client went away mid-chunk; keep what made it to disk
+                    log.debug("Upload chunk interrupted at {}: {}", position, e.getMessage());
+                    break;
+                }
+                if (read < 0) {
+                    break;
+                }
+                buffer.flip();
+                if (position + buffer.remaining() > length) {
+                    throw new FileStorageException("Chunk runs past the declared Upload-Length of " + length + " bytes");
+                }
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                buffer.clear();
+            }
+            // The recorded offset must never run ahead of what is on disk
+            channel.force(false);
+        } catch (IOException e) {
+            throw new FileStorageException("Could not write upload chunk", e);
+        }
+        return position - offset;
+    }
+    
+    private void completeUpload(UploadSession session) {
+        Path part = partialFile(session.getId());
+        String fileUrl;
+        try {
+            fileUrl = fileStorageService.storeCompletedFile(part, session.getOriginalFilename(), SUB_DIRECTORY,
+                    allowedContactExtensions, maxContactSize);
+        } catch (FileStorageException e) {
+            // Content didn't match its extension; there is nothing left to resume
+            deletePartialFile(part);
+            uploadSessionRepository.deleteById(session.getId());
+            throw e;
+        }
+        // storeCompletedFile took ownership of the partial file; it is moved, not copied
+        
+        long size = storedSize(fileUrl);
+        if (uploadSessionRepository.complete(session.getId(), fileUrl, size) == 0) {
+            fileStorageService.releaseFile(fileUrl);
+            throw new UploadConflictException("Upload is already complete");
+        }
+        session.setFileUrl(fileUrl);
+        session.setSizeBytes(size);
+        log.info("Completed resumable upload {} ({} bytes) as {}", session.getOriginalFilename(), size, session.getId());
+    }
+    
+    /**
+     * Hands a finished upload over to a message. Each token can be used once.
+     *
+     * @throws IllegalArgumentException if the token is unknown, unfinished or already used
+     */
+    public UploadSession claimAttachment(UUID token) {
+        if (uploadSessionRepository.claim(token) == 0) {
+            throw new IllegalArgumentException("Attachment token is invalid or has already been used");
+        }
+        return uploadSessionRepository.findById(token)
+                .orElseThrow(() -> new IllegalArgumentException("Attachment token is invalid or has already been used"));
+    }
+    
+    /**
+     * Forgets upload sessions created before the cutoff, together with the
+     * partial files of those never finished. Files of finished but unclaimed
+     * sessions are left for the orphan sweeper.
+     *
+     * @return the number of sessions removed
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int purgeExpiredSessions(LocalDateTime cutoff) {
+        for (UUID id : uploadSessionRepository.findUnfinishedIdsCreatedBefore(cutoff)) {
+            deletePartialFile(partialFile(id));
+        }
+        return uploadSessionRepository.deleteCreatedBefore(cutoff);
+    }
+    
+    private UploadSession findSession(UUID token) {
+        return uploadSessionRepository.findById(token)
+                .orElseThrow(() -> new ResourceNotFoundException("Upload not found with id: " + token));
+    }
+    
+    private Path partialFile(UUID token) {
+        return partialUploadPath.resolve(token + PARTIAL_SUFFIX);
+    }
+    
+    private void deletePartialFile(Path part) {
+        try {
+            Files.deleteIfExists(part);
+        } catch (IOException e) {
+            log.warn("Could not delete partial upload {}: {}", part, e.getMessage());
+        }
+    }
+    
+    private long storedSize(String fileUrl) {
+        try {
+            return Files.size(fileStorageService.getStoredPath(fileUrl));
+        } catch (IOException e) {
+            throw new FileStorageException("Could not read stored upload " + fileUrl, e);
+        }
+    }
+    
+    private static UploadDto.Response toResponse(UploadSession session) {
+        return UploadDto.Response.builder()
+                .token(session.getId())
+                .filename(session.getOriginalFilename())
+                .size(session.getSizeBytes())
+                .build();
+    }
+    
+    private static UploadDto.Status toStatus(UploadSession session) {
+        return UploadDto.Status.builder()
+                .token(session.getId())
+                .offset(session.getUploadOffset())
+                .length(session.getUploadLength())
+                .complete(session.getFileUrl() != null)
+                .build();
+    }
+}
@@ -0,0 +1,338 @@
+package com.emasmetal.service;
+
+import com.emasmetal.dto.StorageDto;
+import com.emasmetal.repository.ContactMessageRepository;
+import com.emasmetal.repository.GalleryItemRepository;
+import com.emasmetal.repository.ReferenceRepository;
+import com.emasmetal.repository.UploadSessionRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Reconciles the upload tree with the tables that point into it. Files
+ * leak when a save rolls back after its upload was written, or when a
+ * delete fails; this sweeper finds files no row refers to and that are
+ * older than a grace period, and deletes them or moves them to a
+ * quarantine directory outside the served tree.
+ * <p>
+ * Files are matched to rows by their fingerprint (the SHA-256 or UUID at
+ * the start of the name) within their top-level directory, so derived
+ * files, gzipped copies and flat/sharded twins all belong to their
+ * original. Files without a fingerprint are never touched.
+ */
+@Service
+@Slf4j
+public class UploadSweeperService {
+    
+    public static final String MODE_DELETE = "delete";
+    public static final String MODE_QUARANTINE = "quarantine";
+    
+    private static final Pattern FINGERPRINT = Pattern.compile(
+            "^([0-9a-f]{64}|[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})");
+    
+    private final FileStorageService fileStorageService;
+    private final UploadService uploadService;
+    private final GalleryItemRepository galleryItemRepository;
+    private final ReferenceRepository referenceRepository;
+    private final ContactMessageRepository contactMessageRepository;
+    private final UploadSessionRepository uploadSessionRepository;
+    private final ContactWriteBehindService contactWriteBehindService;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ThreadPoolTaskExecutor uploadSweepExecutor;
+    
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile StorageDto.SweepReport lastReport;
+    
+    @Value("${file.orphan-sweep.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${file.orphan-sweep.mode:quarantine}")
+    private String mode;
+    
+    @Value("${file.orphan-sweep.grace-hours:24}")
+    private long graceHours;
+    
+    @Value("${file.orphan-sweep.max-files-per-second:20}")
+    private int maxFilesPerSecond;
+    
+    @Value("${file.orphan-sweep.quarantine-dir:./uploads-quarantine}")
+    private String quarantineDir;
+    
+    @Value("${file.orphan-sweep.quarantine-retention-days:30}")
+    private long quarantineRetentionDays;
+    
+    @Value("${file.orphan-sweep.upload-session-ttl-hours:48}")
+    private long uploadSessionTtlHours;
+    
+    private Path quarantinePath;
+    
+    public UploadSweeperService(
+            FileStorageService fileStorageService,
+            UploadService uploadService,
+            GalleryItemRepository galleryItemRepository,
+            ReferenceRepository referenceRepository,
+            ContactMessageRepository contactMessageRepository,
+            UploadSessionRepository uploadSessionRepository,
+            ContactWriteBehindService contactWriteBehindService,
+            PlatformTransactionManager transactionManager,
+            @Qualifier("uploadSweepExecutor") ThreadPoolTaskExecutor uploadSweepExecutor) {
+        this.fileStorageService = fileStorageService;
+        this.uploadService = uploadService;
+        this.galleryItemRepository = galleryItemRepository;
+        this.referenceRepository = referenceRepository;
+        this.contactMessageRepository = contactMessageRepository;
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.contactWriteBehindService = contactWriteBehindService;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.uploadSweepExecutor = uploadSweepExecutor;
+    }
+    
+    @PostConstruct
+    public void init() {
+        if (!MODE_DELETE.equals(mode) && !MODE_QUARANTINE.equals(mode)) {
+            throw new IllegalStateException("Unknown file.orphan-sweep.mode: " + mode);
+        }
+        this.quarantinePath = Paths.get(quarantineDir).toAbsolutePath().normalize();
+    }
+    
+    @Scheduled(cron = "${file.orphan-sweep.cron:0 30 3 * * *}")
+    public void scheduledSweep() {
+        if (enabled) {
+            sweep(false);
+        }
+    }
+    
+    /**
+     * Starts a sweep in the background; the report is available from
+     * {@link #getLastReport()} when it is done.
+     *
+     * @return false if a sweep is already running
+     */
+    public boolean startSweep(boolean dryRun) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            uploadSweepExecutor.execute(() -> runSweep(dryRun));
+            return true;
+        } catch (TaskRejectedException e) {
+            running.set(false);
+            return false;
+        }
+    }
+    
+    public StorageDto.SweepReport getLastReport() {
+        return lastReport;
+    }
+    
+    /**
+     * @return the report, or null if another sweep was running
+     */
+    public StorageDto.SweepReport sweep(boolean dryRun) {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        return runSweep(dryRun);
+    }
+    
+    /**
+     * Runs a sweep whose caller has claimed {@code running}, and releases it.
+     */
+    private StorageDto.SweepReport runSweep(boolean dryRun) {
+        try {
+            StorageDto.SweepReport report = StorageDto.SweepReport.builder()
+                    .startedAt(LocalDateTime.now())
+                    .mode(mode)
+                    .dryRun(dryRun)
+                    .build();
+            
+            // Expire sessions first: files of abandoned uploads then show up as orphans
+            if (!dryRun) {
+                report.setExpiredUploadSessions(uploadService.purgeExpiredSessions(
+                        LocalDateTime.now().minusHours(uploadSessionTtlHours)));
+            }
+            
+            // Files written after this point are younger than the grace period,
+            // so rows committed during the walk can't be missed
+            Set<String> referenced = referencedFingerprints();
+            walkUploads(referenced, report);
+            if (!dryRun && MODE_QUARANTINE.equals(mode)) {
+                report.setPurgedQuarantineFiles(purgeQuarantine());
+            }
+            
+            report.setFinishedAt(LocalDateTime.now());
+            lastReport = report;
+            log.info("Orphan sweep{}: scanned {} files, {} orphans, {} bytes reclaimed ({}), {} upload sessions expired",
+                    dryRun ? " (dry run)" : "", report.getScannedFiles(), report.getOrphanedFiles(),
+                    report.getReclaimedBytes(), mode, report.getExpiredUploadSessions());
+            return report;
+        } catch (IOException | RuntimeException e) {
+            log.error("Orphan sweep failed", e);
+            return null;
+        } finally {
+            running.set(false);
+        }
+    }
+    
+    /**
+     * Streams the URL columns of every table that owns files; only the
+     * fingerprints are kept in memory. Attachments of contact messages still
+     * queued for insert are read before the tables, so a message flushed in
+     * between is seen by one or the other.
+     */
+    private Set<String> referencedFingerprints() {
+        Set<String> fingerprints = new HashSet<>();
+        collect(contactWriteBehindService.pendingAttachmentUrls().stream(), fingerprints);
+        readOnlyTransaction.executeWithoutResult(status -> {
+            collect(galleryItemRepository.streamFileUrls(), fingerprints);
+            collect(referenceRepository.streamFileUrls(), fingerprints);
+            collect(contactMessageRepository.streamFileUrls(), fingerprints);
+            collect(uploadSessionRepository.streamFileUrls(), fingerprints);
+        });
+        return fingerprints;
+    }
+    
+    private static void collect(Stream<String> urls, Set<String> fingerprints) {
+        try (urls) {
+            urls.filter(url -> url != null && url.startsWith("/uploads/"))
+                    .map(url -> fingerprint(url.substring("/uploads/".length())))
+                    .filter(key -> key != null)
+                    .forEach(fingerprints::add);
+        }
+    }
+    
+    private void walkUploads(Set<String> referenced, StorageDto.SweepReport report) throws IOException {
+        Path uploadPath = fileStorageService.getUploadPath();
+        FileTime cutoff = FileTime.from(Instant.now().minus(Duration.ofHours(graceHours)));
+        long intervalNanos = Duration.ofSeconds(1).toNanos() / Math.max(1, maxFilesPerSecond);
+        long[] nextRemoval = {System.nanoTime()};
+        
+        Files.walkFileTree(uploadPath, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (!attributes.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+                report.setScannedFiles(report.getScannedFiles() + 1);
+                
+                String relative = uploadPath.relativize(file).toString().replace('\\', '/');
+                // Leftover temp files (.upload-*, .img-*) have no owner by definition
+                boolean temporary = file.getFileName().toString().startsWith(".");
+                String key = fingerprint(relative);
+                if (!temporary && (key == null || referenced.contains(key))) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (attributes.lastModifiedTime().compareTo(cutoff) > 0) {
+                    return FileVisitResult.CONTINUE;
+                }
+                
+                report.setOrphanedFiles(report.getOrphanedFiles() + 1);
+                report.setReclaimedBytes(report.getReclaimedBytes() + attributes.size());
+                if (report.isDryRun()) {
+                    log.debug("Orphaned upload: {}", relative);
+                    return FileVisitResult.CONTINUE;
+                }
+                
+                // Keep the disk (and backups) from noticing the sweep
+                long now = System.nanoTime();
+                if (nextRemoval[0] > now) {
+                    LockSupport.parkNanos(nextRemoval[0] - now);
+                }
+                nextRemoval[0] = Math.max(now, nextRemoval[0]) + intervalNanos;
+                remove(file, relative);
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Deleted while we were walking, or unreadable; not ours to judge
+                log.debug("Skipping {}: {}", file, e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+    
+    private void remove(Path file, String relative) {
+        try {
+            if (MODE_DELETE.equals(mode)) {
+                Files.deleteIfExists(file);
+                log.info("Deleted orphaned upload {}", relative);
+            } else {
+                Path target = quarantinePath.resolve(relative);
+                Files.createDirectories(target.getParent());
+                Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+                // Retention counts from the day it was quarantined
+                Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+                log.info("Quarantined orphaned upload {}", relative);
+            }
+        } catch (IOException e) {
+            log.warn("Could not remove orphaned upload {}: {}", relative, e.getMessage());
+        }
+    }
+    
+    private long purgeQuarantine() throws IOException {
+        if (!Files.isDirectory(quarantinePath)) {
+            return 0;
+        }
+        FileTime cutoff = FileTime.from(Instant.now().minus(Duration.ofDays(quarantineRetentionDays)));
+        long[] purged = {0};
+        Files.walkFileTree(quarantinePath, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (attributes.isRegularFile() && attributes.lastModifiedTime().compareTo(cutoff) < 0) {
+                    Files.deleteIfExists(file);
+                    purged[0]++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return purged[0];
+    }
+    
+    /**
+     * {@code gallery/ab/cd/<sha256>-640.webp} -> {@code gallery/<sha256>};
+     * null for names without a fingerprint.
+     */
+    static String fingerprint(String relativePath) {
+        int slash = relativePath.indexOf('/');
+        if (slash <= 0) {
+            return null;
+        }
+        Matcher matcher = FINGERPRINT.matcher(relativePath.substring(relativePath.lastIndexOf('/') + 1));
+        return matcher.find() ? relativePath.substring(0, slash) + "/" + matcher.group(1) : null;
+    }
+}
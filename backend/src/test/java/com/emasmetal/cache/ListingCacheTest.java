@@ -0,0 +1,113 @@
+package com.emasmetal.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ListingCacheTest {
+
+    @Test
+    void secondReadIsServedFromTheCache() {
+        ListingCache<String, String> cache = new ListingCache<>("gallery", 10);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThat(cache.get("all", () -> "v" + loads.incrementAndGet())).isEqualTo("v1");
+        assertThat(cache.get("all", () -> "v" + loads.incrementAndGet())).isEqualTo("v1");
+
+        assertThat(loads).hasValue(1);
+        assertThat(cache.stats().getHits()).isEqualTo(1);
+        assertThat(cache.stats().getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidatedKeysAreLoadedAgain() {
+        ListingCache<String, String> cache = new ListingCache<>("gallery", 10);
+        cache.get("all", () -> "old");
+        cache.get("category:LASER", () -> "old");
+        cache.get("category:BENDING", () -> "old");
+
+        cache.invalidate(List.of("all", "category:LASER"));
+
+        assertThat(cache.get("all", () -> "new")).isEqualTo("new");
+        assertThat(cache.get("category:LASER", () -> "new")).isEqualTo("new");
+        assertThat(cache.get("category:BENDING", () -> "new")).isEqualTo("old");
+    }
+
+    @Test
+    void invalidateAllEmptiesTheCache() {
+        ListingCache<String, String> cache = new ListingCache<>("references", 10);
+        cache.get("all", () -> "old");
+        cache.get("featured", () -> "old");
+
+        cache.invalidateAll();
+
+        assertThat(cache.stats().getSize()).isZero();
+        assertThat(cache.get("featured", () -> "new")).isEqualTo("new");
+    }
+
+    @Test
+    void loadThatStartedBeforeAnInvalidationIsNotCached() {
+        ListingCache<String, String> cache = new ListingCache<>("gallery", 10);
+
+        // The writer invalidates while the reader is still loading pre-write data
+        String loaded = cache.get("all", () -> {
+            cache.invalidate(List.of("all"));
+            return "stale";
+        });
+
+        assertThat(loaded).isEqualTo("stale");
+        assertThat(cache.get("all", () -> "fresh")).isEqualTo("fresh");
+    }
+
+    @Test
+    void invalidatingAnotherKeyStillDropsAConcurrentLoad() {
+        ListingCache<String, String> cache = new ListingCache<>("gallery", 10);
+
+        cache.get("all", () -> {
+            cache.invalidate(List.of("category:LASER"));
+            return "stale";
+        });
+
+        assertThat(cache.stats().getSize()).isZero();
+    }
+
+    @Test
+    void nullResultsAreNotCached() {
+        ListingCache<String, String> cache = new ListingCache<>("gallery", 10);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("all", () -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        cache.get("all", () -> {
+            loads.incrementAndGet();
+            return null;
+        });
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvictedAtCapacity() {
+        ListingCache<String, String> cache = new ListingCache<>("gallery", 2);
+        cache.get("a", () -> "a");
+        cache.get("b", () -> "b");
+        cache.get("a", () -> "reloaded");
+
+        cache.get("c", () -> "c");
+
+        assertThat(cache.stats().getEvictions()).isEqualTo(1);
+        assertThat(cache.get("a", () -> "reloaded")).isEqualTo("a");
+        assertThat(cache.get("b", () -> "reloaded")).isEqualTo("reloaded");
+    }
+
+    @Test
+    void capacityMustBePositive() {
+        assertThatThrownBy(() -> new ListingCache<>("gallery", 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,47 @@
+package com.emasmetal.config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebpNegotiatingResourceResolverTest {
+
+    @Test
+    void browserListingWebpGetsIt() {
+        assertThat(WebpNegotiatingResourceResolver.acceptsWebp(
+                "image/avif,image/webp,image/apng,image/svg+xml,image/*,*/*;q=0.8")).isTrue();
+        assertThat(WebpNegotiatingResourceResolver.acceptsWebp("IMAGE/WEBP;q=0.5")).isTrue();
+    }
+
+    @Test
+    void webpWithZeroQualityIsRefused() {
+        assertThat(WebpNegotiatingResourceResolver.acceptsWebp("image/webp;q=0, image/*")).isFalse();
+        assertThat(WebpNegotiatingResourceResolver.acceptsWebp("image/webp;q=0.0")).isFalse();
+    }
+
+    @Test
+    void wildcardsAloneDoNotSelectWebp() {
+        assertThat(WebpNegotiatingResourceResolver.acceptsWebp("image/*")).isFalse();
+        assertThat(WebpNegotiatingResourceResolver.acceptsWebp("*/*")).isFalse();
+        assertThat(WebpNegotiatingResourceResolver.acceptsWebp(null)).isFalse();
+    }
+
+    @Test
+    void similarTypesDoNotMatch() {
+        assertThat(WebpNegotiatingResourceResolver.acceptsWebp("image/webp2, image/x-webp")).isFalse();
+        assertThat(WebpNegotiatingResourceResolver.acceptsWebp("text/html;note=\"image/webp\"")).isFalse();
+    }
+
+    @Test
+    void malformedHeaderIsTreatedAsNoWebp() {
+        assertThat(WebpNegotiatingResourceResolver.acceptsWebp("image/webp;q=high")).isFalse();
+        assertThat(WebpNegotiatingResourceResolver.acceptsWebp("image/")).isFalse();
+    }
+
+    @Test
+    void onlyGalleryJpegsAreNegotiated() {
+        assertThat(WebpNegotiatingResourceResolver.isNegotiable("gallery/ab/cd/photo.JPG")).isTrue();
+        assertThat(WebpNegotiatingResourceResolver.isNegotiable("gallery/photo.png")).isFalse();
+        assertThat(WebpNegotiatingResourceResolver.isNegotiable("logos/photo.jpg")).isFalse();
+    }
+}
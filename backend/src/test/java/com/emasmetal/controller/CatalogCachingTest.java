@@ -0,0 +1,49 @@
+package com.emasmetal.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CatalogCachingTest {
+
+    private static final String ETAG = "\"gallery-abc-0123\"";
+
+    @Test
+    void matchingTagIsNotModified() {
+        assertThat(CatalogCaching.notModified(ETAG, ETAG)).isTrue();
+        assertThat(CatalogCaching.notModified("\"other\", " + ETAG, ETAG)).isTrue();
+    }
+
+    @Test
+    void weakFormOfTheTagMatches() {
+        assertThat(CatalogCaching.notModified("W/" + ETAG, ETAG)).isTrue();
+    }
+
+    @Test
+    void otherOrMissingTagsAreModified() {
+        assertThat(CatalogCaching.notModified("\"gallery-abb-0123\"", ETAG)).isFalse();
+        assertThat(CatalogCaching.notModified(null, ETAG)).isFalse();
+        assertThat(CatalogCaching.notModified(" ", ETAG)).isFalse();
+    }
+
+    @Test
+    void wildcardMatchesAListing() {
+        assertThat(CatalogCaching.notModified("*", ETAG)).isTrue();
+    }
+
+    @Test
+    void wildcardMatchesOnlyAnExistingItem() {
+        assertThat(CatalogCaching.notModified("*", ETAG, () -> true)).isTrue();
+        assertThat(CatalogCaching.notModified("*", ETAG, () -> false)).isFalse();
+    }
+
+    @Test
+    void existenceIsOnlyCheckedForTheWildcard() {
+        assertThat(CatalogCaching.notModified(ETAG, ETAG, () -> {
+            throw new AssertionError("not needed for a specific tag");
+        })).isTrue();
+        assertThat(CatalogCaching.notModified("\"stale\"", ETAG, () -> {
+            throw new AssertionError("not needed for a specific tag");
+        })).isFalse();
+    }
+}
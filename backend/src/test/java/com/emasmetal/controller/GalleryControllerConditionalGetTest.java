@@ -0,0 +1,112 @@
+package com.emasmetal.controller;
+
+import com.emasmetal.dto.GalleryItemDto;
+import com.emasmetal.exception.ResourceNotFoundException;
+import com.emasmetal.service.CatalogVersions;
+import com.emasmetal.service.GalleryBulkImportService;
+import com.emasmetal.service.GalleryImageService;
+import com.emasmetal.service.GalleryService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GalleryControllerConditionalGetTest {
+
+    private final UUID id = UUID.randomUUID();
+
+    private GalleryService galleryService;
+    private CatalogVersions catalogVersions;
+    private GalleryController controller;
+
+    @BeforeEach
+    void setUp() {
+        galleryService = mock(GalleryService.class);
+        catalogVersions = new CatalogVersions();
+        controller = new GalleryController(galleryService, mock(GalleryImageService.class),
+                mock(GalleryBulkImportService.class), catalogVersions);
+        when(galleryService.getAllGalleryItems()).thenReturn(List.of());
+        when(galleryService.getGalleryItem(id)).thenReturn(GalleryItemDto.Response.builder().id(id).build());
+    }
+
+    @Test
+    void listingIsSentWithItsEtag() {
+        ResponseEntity<List<GalleryItemDto.Response>> response = controller.getAllGalleryItems(null, null);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getHeaders().getETag()).isNotNull();
+        assertThat(response.getHeaders().getCacheControl()).contains("no-cache");
+    }
+
+    @Test
+    void currentEtagIsAnsweredWithoutReadingTheListing() {
+        String etag = controller.getAllGalleryItems(null, null).getHeaders().getETag();
+
+        ResponseEntity<List<GalleryItemDto.Response>> response = controller.getAllGalleryItems(null, etag);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(304);
+        assertThat(response.getHeaders().getETag()).isEqualTo(etag);
+        assertThat(response.getBody()).isNull();
+        verify(galleryService).getAllGalleryItems();
+    }
+
+    @Test
+    void etagOfAnotherFilterDoesNotMatch() {
+        String all = controller.getAllGalleryItems(null, null).getHeaders().getETag();
+
+        ResponseEntity<List<GalleryItemDto.Response>> response = controller.getAllGalleryItems("Milling", all);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+    }
+
+    @Test
+    void committedWriteMakesTheOldEtagStale() {
+        String etag = controller.getAllGalleryItems(null, null).getHeaders().getETag();
+
+        // Outside a transaction the bump happens at once
+        catalogVersions.bumpAfterCommit(CatalogVersions.Catalog.GALLERY);
+        ResponseEntity<List<GalleryItemDto.Response>> response = controller.getAllGalleryItems(null, etag);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getHeaders().getETag()).isNotEqualTo(etag);
+    }
+
+    @Test
+    void wildcardOnAnExistingItemIsNotModified() {
+        when(galleryService.galleryItemExists(id)).thenReturn(true);
+
+        ResponseEntity<GalleryItemDto.Response> response = controller.getGalleryItem(id, "*");
+
+        assertThat(response.getStatusCode().value()).isEqualTo(304);
+        verify(galleryService, never()).getGalleryItem(any());
+    }
+
+    @Test
+    void wildcardOnAMissingItemStillGetsItsNotFound() {
+        when(galleryService.galleryItemExists(id)).thenReturn(false);
+        when(galleryService.getGalleryItem(id)).thenThrow(new ResourceNotFoundException("Gallery item not found"));
+
+        assertThatThrownBy(() -> controller.getGalleryItem(id, "*")).isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void itemEtagMatchesWithoutCheckingExistence() {
+        String etag = controller.getGalleryItem(id, null).getHeaders().getFirst(HttpHeaders.ETAG);
+
+        ResponseEntity<GalleryItemDto.Response> response = controller.getGalleryItem(id, "W/" + etag);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(304);
+        verify(galleryService, never()).galleryItemExists(any());
+    }
+}
@@ -0,0 +1,65 @@
+package com.emasmetal.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StripedRateLimiterTest {
+
+    @Test
+    void burstIsAllowedBackToBackThenRejected() {
+        StripedRateLimiter limiter = new StripedRateLimiter(1024, 1, Duration.ofHours(1), 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquire("203.0.113.7")).isZero();
+        }
+        Duration wait = limiter.tryAcquire("203.0.113.7");
+
+        assertThat(wait).isPositive().isLessThanOrEqualTo(Duration.ofHours(1));
+    }
+
+    @Test
+    void rejectedRequestsDoNotUseUpTheAllowance() {
+        StripedRateLimiter limiter = new StripedRateLimiter(1024, 1, Duration.ofHours(1), 1);
+        limiter.tryAcquire("203.0.113.7");
+
+        Duration first = limiter.tryAcquire("203.0.113.7");
+        Duration second = limiter.tryAcquire("203.0.113.7");
+
+        // Only time has passed in between; a rejection must not push the next slot further out
+        assertThat(second).isLessThanOrEqualTo(first);
+    }
+
+    @Test
+    void allowanceRefillsAfterTheEmissionInterval() throws InterruptedException {
+        StripedRateLimiter limiter = new StripedRateLimiter(1024, 5, Duration.ofSeconds(1), 1);
+        assertThat(limiter.tryAcquire("client")).isZero();
+
+        Duration wait = limiter.tryAcquire("client");
+        assertThat(wait).isPositive().isLessThanOrEqualTo(Duration.ofMillis(200));
+
+        Thread.sleep(wait.toMillis() + 20);
+        assertThat(limiter.tryAcquire("client")).isZero();
+    }
+
+    @Test
+    void intervalAndToleranceFollowFromTheLimit() {
+        StripedRateLimiter limiter = new StripedRateLimiter(1024, 60, Duration.ofMinutes(1), 5);
+
+        assertThat(limiter.emissionInterval()).isEqualTo(Duration.ofSeconds(1));
+        assertThat(limiter.tolerance()).isEqualTo(Duration.ofSeconds(4));
+    }
+
+    @Test
+    void nonPositiveLimitsAreRejected() {
+        assertThatThrownBy(() -> new StripedRateLimiter(1024, 0, Duration.ofMinutes(1), 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new StripedRateLimiter(1024, 1, Duration.ofMinutes(1), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new StripedRateLimiter(1024, 1, Duration.ZERO, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
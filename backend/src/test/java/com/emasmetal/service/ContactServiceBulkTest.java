@@ -0,0 +1,171 @@
+package com.emasmetal.service;
+
+import com.emasmetal.dto.ContactMessageDto;
+import com.emasmetal.mapper.DtoMapper;
+import com.emasmetal.repository.ContactMessageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ContactServiceBulkTest {
+
+    private final UUID first = UUID.randomUUID();
+    private final UUID second = UUID.randomUUID();
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private FileStorageService fileStorageService;
+    private InboxEventService inboxEventService;
+    private ContactService service;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+        fileStorageService = mock(FileStorageService.class);
+        inboxEventService = mock(InboxEventService.class);
+        service = new ContactService(mock(ContactMessageRepository.class), fileStorageService, mock(DtoMapper.class),
+                mock(UploadService.class), mock(ApplicationEventPublisher.class),
+                mock(ContactWriteBehindService.class), inboxEventService, jdbcTemplate,
+                mock(ContactRateLimitService.class));
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void markingReadIsOneUpdateOfTheSelectedUnreadRows() {
+        LocalDateTime cutoff = LocalDateTime.of(2024, 5, 1, 0, 0);
+        when(jdbcTemplate.update(anyString(), any(SqlParameterSource.class))).thenReturn(2);
+
+        ContactMessageDto.BulkResult result = service.setReadInBulk(ContactMessageDto.BulkRequest.builder()
+                .ids(List.of(first, second))
+                .receivedBefore(cutoff)
+                .build(), true);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<MapSqlParameterSource> params = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+        verify(jdbcTemplate).update(sql.capture(), params.capture());
+        assertThat(sql.getValue()).isEqualTo("UPDATE contact_messages SET is_read = :read WHERE is_read <> :read"
+                + " AND id IN (:ids) AND created_at < :receivedBefore");
+        assertThat(params.getValue().getValues()).containsOnly(
+                Map.entry("read", true), Map.entry("ids", List.of(first, second)), Map.entry("receivedBefore", cutoff));
+        assertThat(result.getAffected()).isEqualTo(2);
+        verify(inboxEventService).unreadChanged(-2);
+    }
+
+    @Test
+    void markingUnreadByFilterRaisesTheCounterByTheRowsChanged() {
+        when(jdbcTemplate.update(anyString(), any(SqlParameterSource.class))).thenReturn(3);
+
+        service.setReadInBulk(ContactMessageDto.BulkRequest.builder().isRead(true).build(), false);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).update(sql.capture(), any(SqlParameterSource.class));
+        assertThat(sql.getValue()).endsWith("WHERE is_read <> :read AND is_read = :isRead");
+        verify(inboxEventService).unreadChanged(3);
+    }
+
+    @Test
+    void updateThatChangedNothingLeavesTheCounterAlone() {
+        when(jdbcTemplate.update(anyString(), any(SqlParameterSource.class))).thenReturn(0);
+
+        ContactMessageDto.BulkResult result = service.setReadInBulk(
+                ContactMessageDto.BulkRequest.builder().ids(List.of(first)).build(), true);
+
+        assertThat(result.getAffected()).isZero();
+        verify(inboxEventService, never()).unreadChanged(anyLong());
+    }
+
+    @Test
+    void counterMovesOnlyOnceTheUpdateCommits() {
+        when(jdbcTemplate.update(anyString(), any(SqlParameterSource.class))).thenReturn(1);
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.setReadInBulk(ContactMessageDto.BulkRequest.builder().ids(List.of(first)).build(), true);
+
+        verify(inboxEventService, never()).unreadChanged(anyLong());
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+        verify(inboxEventService).unreadChanged(-1);
+    }
+
+    @Test
+    void deleteReleasesWhatTheDeletedRowsReturned() throws SQLException {
+        // Two messages sharing one stored attachment, and one without any
+        List<ResultSet> deleted = List.of(
+                row("/uploads/attachments/ab/cd/abcd.pdf", "/uploads/attachments/ab/cd/abcd-preview.jpg", false),
+                row("/uploads/attachments/ab/cd/abcd.pdf", "/uploads/attachments/ab/cd/abcd-preview.jpg", true),
+                row(null, null, false));
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(2);
+            for (ResultSet rs : deleted) {
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(SqlParameterSource.class), any(RowCallbackHandler.class));
+
+        ContactMessageDto.BulkResult result = service.deleteInBulk(
+                ContactMessageDto.BulkRequest.builder().isRead(false).build());
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).query(sql.capture(), any(SqlParameterSource.class), any(RowCallbackHandler.class));
+        assertThat(sql.getValue()).isEqualTo("DELETE FROM contact_messages WHERE is_read = :isRead"
+                + " RETURNING attachment_url, attachment_preview_url, is_read");
+        assertThat(result.getAffected()).isEqualTo(3);
+        verify(fileStorageService).releaseFiles(Map.of("/uploads/attachments/ab/cd/abcd.pdf",
+                List.of("/uploads/attachments/ab/cd/abcd-preview.jpg")));
+        verify(inboxEventService).unreadChanged(-2);
+    }
+
+    @Test
+    void requestWithoutCriteriaIsRejected() {
+        assertThatThrownBy(() -> service.deleteInBulk(new ContactMessageDto.BulkRequest()))
+                .isInstanceOf(IllegalArgumentException.class);
+        // An empty list must not fall through to the filters and match every row
+        assertThatThrownBy(() -> service.setReadInBulk(ContactMessageDto.BulkRequest.builder()
+                .ids(List.of())
+                .isRead(false)
+                .build(), true))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    private static ResultSet row(String attachmentUrl, String previewUrl, boolean read) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString("attachment_url")).thenReturn(attachmentUrl);
+        when(rs.getString("attachment_preview_url")).thenReturn(previewUrl);
+        when(rs.getObject("is_read", Boolean.class)).thenReturn(read);
+        return rs;
+    }
+}
@@ -0,0 +1,193 @@
+package com.emasmetal.service;
+
+import com.emasmetal.entity.ContactMessage;
+import com.emasmetal.mapper.DtoMapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ContactWriteBehindServiceReplayTest {
+
+    private static final int BATCH_SIZE = 2;
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().addModule(new JavaTimeModule()).build();
+    private JdbcTemplate jdbcTemplate;
+    private ApplicationEventPublisher eventPublisher;
+    private InboxEventService inboxEventService;
+
+    // Each batchUpdate call's rows, copied since the caller reuses its list
+    private final List<List<ContactWriteBehindService.JournalEntry>> batches = new ArrayList<>();
+    private final List<ContactWriteBehindService> started = new ArrayList<>();
+    private boolean databaseDown;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        inboxEventService = mock(InboxEventService.class);
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any())).thenAnswer(invocation -> {
+            if (databaseDown) {
+                throw new DataAccessResourceFailureException("db down");
+            }
+            Collection<ContactWriteBehindService.JournalEntry> rows = invocation.getArgument(1);
+            batches.add(List.copyOf(rows));
+            int[] counts = new int[rows.size()];
+            Arrays.fill(counts, 1);
+            return new int[][] {counts};
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        started.forEach(ContactWriteBehindService::shutdown);
+    }
+
+    @Test
+    void leftoverSegmentsAreInsertedInBatchesAndDeleted() throws IOException {
+        ContactWriteBehindService.JournalEntry first = entry("first", null);
+        ContactWriteBehindService.JournalEntry second = entry("second", "/uploads/attachments/ab/cd/abcd.pdf");
+        ContactWriteBehindService.JournalEntry third = entry("third", null);
+        writeSegment(4, first, second);
+        writeSegment(5, third);
+
+        start();
+
+        assertThat(batches).containsExactly(List.of(first, second), List.of(third));
+        // New lines go to a segment after the replayed ones, which are gone
+        assertThat(segments()).containsExactly("segment-0000000000000006.jsonl");
+        // Replayed messages were announced by the run that accepted them
+        verifyNoInteractions(inboxEventService, eventPublisher);
+    }
+
+    @Test
+    void tornLastLineIsSkipped() throws IOException {
+        ContactWriteBehindService.JournalEntry whole = entry("whole", null);
+        String torn = objectMapper.writeValueAsString(entry("torn", null));
+        Files.writeString(segmentFile(1), objectMapper.writeValueAsString(whole) + "\n"
+                + torn.substring(0, torn.length() / 2), StandardCharsets.UTF_8);
+
+        start();
+
+        assertThat(batches).containsExactly(List.of(whole));
+    }
+
+    @Test
+    void emptyJournalStartsAtTheFirstSegment() throws IOException {
+        start();
+
+        assertThat(batches).isEmpty();
+        assertThat(segments()).containsExactly("segment-0000000000000001.jsonl");
+    }
+
+    @Test
+    void replayRefusedByTheDatabaseStopsStartupAndKeepsTheJournal() throws IOException {
+        writeSegment(1, entry("first", null));
+        databaseDown = true;
+
+        assertThatThrownBy(() -> service().init())
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageStartingWith("Could not replay the contact journal");
+        assertThat(segments()).containsExactly("segment-0000000000000001.jsonl");
+    }
+
+    @Test
+    void messageAcknowledgedButNeverFlushedIsReplayedOnTheNextStart() throws IOException {
+        ContactWriteBehindService before = start();
+        databaseDown = true;
+        ContactMessage submitted = before.submit(ContactMessage.builder()
+                .name("Ana")
+                .email("ana@example.com")
+                .message("Quote for 40 flanges")
+                .attachmentUrl("/uploads/attachments/ab/cd/abcd.pdf")
+                .build());
+        before.flush();
+        assertThat(before.pendingAttachmentUrls()).containsExactly("/uploads/attachments/ab/cd/abcd.pdf");
+        before.shutdown();
+        started.clear();
+
+        databaseDown = false;
+        start();
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).extracting(ContactWriteBehindService.JournalEntry::id)
+                .containsExactly(submitted.getId());
+        assertThat(segments()).containsExactly("segment-0000000000000002.jsonl");
+    }
+
+    private ContactWriteBehindService service() {
+        ContactWriteBehindService service = new ContactWriteBehindService(jdbcTemplate, objectMapper, eventPublisher,
+                inboxEventService, mock(DtoMapper.class));
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "journalDir", directory.toString());
+        ReflectionTestUtils.setField(service, "queueCapacity", 10);
+        ReflectionTestUtils.setField(service, "batchSize", BATCH_SIZE);
+        ReflectionTestUtils.setField(service, "offerTimeout", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(service, "flushIntervalMs", 500L);
+        return service;
+    }
+
+    private ContactWriteBehindService start() throws IOException {
+        ContactWriteBehindService service = service();
+        service.init();
+        started.add(service);
+        return service;
+    }
+
+    private void writeSegment(long seq, ContactWriteBehindService.JournalEntry... entries) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (ContactWriteBehindService.JournalEntry entry : entries) {
+            lines.append(objectMapper.writeValueAsString(entry)).append('\n');
+        }
+        Files.writeString(segmentFile(seq), lines, StandardCharsets.UTF_8);
+    }
+
+    private Path segmentFile(long seq) {
+        return directory.resolve("segment-" + String.format("%016d", seq) + ".jsonl");
+    }
+
+    private List<String> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    private static ContactWriteBehindService.JournalEntry entry(String name, String attachmentUrl) {
+        return new ContactWriteBehindService.JournalEntry(UUID.randomUUID(), name, null, name + "@example.com",
+                null, "Hello", attachmentUrl, attachmentUrl != null ? "drawing.pdf" : null,
+                LocalDateTime.of(2024, 5, 1, 9, 30));
+    }
+}
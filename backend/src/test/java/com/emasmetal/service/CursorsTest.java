@@ -0,0 +1,89 @@
+package com.emasmetal.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CursorsTest {
+
+    @Test
+    void positionSurvivesTheRoundTrip() {
+        LocalDateTime createdAt = LocalDateTime.of(2024, 5, 17, 9, 30, 15, 123_456_000);
+        UUID id = UUID.randomUUID();
+
+        String[] position = Cursors.decode(Cursors.encode(1536.25, createdAt, id), 3);
+
+        assertThat(Cursors.parseDouble(position[0])).isEqualTo(1536.25);
+        assertThat(Cursors.parseTimestamp(position[1])).isEqualTo(createdAt);
+        assertThat(Cursors.parseUuid(position[2])).isEqualTo(id);
+    }
+
+    @Test
+    void nullPartsSurviveTheRoundTrip() {
+        String[] position = Cursors.decode(Cursors.encode(null, 42), 2);
+
+        assertThat(position[0]).isNull();
+        assertThat(Cursors.parseDouble(position[0])).isNull();
+        assertThat(Cursors.parseInteger(position[1])).isEqualTo(42);
+    }
+
+    @Test
+    void tokensAreUrlSafe() {
+        String token = Cursors.encode(-0.5, LocalDateTime.now(), UUID.randomUUID());
+
+        assertThat(token).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void tokenThatIsNotBase64IsRejected() {
+        assertThatThrownBy(() -> Cursors.decode("not a cursor!", 3))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid cursor");
+    }
+
+    @Test
+    void tokenWithTheWrongNumberOfPartsIsRejected() {
+        String token = Cursors.encode(1.0, 2.0);
+
+        assertThatThrownBy(() -> Cursors.decode(token, 3)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void tokenFromAnotherFormatVersionIsRejected() {
+        String token = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("v0|1.0|2.0".getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> Cursors.decode(token, 2)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void tamperedValuesAreRejectedWhenParsed() {
+        String[] position = Cursors.decode(Cursors.encode("abc", "yesterday", "42"), 3);
+
+        assertThatThrownBy(() -> Cursors.parseDouble(position[0])).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Cursors.parseTimestamp(position[1])).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Cursors.parseUuid(position[2])).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Cursors.parseInteger(position[0])).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void requiredPartsMustNotBeNull() {
+        assertThatThrownBy(() -> Cursors.parseTimestamp(null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Cursors.parseUuid(null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void pageSizeIsClamped() {
+        assertThat(Cursors.clampPageSize(null, 20, 100)).isEqualTo(20);
+        assertThat(Cursors.clampPageSize(0, 20, 100)).isEqualTo(1);
+        assertThat(Cursors.clampPageSize(-5, 20, 100)).isEqualTo(1);
+        assertThat(Cursors.clampPageSize(50, 20, 100)).isEqualTo(50);
+        assertThat(Cursors.clampPageSize(500, 20, 100)).isEqualTo(100);
+    }
+}
@@ -0,0 +1,115 @@
+package com.emasmetal.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileSignaturesTest {
+
+    private static final byte[] UTF8_BOM = {(byte) 0xef, (byte) 0xbb, (byte) 0xbf};
+
+    @Test
+    void pdfHeaderAtTheStartMatches() {
+        assertThat(matches("pdf", ascii("%PDF-1.7\n%\u00e2\u00e3\n1 0 obj"))).isTrue();
+    }
+
+    @Test
+    void pdfHeaderAfterLeadingGarbageMatches() {
+        byte[] head = concat(ascii("\r\n"), new byte[500], ascii("%PDF-1.4\n"));
+
+        assertThat(matches("pdf", head)).isTrue();
+        assertThat(FileSignatures.detectContentType(head, head.length)).isEqualTo("application/pdf");
+    }
+
+    @Test
+    void pdfHeaderBeyondTheFirstKilobyteDoesNotMatch() {
+        byte[] head = concat(new byte[FileSignatures.HEAD_LENGTH], ascii("%PDF-1.4\n"));
+
+        assertThat(matches("pdf", head)).isFalse();
+    }
+
+    @Test
+    void pdfHeaderCutOffAtTheEndOfTheHeadDoesNotMatch() {
+        byte[] head = concat(new byte[FileSignatures.HEAD_LENGTH - 3], ascii("%PD"));
+
+        assertThat(matches("pdf", head)).isFalse();
+    }
+
+    @Test
+    void renamedArchiveIsNotAPdf() {
+        byte[] zip = {'P', 'K', 0x03, 0x04, 0x14, 0x00};
+
+        assertThat(matches("pdf", zip)).isFalse();
+        assertThat(FileSignatures.detectContentType(zip, zip.length)).isEqualTo("application/zip");
+    }
+
+    @Test
+    void stepHeaderMatches() {
+        assertThat(matches("step", ascii("ISO-10303-21;\nHEADER;"))).isTrue();
+        assertThat(matches("stp", ascii("ISO-10303-21;\nHEADER;"))).isTrue();
+    }
+
+    @Test
+    void stepHeaderAfterByteOrderMarkMatches() {
+        byte[] head = concat(UTF8_BOM, ascii("ISO-10303-21;\nHEADER;"));
+
+        assertThat(matches("step", head)).isTrue();
+        assertThat(FileSignatures.detectContentType(head, head.length)).isEqualTo("model/step");
+    }
+
+    @Test
+    void stepHeaderAfterBlankLinesMatches() {
+        assertThat(matches("step", ascii("\r\n  \t\nISO-10303-21;\nHEADER;"))).isTrue();
+        assertThat(matches("stp", concat(UTF8_BOM, ascii("\nISO-10303-21;")))).isTrue();
+    }
+
+    @Test
+    void stepHeaderAfterOtherTextDoesNotMatch() {
+        assertThat(matches("step", ascii("HEADER;\nISO-10303-21;"))).isFalse();
+    }
+
+    @Test
+    void imageSignaturesMatchTheirExtensions() {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0};
+        byte[] jpeg = {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0};
+        byte[] webp = ascii("RIFF\u0000\u0000\u0000\u0000WEBPVP8 ");
+
+        assertThat(matches("png", png)).isTrue();
+        assertThat(matches("jpg", jpeg)).isTrue();
+        assertThat(matches("JPEG", jpeg)).isTrue();
+        assertThat(matches("webp", webp)).isTrue();
+        assertThat(matches("png", jpeg)).isFalse();
+    }
+
+    @Test
+    void asciiDxfIsAcceptedAsText() {
+        assertThat(matches("dxf", ascii("  0\r\nSECTION\r\n  2\r\nHEADER\r\n"))).isTrue();
+        assertThat(matches("dxf", new byte[] {0x00, 0x01, 0x02})).isFalse();
+    }
+
+    @Test
+    void formatsWithoutSignatureAreAccepted() {
+        assertThat(matches("txt", new byte[] {0x00})).isTrue();
+    }
+
+    private static boolean matches(String extension, byte[] content) {
+        byte[] head = Arrays.copyOf(content, Math.min(content.length, FileSignatures.HEAD_LENGTH));
+        return FileSignatures.matches(extension, head, head.length);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            bytes.writeBytes(part);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,207 @@
+package com.emasmetal.service;
+
+import com.emasmetal.repository.ContactMessageRepository;
+import com.emasmetal.repository.GalleryItemRepository;
+import com.emasmetal.repository.ReferenceRepository;
+import com.emasmetal.repository.UploadSessionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FileStorageServiceContentAddressingTest {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    @TempDir
+    Path directory;
+
+    private GalleryItemRepository galleryItemRepository;
+    private ContactWriteBehindService contactWriteBehind;
+    private FileStorageService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        galleryItemRepository = mock(GalleryItemRepository.class);
+        contactWriteBehind = mock(ContactWriteBehindService.class);
+        when(contactWriteBehind.pendingAttachmentUrls()).thenReturn(Set.of());
+        ObjectProvider<ContactWriteBehindService> provider = mock(ObjectProvider.class);
+        when(provider.getObject()).thenReturn(contactWriteBehind);
+
+        // Releases are drained on the calling thread, so their effects are visible on return
+        ThreadPoolTaskExecutor executor = mock(ThreadPoolTaskExecutor.class);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+
+        service = new FileStorageService(galleryItemRepository, mock(ReferenceRepository.class),
+                mock(ContactMessageRepository.class), mock(UploadSessionRepository.class), executor, provider);
+        ReflectionTestUtils.setField(service, "uploadDir", directory.resolve("uploads").toString());
+        ReflectionTestUtils.setField(service, "stagingDir", directory.resolve("staging").toString());
+        ReflectionTestUtils.setField(service, "allowedExtensionsStr", "png,jpg,pdf,dxf");
+        ReflectionTestUtils.setField(service, "maxSizeMb", 1);
+        ReflectionTestUtils.setField(service, "storageMode", "content");
+        ReflectionTestUtils.setField(service, "compressedExtensionsStr", "dxf");
+        ReflectionTestUtils.setField(service, "layout", FileStorageService.LAYOUT_SHARDED);
+        service.init();
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    @Test
+    void storedFileIsNamedAfterItsContent() throws Exception {
+        byte[] content = png(1);
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+
+        String url = store(content);
+
+        assertThat(url).isEqualTo("/uploads/gallery/" + hash.substring(0, 2) + "/" + hash.substring(2, 4)
+                + "/" + hash + ".png");
+        assertThat(Files.readAllBytes(service.getStoredPath(url))).isEqualTo(content);
+    }
+
+    @Test
+    void identicalUploadsShareOneBlob() {
+        String first = store(png(1));
+        String second = store(png(1));
+        String other = store(png(2));
+
+        assertThat(second).isEqualTo(first);
+        assertThat(other).isNotEqualTo(first);
+    }
+
+    @Test
+    void releasedBlobWithoutOwnersIsDeletedWithItsDerivedFiles() throws Exception {
+        String url = store(png(1));
+        String thumbnail = service.derivedFileUrl(url, "thumb", "jpg");
+        Files.write(service.getFilePath(thumbnail), new byte[] {1});
+
+        service.releaseFile(url, List.of(thumbnail));
+
+        assertThat(Files.exists(service.getFilePath(url))).isFalse();
+        assertThat(Files.exists(service.getFilePath(thumbnail))).isFalse();
+    }
+
+    @Test
+    void releasedBlobThatARowStillPointsAtIsKept() {
+        String url = store(png(1));
+        when(galleryItemRepository.findImageUrlsIn(anyCollection())).thenReturn(List.of(url));
+
+        service.releaseFile(url);
+
+        assertThat(Files.exists(service.getFilePath(url))).isTrue();
+    }
+
+    @Test
+    void releasedAttachmentOfAQueuedMessageIsKept() {
+        String url = store(png(1));
+        when(contactWriteBehind.pendingAttachmentUrls()).thenReturn(Set.of(url));
+
+        service.releaseFile(url);
+
+        assertThat(Files.exists(service.getFilePath(url))).isTrue();
+    }
+
+    @Test
+    void blobReusedByAnUncommittedUploadSurvivesARelease() throws Exception {
+        String url = store(png(1));
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        assertThat(store(png(1))).isEqualTo(url);
+
+        // Another transaction drops the previous owner; the new row isn't visible to it yet
+        Thread releaser = new Thread(() -> service.releaseFile(url));
+        releaser.start();
+        releaser.join();
+        assertThat(Files.exists(service.getFilePath(url))).isTrue();
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        synchronizations.forEach(synchronization ->
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+        // From now on the owner's row answers for it
+        when(galleryItemRepository.findImageUrlsIn(anyCollection())).thenReturn(List.of(url));
+        service.releaseFile(url);
+        assertThat(Files.exists(service.getFilePath(url))).isTrue();
+    }
+
+    @Test
+    void blobReusedWhileAReleaseWasCheckingIsKept() {
+        byte[] content = png(1);
+        String url = store(content);
+        // The upload commits after the release's query ran but before it deletes
+        when(galleryItemRepository.findImageUrlsIn(anyCollection())).thenAnswer(invocation -> {
+            store(content);
+            return List.of();
+        });
+
+        service.releaseFile(url);
+
+        assertThat(Files.exists(service.getFilePath(url))).isTrue();
+    }
+
+    @Test
+    void reuseOlderThanTheCheckDoesNotKeepTheBlob() {
+        String url = store(png(1));
+        store(png(1));
+
+        service.releaseFile(url);
+
+        assertThat(Files.exists(service.getFilePath(url))).isFalse();
+    }
+
+    @Test
+    void compressedFormatIsStoredGzippedUnderThePlainUrl() throws Exception {
+        byte[] drawing = "  0\nSECTION\n  2\nHEADER\n  0\nENDSEC\n  0\nEOF\n".repeat(50).getBytes();
+
+        String url = service.storeFile(new ByteArrayInputStream(drawing), "part.dxf", "attachments");
+
+        assertThat(url).endsWith(".dxf");
+        assertThat(service.getStoredPath(url).getFileName().toString()).endsWith(".dxf.gz");
+        try (var input = service.openStoredFile(url)) {
+            assertThat(input.readAllBytes()).isEqualTo(drawing);
+        }
+    }
+
+    private String store(byte[] content) {
+        return service.storeFile(new ByteArrayInputStream(content), "photo.png", "gallery");
+    }
+
+    private static byte[] png(int seed) {
+        byte[] content = new byte[256];
+        new Random(seed).nextBytes(content);
+        System.arraycopy(PNG_SIGNATURE, 0, content, 0, PNG_SIGNATURE.length);
+        return content;
+    }
+}
@@ -0,0 +1,192 @@
+package com.emasmetal.service;
+
+import com.emasmetal.dto.GalleryItemDto;
+import com.emasmetal.entity.GalleryItem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GalleryBulkImportServiceTest {
+
+    private static final int MAX_FILES = 3;
+    private static final long MAX_SIZE = 1024;
+
+    private GalleryService galleryService;
+    private FileStorageService fileStorageService;
+    private ThreadPoolTaskExecutor executor;
+    private GalleryBulkImportService service;
+
+    @BeforeEach
+    void setUp() {
+        galleryService = mock(GalleryService.class);
+        fileStorageService = mock(FileStorageService.class);
+        when(fileStorageService.storeFile(any(InputStream.class), anyString(), eq("gallery")))
+                .thenAnswer(invocation -> "/uploads/gallery/" + invocation.getArgument(1));
+        when(fileStorageService.storeFile(any(MultipartFile.class), eq("gallery")))
+                .thenAnswer(invocation -> "/uploads/gallery/"
+                        + invocation.<MultipartFile>getArgument(0).getOriginalFilename());
+        when(galleryService.createStoredGalleryItems(anyList())).thenAnswer(invocation -> {
+            List<GalleryItem> items = invocation.getArgument(0);
+            items.forEach(item -> item.setId(UUID.randomUUID()));
+            return items;
+        });
+
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.initialize();
+
+        service = new GalleryBulkImportService(galleryService, fileStorageService, executor);
+        ReflectionTestUtils.setField(service, "allowedGalleryExtensionsStr", "jpg,jpeg,png,webp");
+        ReflectionTestUtils.setField(service, "maxGallerySize", MAX_SIZE);
+        ReflectionTestUtils.setField(service, "maxFiles", MAX_FILES);
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void everyImageInTheArchiveBecomesAnItem() throws IOException {
+        byte[] archive = zip("a.jpg", bytes(100), "photos/b.PNG", bytes(200));
+
+        GalleryItemDto.BulkResponse response = service.importArchive(request(), new ByteArrayInputStream(archive));
+
+        assertThat(response.getCreated()).isEqualTo(2);
+        assertThat(response.getFailed()).isZero();
+        assertThat(response.getResults()).extracting(GalleryItemDto.BulkResult::getImageUrl)
+                .containsExactly("/uploads/gallery/a.jpg", "/uploads/gallery/b.PNG");
+    }
+
+    @Test
+    void entriesPastTheFileLimitAreNotRead() throws IOException {
+        byte[] archive = zip("1.jpg", bytes(10), "2.jpg", bytes(10), "3.jpg", bytes(10),
+                "4.jpg", bytes(10), "5.jpg", bytes(10));
+
+        GalleryItemDto.BulkResponse response = service.importArchive(request(), new ByteArrayInputStream(archive));
+
+        assertThat(response.getCreated()).isEqualTo(MAX_FILES);
+        assertThat(response.getTotal()).isEqualTo(MAX_FILES + 1);
+        GalleryItemDto.BulkResult last = response.getResults().get(MAX_FILES);
+        assertThat(last.getFilename()).isEqualTo("(archive)");
+        assertThat(last.getError()).contains("Too many files", "skipped");
+        verify(fileStorageService, times(MAX_FILES)).storeFile(any(InputStream.class), anyString(), eq("gallery"));
+    }
+
+    @Test
+    void oversizedEntryIsRejectedWithoutBeingStored() throws IOException {
+        // Deflated entries don't declare their size up front; the limit applies while reading
+        byte[] archive = zip("huge.jpg", bytes((int) MAX_SIZE + 1), "small.jpg", bytes(10));
+
+        GalleryItemDto.BulkResponse response = service.importArchive(request(), new ByteArrayInputStream(archive));
+
+        assertThat(response.getCreated()).isEqualTo(1);
+        assertThat(response.getResults().get(0).getError()).contains("maximum gallery image size");
+        verify(fileStorageService, never()).storeFile(any(InputStream.class), eq("huge.jpg"), anyString());
+    }
+
+    @Test
+    void disallowedAndHiddenEntriesAreHandledSeparately() throws IOException {
+        byte[] archive = zip("notes.txt", bytes(10), "__MACOSX/._a.jpg", bytes(10), "dir/.DS_Store", bytes(10),
+                "a.jpg", bytes(10));
+
+        GalleryItemDto.BulkResponse response = service.importArchive(request(), new ByteArrayInputStream(archive));
+
+        // Hidden entries are skipped silently and don't count against the limit
+        assertThat(response.getTotal()).isEqualTo(2);
+        assertThat(response.getResults().get(0).getError()).startsWith("File type not allowed");
+        assertThat(response.getResults().get(1).isSuccess()).isTrue();
+    }
+
+    @Test
+    void truncatedArchiveKeepsTheEntriesReadSoFar() throws IOException {
+        byte[] archive = zip("a.jpg", bytes(10), "b.jpg", bytes((int) MAX_SIZE - 1));
+        byte[] truncated = Arrays.copyOf(archive, archive.length - 400);
+
+        GalleryItemDto.BulkResponse response = service.importArchive(request(), new ByteArrayInputStream(truncated));
+
+        assertThat(response.getCreated()).isEqualTo(1);
+        GalleryItemDto.BulkResult last = response.getResults().get(response.getResults().size() - 1);
+        assertThat(last.getFilename()).isEqualTo("(archive)");
+        assertThat(last.getError()).startsWith("Archive could not be read");
+    }
+
+    @Test
+    void uploadedFilesPastTheLimitAreRejected() {
+        List<MultipartFile> files = List.of(image("1.jpg"), image("2.jpg"), image("3.jpg"), image("4.jpg"));
+
+        GalleryItemDto.BulkResponse response = service.importFiles(request(), files);
+
+        assertThat(response.getCreated()).isEqualTo(MAX_FILES);
+        assertThat(response.getResults().get(MAX_FILES).getError()).startsWith("Too many files");
+    }
+
+    @Test
+    void failedInsertReleasesEveryStoredFile() throws IOException {
+        when(galleryService.createStoredGalleryItems(anyList())).thenThrow(new IllegalStateException("db down"));
+        byte[] archive = zip("a.jpg", bytes(10), "b.jpg", bytes(10));
+
+        GalleryItemDto.BulkResponse response = service.importArchive(request(), new ByteArrayInputStream(archive));
+
+        assertThat(response.getCreated()).isZero();
+        assertThat(response.getResults()).extracting(GalleryItemDto.BulkResult::getError)
+                .containsOnly("Could not save gallery item");
+        verify(fileStorageService).releaseFile("/uploads/gallery/a.jpg");
+        verify(fileStorageService).releaseFile("/uploads/gallery/b.jpg");
+    }
+
+    private static GalleryItemDto.BulkCreateRequest request() {
+        return GalleryItemDto.BulkCreateRequest.builder().category("Parts").build();
+    }
+
+    private static MultipartFile image(String name) {
+        return new MockMultipartFile("files", name, "image/jpeg", bytes(10));
+    }
+
+    private static byte[] bytes(int length) {
+        // Random bytes don't compress, so the archive is about as large as its content
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] zip(Object... namesAndContents) throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                zip.putNextEntry(new ZipEntry((String) namesAndContents[i]));
+                zip.write((byte[]) namesAndContents[i + 1]);
+                zip.closeEntry();
+            }
+        }
+        return archive.toByteArray();
+    }
+}
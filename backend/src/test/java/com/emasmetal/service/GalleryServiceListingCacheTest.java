@@ -0,0 +1,139 @@
+package com.emasmetal.service;
+
+import com.emasmetal.cache.ListingCache;
+import com.emasmetal.dto.GalleryItemDto;
+import com.emasmetal.entity.GalleryItem;
+import com.emasmetal.mapper.DtoMapper;
+import com.emasmetal.repository.GalleryItemRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GalleryServiceListingCacheTest {
+
+    private GalleryItemRepository repository;
+    private CatalogVersions catalogVersions;
+    private GalleryService service;
+    private GalleryItem item;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(GalleryItemRepository.class);
+        catalogVersions = new CatalogVersions();
+        service = new GalleryService(repository, mock(FileStorageService.class), mock(GalleryImageService.class),
+                new DtoMapper(mock(FileStorageService.class)), mock(ApplicationEventPublisher.class),
+                catalogVersions, new ListingCache<>("gallery", 16));
+
+        item = GalleryItem.builder()
+                .id(UUID.randomUUID())
+                .title("Flange")
+                .imageUrl("/uploads/gallery/ab/cd/abcd1234.jpg")
+                .category("Milling")
+                .build();
+        when(repository.findById(item.getId())).thenReturn(Optional.of(item));
+        when(repository.save(any(GalleryItem.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(repository.findAllByOrderBySortRankAscCreatedAtDesc()).thenReturn(List.of(item));
+        when(repository.findByCategoryOrderBySortRankAscCreatedAtDesc(any())).thenReturn(List.of(item));
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void repeatedListingReadsHitTheDatabaseOnce() {
+        service.getAllGalleryItems();
+        service.getAllGalleryItems();
+        service.getGalleryItemsByCategory("Milling");
+        service.getGalleryItemsByCategory("Milling");
+
+        verify(repository, times(1)).findAllByOrderBySortRankAscCreatedAtDesc();
+        verify(repository, times(1)).findByCategoryOrderBySortRankAscCreatedAtDesc("Milling");
+    }
+
+    @Test
+    void movingAnItemDropsTheListingsItLeftAndJoined() {
+        warmListings();
+
+        service.updateGalleryItem(item.getId(), GalleryItemDto.UpdateRequest.builder().category("Turning").build(), null);
+        warmListings();
+
+        verify(repository, times(2)).findAllByOrderBySortRankAscCreatedAtDesc();
+        verify(repository, times(2)).findByCategoryOrderBySortRankAscCreatedAtDesc("Milling");
+        verify(repository, times(2)).findByCategoryOrderBySortRankAscCreatedAtDesc("Turning");
+        verify(repository, times(1)).findByCategoryOrderBySortRankAscCreatedAtDesc("Parts");
+    }
+
+    @Test
+    void deletingAnItemDropsItsListings() {
+        warmListings();
+
+        service.deleteGalleryItem(item.getId());
+        warmListings();
+
+        verify(repository, times(2)).findAllByOrderBySortRankAscCreatedAtDesc();
+        verify(repository, times(2)).findByCategoryOrderBySortRankAscCreatedAtDesc("Milling");
+        verify(repository, times(1)).findByCategoryOrderBySortRankAscCreatedAtDesc("Turning");
+    }
+
+    @Test
+    void listingsAndVersionChangeOnlyOnceTheWriteCommits() {
+        warmListings();
+        long version = catalogVersions.current(CatalogVersions.Catalog.GALLERY);
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.deleteGalleryItem(item.getId());
+
+        // Readers outside the transaction keep the committed listing until then
+        service.getAllGalleryItems();
+        verify(repository, times(1)).findAllByOrderBySortRankAscCreatedAtDesc();
+        assertThat(catalogVersions.current(CatalogVersions.Catalog.GALLERY)).isEqualTo(version);
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+
+        service.getAllGalleryItems();
+        verify(repository, times(2)).findAllByOrderBySortRankAscCreatedAtDesc();
+        assertThat(catalogVersions.current(CatalogVersions.Catalog.GALLERY)).isGreaterThan(version);
+    }
+
+    @Test
+    void rolledBackWriteKeepsTheCachedListings() {
+        warmListings();
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.deleteGalleryItem(item.getId());
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization ->
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        service.getAllGalleryItems();
+        verify(repository, times(1)).findAllByOrderBySortRankAscCreatedAtDesc();
+    }
+
+    private void warmListings() {
+        service.getAllGalleryItems();
+        service.getGalleryItemsByCategory("Milling");
+        service.getGalleryItemsByCategory("Turning");
+        service.getGalleryItemsByCategory("Parts");
+    }
+}
@@ -0,0 +1,72 @@
+package com.emasmetal.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RanksTest {
+
+    @Test
+    void displayOrderMapsOntoTheRankScale() {
+        assertThat(Ranks.fromDisplayOrder(3)).isEqualTo(3 * Ranks.SPACING);
+    }
+
+    @Test
+    void firstItemOfAnEmptyCatalogGetsOneSpacing() {
+        assertThat(Ranks.between(null, null)).isEqualTo(Ranks.SPACING);
+    }
+
+    @Test
+    void movingToTheEndsStepsOneSpacingPastTheNeighbour() {
+        assertThat(Ranks.between(null, 1024.0)).isEqualTo(0.0);
+        assertThat(Ranks.between(2048.0, null)).isEqualTo(3072.0);
+    }
+
+    @Test
+    void movingBetweenTwoItemsTakesTheMidpoint() {
+        assertThat(Ranks.between(1024.0, 2048.0)).isEqualTo(1536.0);
+        assertThat(Ranks.between(-1.0, 0.0)).isEqualTo(-0.5);
+    }
+
+    @Test
+    void neighboursOutOfOrderAreRejected() {
+        assertThatThrownBy(() -> Ranks.between(2048.0, 1024.0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Ranks.between(1024.0, 1024.0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void adjacentDoublesHaveNoRankBetweenThem() {
+        assertThat(Ranks.between(1.0, Math.nextUp(1.0))).isNull();
+    }
+
+    @Test
+    void gapsBelowTheMinimumAreCrowded() {
+        assertThat(Ranks.crowded(1.0, 1.0 + Ranks.MIN_GAP / 2)).isTrue();
+        assertThat(Ranks.crowded(1.0, 2.0)).isFalse();
+    }
+
+    @Test
+    void theEndsOfTheListAreNeverCrowded() {
+        assertThat(Ranks.crowded(null, 1.0)).isFalse();
+        assertThat(Ranks.crowded(1.0, null)).isFalse();
+        assertThat(Ranks.crowded(null, null)).isFalse();
+    }
+
+    @Test
+    void repeatedMovesIntoOneSpotGetCrowdedBeforeRunningOutOfRanks() {
+        double previous = Ranks.SPACING;
+        double next = 2 * Ranks.SPACING;
+        int moves = 0;
+        while (!Ranks.crowded(previous, next)) {
+            Double middle = Ranks.between(previous, next);
+            assertThat(middle).isNotNull().isGreaterThan(previous).isLessThan(next);
+            next = middle;
+            moves++;
+        }
+
+        // Far more moves than anyone makes by hand, and a rebalance is requested long before doubles run out
+        assertThat(moves).isGreaterThan(20);
+        assertThat(Ranks.between(previous, next)).isNotNull();
+    }
+}
@@ -0,0 +1,224 @@
+package com.emasmetal.service;
+
+import com.emasmetal.dto.UploadDto;
+import com.emasmetal.entity.UploadSession;
+import com.emasmetal.exception.FileStorageException;
+import com.emasmetal.exception.UploadConflictException;
+import com.emasmetal.repository.UploadSessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UploadServiceResumableTest {
+
+    private static final String STORED_URL = "/uploads/attachments/ab/cd/abcd1234.pdf";
+
+    @TempDir
+    Path directory;
+
+    private UploadSessionRepository repository;
+    private FileStorageService fileStorageService;
+    private UploadService service;
+
+    // The row as the database holds it; every read gets a fresh copy
+    private UploadSession row;
+    private final AtomicReference<byte[]> completedContent = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(UploadSessionRepository.class);
+        fileStorageService = mock(FileStorageService.class);
+        when(repository.save(any(UploadSession.class))).thenAnswer(invocation -> {
+            row = invocation.getArgument(0);
+            row.setId(UUID.randomUUID());
+            return copy(row);
+        });
+        when(repository.findById(any(UUID.class))).thenAnswer(invocation -> Optional.ofNullable(row).map(this::copy));
+        when(repository.advanceOffset(any(UUID.class), anyLong(), anyLong())).thenAnswer(invocation -> {
+            long expected = invocation.getArgument(1);
+            if (row.getFileUrl() != null || row.getUploadOffset() != expected) {
+                return 0;
+            }
+            row.setUploadOffset(invocation.getArgument(2));
+            return 1;
+        });
+        when(repository.complete(any(UUID.class), anyString(), anyLong())).thenAnswer(invocation -> {
+            if (row.getFileUrl() != null) {
+                return 0;
+            }
+            row.setFileUrl(invocation.getArgument(1));
+            row.setSizeBytes(invocation.getArgument(2));
+            return 1;
+        });
+        when(fileStorageService.storeCompletedFile(any(Path.class), anyString(), eq("attachments"), anyList(),
+                anyLong())).thenAnswer(invocation -> {
+            Path part = invocation.getArgument(0);
+            completedContent.set(Files.readAllBytes(part));
+            Files.move(part, directory.resolve("stored.pdf"));
+            return STORED_URL;
+        });
+        when(fileStorageService.getStoredPath(STORED_URL)).thenReturn(directory.resolve("stored.pdf"));
+
+        service = new UploadService(repository, fileStorageService);
+        ReflectionTestUtils.setField(service, "allowedContactExtensionsStr", "pdf,dxf,step");
+        ReflectionTestUtils.setField(service, "maxContactSize", 1024L);
+        ReflectionTestUtils.setField(service, "partialUploadDir", directory.resolve("partial").toString());
+        service.init();
+    }
+
+    @Test
+    void chunksAtTheRightOffsetsCompleteTheUpload() {
+        UUID token = start(10);
+
+        UploadDto.Status first = service.appendChunk(token, 0, body("%PDF-"));
+        UploadDto.Status last = service.appendChunk(token, 5, body("1.7\n%"));
+
+        assertThat(first.getOffset()).isEqualTo(5);
+        assertThat(first.isComplete()).isFalse();
+        assertThat(last.getOffset()).isEqualTo(10);
+        assertThat(last.isComplete()).isTrue();
+        assertThat(new String(completedContent.get(), StandardCharsets.US_ASCII)).isEqualTo("%PDF-1.7\n%");
+        assertThat(row.getFileUrl()).isEqualTo(STORED_URL);
+        assertThat(row.getSizeBytes()).isEqualTo(10L);
+    }
+
+    @Test
+    void chunkAtAnotherOffsetIsRejectedWithTheCurrentOne() throws IOException {
+        UUID token = start(10);
+        service.appendChunk(token, 0, body("%PDF"));
+
+        assertThatThrownBy(() -> service.appendChunk(token, 2, body("XXXX")))
+                .isInstanceOf(UploadConflictException.class)
+                .hasMessage("Upload offset is 4, not 2");
+        assertThatThrownBy(() -> service.appendChunk(token, 6, body("XXXX")))
+                .isInstanceOf(UploadConflictException.class);
+
+        assertThat(row.getUploadOffset()).isEqualTo(4L);
+        assertThat(Files.readString(partialFile(token))).isEqualTo("%PDF");
+    }
+
+    @Test
+    void chunkRacingAnotherWriterOfTheSameRangeLoses() {
+        UUID token = start(10);
+        // Both requests read offset 0; the other one's update lands first
+        UploadSession stale = copy(row);
+        when(repository.findById(token)).thenReturn(Optional.of(stale));
+        row.setUploadOffset(4L);
+
+        assertThatThrownBy(() -> service.appendChunk(token, 0, body("%PDF")))
+                .isInstanceOf(UploadConflictException.class)
+                .hasMessage("Upload was modified by another request");
+        assertThat(row.getUploadOffset()).isEqualTo(4L);
+    }
+
+    @Test
+    void chunkPastTheDeclaredLengthIsRejected() {
+        UUID token = start(4);
+
+        assertThatThrownBy(() -> service.appendChunk(token, 0, body("%PDF-1.7")))
+                .isInstanceOf(FileStorageException.class)
+                .hasMessageContaining("Upload-Length");
+        assertThat(row.getUploadOffset()).isZero();
+        verify(repository, never()).advanceOffset(any(UUID.class), anyLong(), anyLong());
+    }
+
+    @Test
+    void droppedConnectionKeepsTheBytesThatArrived() {
+        UUID token = start(10);
+        InputStream interrupted = new InputStream() {
+            private final InputStream head = body("%PD");
+
+            @Override
+            public int read() throws IOException {
+                int next = head.read();
+                if (next < 0) {
+                    throw new IOException("Connection reset");
+                }
+                return next;
+            }
+        };
+
+        UploadDto.Status status = service.appendChunk(token, 0, interrupted);
+
+        assertThat(status.getOffset()).isEqualTo(3);
+        assertThat(service.appendChunk(token, 3, body("F-1.7\n%")).isComplete()).isTrue();
+    }
+
+    @Test
+    void completedUploadTakesNoMoreChunks() {
+        UUID token = start(4);
+        service.appendChunk(token, 0, body("%PDF"));
+
+        assertThatThrownBy(() -> service.appendChunk(token, 4, body("more")))
+                .isInstanceOf(UploadConflictException.class)
+                .hasMessage("Upload is already complete");
+    }
+
+    @Test
+    void secondCompletionOfTheSameUploadReleasesItsCopy() {
+        UUID token = start(4);
+        // Another request finished the same upload between our write and our update
+        when(repository.complete(any(UUID.class), anyString(), anyLong())).thenReturn(0);
+
+        assertThatThrownBy(() -> service.appendChunk(token, 0, body("%PDF")))
+                .isInstanceOf(UploadConflictException.class);
+        verify(fileStorageService).releaseFile(STORED_URL);
+    }
+
+    @Test
+    void uploadOfADisallowedTypeIsRefusedBeforeAnyByteIsSent() {
+        assertThatThrownBy(() -> service.createResumableUpload("setup.exe", 10))
+                .isInstanceOf(FileStorageException.class);
+        assertThatThrownBy(() -> service.createResumableUpload("part.pdf", 2048))
+                .isInstanceOf(FileStorageException.class);
+        verify(repository, never()).save(any(UploadSession.class));
+    }
+
+    private UUID start(long length) {
+        return service.createResumableUpload("drawing.pdf", length).getToken();
+    }
+
+    private Path partialFile(UUID token) {
+        return directory.resolve("partial").resolve(token + ".part");
+    }
+
+    private UploadSession copy(UploadSession session) {
+        return UploadSession.builder()
+                .id(session.getId())
+                .originalFilename(session.getOriginalFilename())
+                .fileUrl(session.getFileUrl())
+                .sizeBytes(session.getSizeBytes())
+                .uploadLength(session.getUploadLength())
+                .uploadOffset(session.getUploadOffset())
+                .claimed(session.getClaimed())
+                .createdAt(session.getCreatedAt())
+                .build();
+    }
+
+    private static InputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -79,4 +79,14 @@ export const getImageUrl = (path) => {
   return `${API_BASE_URL}${path}`;
 };
 
+// Builds a srcset from the JPEG variants of a gallery item; the server
+// answers with WebP instead when the browser supports it
+export const getImageSrcSet = (variants) => {
+  if (!variants || variants.length === 0) return undefined;
+  return variants
+    .filter((variant) => variant.format === 'jpg')
+    .map((variant) => `${getImageUrl(variant.url)} ${variant.width}w`)
+    .join(', ');
+};
+
 export default apiClient;
@@ -2,7 +2,7 @@ import { useState, useEffect } from 'react';
 import { Link } from 'react-router-dom';
 import { X, ArrowRight, ZoomIn } from 'lucide-react';
 import { LoadingSpinner, Alert } from '../components/ui';
-import { galleryApi, getImageUrl } from '../api';
+import { galleryApi, getImageUrl, getImageSrcSet } from '../api';
 
 const categories = ['All', 'Milling', 'Turning', 'Parts', 'Factory'];
 
@@ -108,11 +108,13 @@ export const GalleryPage = () => {
                 <div
                   key={item.id}
                   className="group relative aspect-[4/3] bg-emas-light-bg rounded-xl overflow-hidden cursor-pointer"
+                  style={item.dominantColor ? { backgroundColor: item.dominantColor } : undefined}
                   onClick={() => openLightbox(item)}
                 >
                   {item.imageUrl ? (
                     <img
-                      src={getImageUrl(item.imageUrl)}
+                      src={getImageUrl(item.thumbnailUrl || item.imageUrl)}
+                      loading="lazy"
                       alt={item.title}
                       className="w-full h-full object-cover transition-transform duration-500 group-hover:scale-110"
                     />
@@ -174,8 +176,13 @@ export const GalleryPage = () => {
             {lightboxItem.imageUrl ? (
               <img
                 src={getImageUrl(lightboxItem.imageUrl)}
+                srcSet={getImageSrcSet(lightboxItem.variants)}
+                sizes="(max-width: 896px) 100vw, 896px"
+                width={lightboxItem.imageWidth}
+                height={lightboxItem.imageHeight}
                 alt={lightboxItem.title}
-                className="w-full rounded-lg"
+                className="w-full h-auto rounded-lg"
+                style={lightboxItem.dominantColor ? { backgroundColor: lightboxItem.dominantColor } : undefined}
               />
             ) : (
               <div className="aspect-video bg-emas-deep-blue/50 rounded-lg flex items-center justify-center">